@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher;
+
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * The platform of the launcher core on a device.
+ */
+public class AndroidPlatform extends Platform {
+
+    private final boolean isConsole;
+
+    /**
+     * @param isConsole true to print the debug messages on the console rather
+     *                  than in the log, as -d does
+     */
+    public AndroidPlatform(boolean isConsole) {
+        this.isConsole = isConsole;
+    }
+
+    @Override
+    public void log(String tag, String msg) {
+        if (isConsole)
+            System.out.println(msg);
+        else
+            Log.d(tag, msg);
+    }
+
+    @Override
+    public String getCpuAbi() {
+        return Build.CPU_ABI;
+    }
+}
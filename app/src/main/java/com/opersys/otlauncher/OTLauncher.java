@@ -16,16 +16,20 @@
 
 package com.opersys.otlauncher;
 
-import android.util.Log;
 import com.opersys.otlauncher.tools.Am;
 import com.opersys.otlauncher.tools.Pm;
+import com.opersys.otlauncher.tools.Shell;
 import org.json.JSONException;
 
 import java.io.*;
+import java.util.Collections;
 import java.util.Map;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipFile;
-import java.util.zip.ZipInputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Console entry point of the Opersys Tools Launcher.
@@ -43,6 +47,67 @@ public class OTLauncher {
      */
     private static File extractPath = new File("/data/local/tmp");
 
+    /**
+     * How the extracted files are checked before they are run (-V).
+     */
+    private static Verifier.Mode verifyMode = Verifier.Mode.QUICK;
+
+    /**
+     * Name of the file, in the extraction path, in which the timings of the last
+     * launch are written in the Prometheus text format.
+     */
+    private static final String METRICS_FILE = "otlauncher.metrics";
+
+    /**
+     * How long the launch waits, once the application is ready, for the service to
+     * be started. The application is run anyway after that.
+     */
+    private static final long SERVICE_START_TIMEOUT_MS = 10000;
+
+    /**
+     * Port of the platform information server of OTLauncherService, PlatformEngine.PORT.
+     */
+    private static final int PLATFORM_PORT = 3001;
+
+    /**
+     * Name of the local socket the service is asked to listen on (-s), or null to
+     * leave it to the service. It is only given to the application when set, since
+     * a service started otherwise may listen on another socket, or on none.
+     */
+    private static String platformSocket;
+
+    private static boolean traceWritten;
+
+    /**
+     * Writes the trace file and prints its summary, once, if -t was given.
+     */
+    private static void writeTrace() {
+        File traceFile;
+
+        if (!LaunchTrace.get().isEnabled() || traceWritten)
+            return;
+
+        traceWritten = true;
+        traceFile = new File(extractPath, LaunchTrace.TRACE_FILE);
+
+        try {
+            LaunchTrace.get().writeTo(traceFile);
+        } catch (IOException ex) {
+            System.err.println("Failed to write " + traceFile + ": " + ex.getMessage());
+        }
+
+        LaunchTrace.get().printSummary(System.out);
+        System.out.println("Trace written to " + traceFile);
+    }
+
+    private static void writeMetrics() {
+        try {
+            Metrics.get().writeTo(new File(extractPath, METRICS_FILE));
+        } catch (IOException ex) {
+            Log("Failed to write the metrics: " + ex.getMessage());
+        }
+    }
+
     // Lists the module that can be run from this APK file.
     private static void doList(Descriptor descriptor) {
         for (Descriptor.Package pkg : descriptor.getPackages())
@@ -50,57 +115,45 @@ public class OTLauncher {
     }
 
     private static void Log(String msg) {
-        if (isDebug)
-            System.out.println(msg);
-        else
-            Log.d("OTLauncher", msg);
+        Platform.get().log("OTLauncher", msg);
     }
 
     /**
-     * Verify the extracted application MD5 sum.
-     *
-     * @return true if the extracted application doesn't need to be updated
+     * Deletes the trees left over by the extractions on a background thread, while
+     * the application runs.
      */
-    private static boolean isExtractedOk(Descriptor descriptor, String id, File pkgAppExtractPath)
-            throws IOException {
-        File md5sumPath;
-        String arch;
-
-        if (pkgAppExtractPath.exists()) {
-            md5sumPath = new File(pkgAppExtractPath + File.separator + "MD5SUM");
-            arch = Utils.getArchitecture();
-
-            // Check the MD5 sum of the extracted application.
-            if (md5sumPath.exists()) {
-                FileInputStream md5stream;
-                String md5sum;
-                byte[] md5buf;
-
-                md5buf = new byte[1024];
-                md5stream = new FileInputStream(md5sumPath);
-                md5stream.read(md5buf);
-                md5sum = new String(md5buf).trim();
+    private static void reclaimAsync(final AppDirectory appDirectory) {
+        Thread reclaimThread;
 
-                return md5sum.equals(descriptor.getPackage(id).getFileForArch(arch).getMd5Sum());
+        reclaimThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long startTime = System.nanoTime();
+                int count;
 
-            } else
-                Log("No MD5SUM file found.");
+                count = appDirectory.reclaim();
 
-        } else {
-            Log("Target directory " + pkgAppExtractPath + " not found.");
-        }
+                if (count > 0)
+                    Log(String.format("Removed %d old trees in %d ms", count,
+                            (System.nanoTime() - startTime) / 1000000));
+            }
+        }, "otlauncher-reclaim");
 
-        return false;
+        reclaimThread.setDaemon(true);
+        reclaimThread.setPriority(Thread.MIN_PRIORITY);
+        reclaimThread.start();
     }
 
     /**
      * Runs an extracted application.
      */
-    private static void doRun(Descriptor descriptor, String id, File pkgExtractAppPath) throws IOException {
+    private static void doRun(Descriptor descriptor, String id, AppDirectory appDirectory)
+            throws IOException {
         String cmd;
         Process runProc;
         ProcessBuilder runProcBuilder;
         Map<String, String> env;
+        long startTime;
 
         cmd = descriptor.getPackage(id).getCommand();
         try {
@@ -108,12 +161,26 @@ public class OTLauncher {
 
             runProcBuilder = new ProcessBuilder()
                     .command(cmd.split(" "))
-                    .directory(pkgExtractAppPath);
+                    .directory(appDirectory.getDir());
 
             env = runProcBuilder.environment();
             env.put("PORT", "3000");
 
+            // Where the platform information server of OTLauncherService listens.
+            env.put("PLATFORM_PORT", String.valueOf(PLATFORM_PORT));
+
+            if (platformSocket != null && !platformSocket.isEmpty())
+                env.put("PLATFORM_SOCKET", platformSocket);
+
+            startTime = System.nanoTime();
             runProc = runProcBuilder.start();
+            LaunchTrace.endPhase("exec", startTime);
+
+            // The child runs until it is stopped, so this is as far as the trace goes.
+            writeTrace();
+
+            reclaimAsync(appDirectory);
+
             runProc.waitFor();
 
         } catch (InterruptedException e) {
@@ -121,97 +188,92 @@ public class OTLauncher {
         }
     }
 
-    private static long copyStream(final InputStream input, final OutputStream output) throws IOException {
-        byte[] buffer = new byte[1024];
-        int n = 0;
-        long count = 0;
+    private static void doStartService() throws IOException {
+        if (Pm.isPackageInstalled("com.opersys.otlauncher")) {
+            Log("Triggering launch of UI-side service");
 
-        while ((n = input.read(buffer)) != -1) {
-            output.write(buffer, 0, n);
-            count += n;
+            if (platformSocket != null)
+                Am.startService("com.opersys.otlauncher/.OTLauncherService",
+                        Collections.singletonMap("localSocket", platformSocket));
+            else
+                Am.startService("com.opersys.otlauncher/.OTLauncherService");
+        }
+        else {
+            System.out.println("OTLauncherService not found (.apk not installed?)");
+            System.out.println("Some features of the web application might not unavailable.");
         }
-
-        return count;
     }
 
     /**
-     * Extract a packaged application on the device.
+     * Starts the UI-side service on a background thread, so that the pm and am
+     * commands run while the application is verified or extracted.
+     *
+     * @return the time taken to start the service, in nanoseconds
      */
-    private static void doExtract(Descriptor descriptor, String id, File pkgExtractAppPath)
-            throws IOException {
-        String arch = Utils.getArchitecture();
-        File targetFile, md5File;
-        ZipFile apkFile;
-        ZipInputStream pkgZipStream;
-        FileOutputStream pkgFileOutStream, md5OutStream;
-        ZipEntry currentEntry, pkgEntry;
-        Descriptor.PackageFile pkgFile;
-
-        // At this point, we need to rm -rf the target directory.
-        if (pkgExtractAppPath.exists())
-            Utils.delete(pkgExtractAppPath.toString(), true);
-
-        apkFile = descriptor.getAPK();
-        pkgFile = descriptor.getPackage(id).getFileForArch(arch);
-        pkgEntry = apkFile.getEntry(pkgFile.getFile());
-        pkgZipStream = new ZipInputStream(apkFile.getInputStream(pkgEntry));
-
-        while ((currentEntry = pkgZipStream.getNextEntry()) != null) {
-            targetFile = new File(pkgExtractAppPath + File.separator + currentEntry.getName());
-
-            Log("Extracting " + targetFile);
-
-            if (currentEntry.isDirectory()) {
-
-                if (!targetFile.exists()) {
-                    if (!targetFile.mkdirs()) {
-                        String s = String.format("Couldn't create directory %s.", targetFile.getAbsolutePath());
-                        throw new IllegalStateException(s);
-                    }
-                }
-            } else {
-                final File parentTarget = new File(targetFile.getParent());
+    private static Future<Long> startServiceAsync() {
+        FutureTask<Long> serviceStart;
+        Thread serviceThread;
 
-                if (!parentTarget.exists()) {
-                    if (!parentTarget.mkdirs()) {
-                        String s = String.format("Couldn't create directory %s.", parentTarget.toString());
-                        throw new IllegalStateException(s);
-                    }
-                }
+        serviceStart = new FutureTask<Long>(new Callable<Long>() {
+            @Override
+            public Long call() throws IOException {
+                long startTime = System.nanoTime();
 
-                pkgFileOutStream = new FileOutputStream(targetFile);
-                copyStream(pkgZipStream, pkgFileOutStream);
-                pkgFileOutStream.close();
+                doStartService();
+                LaunchTrace.endPhase("startService", startTime);
+
+                return System.nanoTime() - startTime;
             }
-        }
+        });
 
-        //
-        for (Descriptor.PackageFileMode pkgFileMode : pkgFile.getPackageFileModes()) {
-            targetFile = new File(pkgExtractAppPath + File.separator + pkgFileMode.getFile());
+        serviceThread = new Thread(serviceStart, "otlauncher-service");
+        serviceThread.setDaemon(true);
+        serviceThread.start();
 
-            Log("Setting file mode of " + targetFile.toString() + " to " + pkgFileMode.getMode());
+        return serviceStart;
+    }
 
-            Utils.chmod(pkgFileMode.getMode(), targetFile.toString());
-        }
+    /**
+     * Waits for the service started by startServiceAsync() and reports how much of
+     * its start-up was hidden behind the preparation of the application.
+     */
+    private static void joinServiceStart(Future<Long> serviceStart) throws IOException {
+        long startTime, serviceNanos, waitNanos;
 
-        // Write the MD5SUM file.
-        md5File = new File(pkgExtractAppPath + File.separator + "MD5SUM");
-        md5OutStream = new FileOutputStream(md5File);
-        md5OutStream.write(descriptor.getPackage(id).getFileForArch(arch).getMd5Sum().getBytes());
+        startTime = System.nanoTime();
 
-        md5OutStream.close();
-        pkgZipStream.close();
-    }
+        try {
+            serviceNanos = serviceStart.get(SERVICE_START_TIMEOUT_MS, TimeUnit.MILLISECONDS);
 
-    private static void doStartService() throws IOException {
-        if (Pm.isPackageInstalled("com.opersys.otlauncher")) {
-            Log("Triggering launch of UI-side service");
-            Am.startService("com.opersys.otlauncher/.OTLauncherService");
-        }
-        else {
-            System.out.println("OTLauncherService not found (.apk not installed?)");
-            System.out.println("Some features of the web application might not unavailable.");
+        } catch (TimeoutException ex) {
+            System.out.println("OTLauncherService still starting after "
+                    + SERVICE_START_TIMEOUT_MS + " ms, running the application anyway.");
+            return;
+
+        } catch (InterruptedException ex) {
+            throw new IOException("Interrupted while starting OTLauncherService");
+
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException)
+                throw (IOException) ex.getCause();
+            else
+                throw new IOException("Failed to start OTLauncherService: " + ex.getCause());
+
+        } finally {
+            LaunchTrace.endPhase("startService.wait", startTime);
         }
+
+        waitNanos = System.nanoTime() - startTime;
+
+        Metrics.get().histogram("otlauncher_launch_overlap_saved_seconds",
+                "Time of the service start-up hidden behind the preparation of the application.")
+                .observe(Math.max(serviceNanos - waitNanos, 0) / 1000);
+
+        Log(String.format("Service started in %d ms, waited %d ms for it",
+                serviceNanos / 1000000, waitNanos / 1000000));
+
+        LaunchTrace.get().note(String.format("Service start overlapped: %.1f ms of %.1f ms saved",
+                Math.max(serviceNanos - waitNanos, 0) / 1e6, serviceNanos / 1e6));
     }
 
     private static void doStopService() throws IOException {
@@ -221,12 +283,42 @@ public class OTLauncher {
         }
     }
 
+    /**
+     * Undoes startServiceAsync() when the application can't be run. The start is
+     * waited for, so that the service is not started after it is stopped. Errors
+     * are only logged, the caller is already failing.
+     */
+    private static void cancelServiceStart(Future<Long> serviceStart) {
+        try {
+            serviceStart.get(SERVICE_START_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+            doStopService();
+
+        } catch (TimeoutException ex) {
+            Log("OTLauncherService still starting, not stopping it");
+            serviceStart.cancel(true);
+
+        } catch (InterruptedException ex) {
+            serviceStart.cancel(true);
+
+        } catch (ExecutionException ex) {
+            // It didn't start.
+            Log("Failed to start OTLauncherService: " + ex.getCause());
+
+        } catch (IOException ex) {
+            System.err.println("Error while trying to shut down the UI-side service");
+        }
+    }
+
     /**
      * Executes an application that is packaged as an asset.
      */
     private static void doRunAndExtract(Descriptor descriptor, String id) throws IOException {
+        AppDirectory appDirectory;
+        Future<Long> serviceStart;
         File pkgExtractAppPath;
         String actualId;
+        boolean isOk, isPrepared;
+        long startTime;
 
         if (id == null && descriptor.getDefaultAppId() == null) {
             System.err.println("No default application to run.");
@@ -242,19 +334,59 @@ public class OTLauncher {
             // Check if an extracted directory for the app ID exists.
             pkgExtractAppPath = new File(extractPath + File.separator + actualId);
 
-            if (!isExtractedOk(descriptor, actualId, pkgExtractAppPath)) {
-                Log("Extracting application " + actualId + " to " + pkgExtractAppPath);
-                doExtract(descriptor, actualId, pkgExtractAppPath);
+            try {
+                appDirectory = new AppDirectory(descriptor, actualId, Utils.getArchitecture(),
+                        pkgExtractAppPath);
+            } catch (IllegalArgumentException ex) {
+                System.err.println(ex.getMessage());
+                System.exit(1);
+                return;
+            }
+
+            // The service doesn't depend on the application files. It is stopped
+            // again if they can't be prepared.
+            serviceStart = startServiceAsync();
+            isPrepared = false;
+
+            try {
+                startTime = System.nanoTime();
+                isOk = appDirectory.isExtractedOk();
+                LaunchTrace.endPhase("md5check", startTime);
+
+                if (isOk) {
+                    startTime = System.nanoTime();
+                    isOk = appDirectory.verify(verifyMode);
+                    LaunchTrace.endPhase("verify", startTime);
+                }
+
+                if (!isOk) {
+                    Log("Extracting application " + actualId + " to " + pkgExtractAppPath);
+
+                    startTime = System.nanoTime();
+                    appDirectory.extract();
+                    LaunchTrace.endPhase("extract", startTime);
+                }
+
+                isPrepared = true;
+            } finally {
+                if (!isPrepared)
+                    cancelServiceStart(serviceStart);
             }
 
             Log("Running application " + actualId + " from " + pkgExtractAppPath);
-            doStartService();
+            joinServiceStart(serviceStart);
+
+            // The child runs until it is stopped, write the timings before.
+            writeMetrics();
+
+            for (Map.Entry<String, Shell.CommandStats> stats : Shell.get().getStatistics().entrySet())
+                Log("Shell command " + stats.getKey() + ": " + stats.getValue());
 
             System.out.println("Running application " + actualId);
             System.out.println("Don't forget to forward port 3000 using adb:");
             System.out.println("adb forward tcp:3000 tcp:3000");
 
-            doRun(descriptor, actualId, pkgExtractAppPath);
+            doRun(descriptor, actualId, appDirectory);
         }
         else {
             System.err.println("Application " + actualId + " not found");
@@ -274,6 +406,7 @@ public class OTLauncher {
                 doRun = false;
         Descriptor descriptor;
         DescriptorReader descriptorReader = null;
+        long startTime;
 
         if (args.length == 0) {
             System.err.println("No arguments provided...");
@@ -304,6 +437,21 @@ public class OTLauncher {
             if (args[i].equals("-d"))
                 isDebug = true;
 
+            if (args[i].equals("-t"))
+                LaunchTrace.get().setEnabled(true);
+
+            if (args[i].equals("-V")) {
+                try {
+                    verifyMode = Verifier.Mode.fromString(args[++i]);
+                } catch (IllegalArgumentException ex) {
+                    System.err.println("Unknown verification mode: " + args[i]);
+                    System.exit(1);
+                }
+            }
+
+            if (args[i].equals("-s"))
+                platformSocket = args[++i];
+
             if (args[i].equals("-r")) {
                 runId = args[++i];
                 doRun = true;
@@ -315,12 +463,23 @@ public class OTLauncher {
             System.exit(1);
         }
 
+        Platform.set(new AndroidPlatform(isDebug));
+
         if (isDebug)
             System.out.println("Debug mode enabled");
 
         try {
+            Pm.setCacheFile(new File(extractPath, "otlauncher-packages.cache"));
+
+            startTime = System.nanoTime();
             descriptorReader = new DescriptorReader(apkFile);
+            descriptorReader.setCacheFile(new File(extractPath, "otlauncher-descriptor.cache"));
+            LaunchTrace.endPhase("open", startTime);
+
+            startTime = System.nanoTime();
             descriptor = descriptorReader.getDescriptor();
+            LaunchTrace.endPhase("descriptor", startTime);
+            Log("Descriptor loaded in " + (System.nanoTime() - startTime) / 1000 + " us");
 
             if (apkFile != null && !apkFile.exists()) {
                 System.err.println("File " + apkFile.getName() + " doesn't exists.");
@@ -349,9 +508,16 @@ public class OTLauncher {
         } catch (JSONException ex) {
             System.err.println("Syntax error in descriptor");
             ex.printStackTrace();
+
+        } catch (Descriptor.LoadException ex) {
+            System.err.println("Error reading package from descriptor");
+            ex.printStackTrace();
         } finally {
             if (descriptorReader != null)
                 descriptorReader.close();
+
+            // When nothing was run.
+            writeTrace();
         }
     }
 }
@@ -17,10 +17,19 @@
 package com.opersys.otlauncher;
 
 import android.app.Service;
+import android.content.BroadcastReceiver;
+import android.content.Context;
 import android.content.Intent;
+import android.content.IntentFilter;
+import android.net.Uri;
 import android.os.IBinder;
 import android.util.Log;
+import com.opersys.otlauncher.service.LitePlatformServer;
+import com.opersys.otlauncher.service.PackageCatalog;
+import com.opersys.otlauncher.service.PlatformEngine;
 import com.opersys.otlauncher.service.PlatformServer;
+import com.opersys.otlauncher.service.ServerSettings;
+import com.opersys.otlauncher.service.SystemSampler;
 
 /**
  * Date: 09/04/15
@@ -30,10 +39,42 @@ public class OTLauncherService extends Service {
 
     private static final String TAG = "OTLauncherService";
 
-    private PlatformServer platformServer;
+    private PlatformEngine platformServer;
 
     private OTLauncherNotification notifMgr;
 
+    private PackageCatalog packageCatalog;
+
+    /**
+     * Runs for as long as the service, so that the history outlives the server.
+     */
+    private SystemSampler systemSampler;
+
+    /**
+     * Keeps the package catalog current, and drops the icons of the packages
+     * which are uninstalled.
+     */
+    private final BroadcastReceiver packageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Uri data = intent.getData();
+
+            // A package being replaced is removed then added again, the second
+            // broadcast is enough.
+            if (Intent.ACTION_PACKAGE_REMOVED.equals(intent.getAction())
+                    && intent.getBooleanExtra(Intent.EXTRA_REPLACING, false))
+                return;
+
+            if (data == null || data.getSchemeSpecificPart() == null)
+                return;
+
+            packageCatalog.update(data.getSchemeSpecificPart());
+
+            if (Intent.ACTION_PACKAGE_REMOVED.equals(intent.getAction()) && platformServer != null)
+                platformServer.removePackage(data.getSchemeSpecificPart());
+        }
+    };
+
     @Override
     public IBinder onBind(Intent intent) {
         return null;
@@ -41,21 +82,63 @@ public class OTLauncherService extends Service {
 
     @Override
     public void onCreate() {
+        IntentFilter packageFilter;
+
         super.onCreate();
 
         notifMgr = new OTLauncherNotification(this);
+
+        packageCatalog = new PackageCatalog(getPackageManager());
+        packageCatalog.start();
+
+        systemSampler = new SystemSampler();
+        systemSampler.start();
+
+        packageFilter = new IntentFilter();
+        packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        packageFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        packageFilter.addDataScheme("package");
+        registerReceiver(packageReceiver, packageFilter);
+    }
+
+    @Override
+    public void onDestroy() {
+        unregisterReceiver(packageReceiver);
+        stopPlatformServer();
+        packageCatalog.stop();
+        systemSampler.stop();
+
+        super.onDestroy();
     }
 
-    protected void startPlatformServer() {
+    protected void startPlatformServer(ServerSettings settings) {
+        long startTime;
+
         if (platformServer != null) {
+            // The other settings stay as they are, but the launcher gives its
+            // applications the socket it asked for.
             Log.w(TAG, "Platform information restlet already started");
+            platformServer.addLocalSocket(settings.getLocalSocket());
             return;
         }
 
         Log.i(TAG, "Asked to start platform information restlet");
 
-        platformServer = new PlatformServer(getPackageManager());
+        startTime = System.nanoTime();
+
+        if (ServerSettings.ENGINE_LITE.equals(settings.getEngine()))
+            platformServer = new LitePlatformServer(getPackageManager(), getCacheDir(),
+                    packageCatalog, systemSampler, settings);
+        else
+            platformServer = new PlatformServer(getPackageManager(), getCacheDir(),
+                    packageCatalog, systemSampler, settings);
+
         platformServer.startServer();
+
+        Log.i(TAG, String.format("Platform server (%s) started in %.1f ms",
+                settings.getEngine(), (System.nanoTime() - startTime) / 1e6));
     }
 
     protected void stopPlatformServer() {
@@ -73,7 +156,7 @@ public class OTLauncherService extends Service {
                 notifMgr.getForegroundNotificationId(),
                 notifMgr.getForegroundNotification());
 
-        startPlatformServer();
+        startPlatformServer(ServerSettings.fromIntent(intent));
 
         return super.onStartCommand(intent, flags, startId);
     }
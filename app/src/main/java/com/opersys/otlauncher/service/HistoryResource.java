@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.service;
+
+import org.json.JSONException;
+import org.restlet.data.CacheDirective;
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.representation.OutputRepresentation;
+import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.resource.Get;
+import org.restlet.resource.ServerResource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * /history?tier=1s|10s&since=T&format=json|binary returns the samples of the
+ * device counters taken after T. See SystemSampler for the formats.
+ */
+public class HistoryResource extends ServerResource {
+
+    @Get
+    public Representation doGet() throws JSONException {
+        final SystemSampler sampler;
+        final long since;
+        final int tier;
+
+        sampler = (SystemSampler) getContext().getAttributes().get("systemSampler");
+        tier = SystemSampler.parseTier(getQuery().getFirstValue("tier"));
+        since = SystemSampler.parseSince(getQuery().getFirstValue("since"));
+
+        if (tier == -1) {
+            setStatus(Status.CLIENT_ERROR_BAD_REQUEST);
+            return null;
+        }
+
+        getResponse().getCacheDirectives().add(CacheDirective.noCache());
+
+        if (!"binary".equals(getQuery().getFirstValue("format")))
+            return new StringRepresentation(sampler.getHistoryJson(tier, since),
+                    MediaType.APPLICATION_JSON);
+
+        return new OutputRepresentation(MediaType.valueOf(SystemSampler.BINARY_MIME_TYPE)) {
+            @Override
+            public void write(OutputStream outputStream) throws IOException {
+                sampler.writeHistory(tier, since, outputStream);
+            }
+        };
+    }
+}
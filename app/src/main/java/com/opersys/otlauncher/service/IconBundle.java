@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.service;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Several icons returned in a single response. The body is a sequence of
+ * records, one per application which was found, in the order of the request.
+ * All integers are big endian.
+ *
+ *   u16  length of the package name
+ *   ...  package name, UTF-8
+ *   u32  length of the icon
+ *   ...  icon, WebP if the request accepts image/webp, PNG otherwise
+ */
+public class IconBundle {
+
+    public static final String MIME_TYPE = "application/octet-stream";
+
+    private final List<byte[]> names;
+
+    private final List<IconCache.Icon> icons;
+
+    private final String tag;
+
+    private final long size;
+
+    public IconBundle(Map<String, IconCache.Icon> icons) {
+        CRC32 crc;
+        byte[] name;
+        long size;
+
+        this.names = new ArrayList<byte[]>(icons.size());
+        this.icons = new ArrayList<IconCache.Icon>(icons.values());
+
+        // The bundle is identified by the names and the tags of its icons.
+        crc = new CRC32();
+        size = 0;
+
+        for (Map.Entry<String, IconCache.Icon> icon : icons.entrySet()) {
+            name = getUtf8(icon.getKey());
+            names.add(name);
+
+            crc.update(name);
+            crc.update(getUtf8(icon.getValue().getTag()));
+            size += 2 + name.length + 4 + icon.getValue().getData().length;
+        }
+
+        this.tag = Long.toHexString(crc.getValue()) + "-" + icons.size();
+        this.size = size;
+    }
+
+    /**
+     * Splits the apps parameter of a request, a comma separated list of packages.
+     */
+    public static List<String> parseApps(String appsParam) {
+        List<String> apps;
+
+        apps = new ArrayList<String>();
+        for (String app : appsParam.split(","))
+            if (app.trim().length() > 0)
+                apps.add(app.trim());
+
+        return apps;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void write(OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(outputStream);
+        byte[] data;
+
+        for (int i = 0; i < icons.size(); i++) {
+            data = icons.get(i).getData();
+
+            out.writeShort(names.get(i).length);
+            out.write(names.get(i));
+            out.writeInt(data.length);
+            out.write(data);
+        }
+        out.flush();
+    }
+
+    private static byte[] getUtf8(String s) {
+        try {
+            return s.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
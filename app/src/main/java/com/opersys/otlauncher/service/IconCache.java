@@ -0,0 +1,808 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.service;
+
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.util.Log;
+import com.opersys.otlauncher.Metrics;
+import com.opersys.otlauncher.Utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+
+/**
+ * Cache of the encoded application icons. Recently used icons are kept in memory
+ * up to a byte budget, and every rendered icon is also saved in a directory so
+ * that it survives a restart of the service. Both tiers are keyed on the
+ * lastUpdateTime of the package, which changes when the package is updated.
+ *
+ * Each size and format of an icon is a separate variant, cached on its own. The
+ * variants of an application are saved in a directory of their own, so that the
+ * icons of older versions are found without listing the icons of every package.
+ *
+ * The time spent encoding and the bytes sent are measured per format, so that
+ * PNG and WebP can be compared on a device from /metrics.
+ */
+public class IconCache {
+
+    private static final String TAG = "IconCache";
+
+    /**
+     * Default size of the memory cache, in bytes.
+     */
+    public static final long DEFAULT_MEMORY_BUDGET = 4 * 1024 * 1024;
+
+    /**
+     * Largest size, in pixels, that can be asked for.
+     */
+    public static final int MAX_SIZE = 512;
+
+    /**
+     * Time during which an icon kept in memory is returned without checking the
+     * package again.
+     */
+    private static final long VALIDATE_INTERVAL_MS = 5000;
+
+    /**
+     * Where the icons came from: memory, disk, rendered, or another request
+     * rendering the same icon (coalesced).
+     */
+    private static final Metrics.Counter memoryHits = getLookupCounter("memory");
+    private static final Metrics.Counter diskHits = getLookupCounter("disk");
+    private static final Metrics.Counter renders = getLookupCounter("rendered");
+    private static final Metrics.Counter coalesced = getLookupCounter("coalesced");
+
+    private static Metrics.Counter getLookupCounter(String result) {
+        return Metrics.get().counter("otlauncher_icon_cache_lookups_total",
+                "Icons served by the icon cache, by where they came from.", "result", result);
+    }
+
+    /**
+     * Bytes of icons written in responses, by format. Not modified responses
+     * don't count.
+     */
+    private static final Map<Format, Metrics.Counter> bytesSent =
+            new EnumMap<Format, Metrics.Counter>(Format.class);
+
+    static {
+        for (Format format : Format.values())
+            bytesSent.put(format, Metrics.get().counter("otlauncher_icon_sent_bytes_total",
+                    "Bytes of icons written in responses.", "format", format.extension));
+    }
+
+    /**
+     * Records the icon data written in a response, of a single icon or of a bundle.
+     */
+    public static void recordSent(Format format, long bytes) {
+        bytesSent.get(format).add(bytes);
+    }
+
+    /**
+     * Encodings in which icons can be returned.
+     */
+    public enum Format {
+        PNG("image/png", "png", "PNG", 100),
+        WEBP("image/webp", "webp", "WEBP", 90);
+
+        private final String mimeType;
+
+        private final String extension;
+
+        private final String compressFormat;
+
+        private final int quality;
+
+        Format(String mimeType, String extension, String compressFormat, int quality) {
+            this.mimeType = mimeType;
+            this.extension = extension;
+            this.compressFormat = compressFormat;
+            this.quality = quality;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+
+        /**
+         * Returns true if the platform can encode this format. The WebP encoder
+         * exists since API 14 but only keeps the alpha channel since API 18.
+         */
+        public boolean isSupported() {
+            return this == PNG || Build.VERSION.SDK_INT >= 18;
+        }
+
+        /**
+         * Picks WebP if an Accept header explicitly accepts it and the platform
+         * can encode it, PNG otherwise.
+         */
+        public static Format fromAccept(String accept) {
+            String[] params;
+            float quality;
+
+            if (accept == null || !WEBP.isSupported())
+                return PNG;
+
+            for (String range : accept.split(",")) {
+                params = range.split(";");
+
+                if (!WEBP.mimeType.equalsIgnoreCase(params[0].trim()))
+                    continue;
+
+                quality = 1;
+                for (int i = 1; i < params.length; i++) {
+                    if (params[i].trim().startsWith("q=")) {
+                        try {
+                            quality = Float.parseFloat(params[i].trim().substring(2));
+                        } catch (NumberFormatException ex) {
+                            quality = 0;
+                        }
+                    }
+                }
+
+                if (quality > 0)
+                    return WEBP;
+            }
+
+            return PNG;
+        }
+
+        Bitmap.CompressFormat getCompressFormat() {
+            return Bitmap.CompressFormat.valueOf(compressFormat);
+        }
+    }
+
+    /**
+     * An encoded icon.
+     */
+    public static class Icon {
+
+        private final byte[] data;
+
+        private final Format format;
+
+        private final long lastUpdateTime;
+
+        private final String tag;
+
+        private long validatedAt;
+
+        Icon(byte[] data, Format format, long lastUpdateTime) {
+            CRC32 crc;
+
+            crc = new CRC32();
+            crc.update(data);
+
+            this.data = data;
+            this.format = format;
+            this.lastUpdateTime = lastUpdateTime;
+            this.tag = Long.toHexString(lastUpdateTime) + "-" + Long.toHexString(crc.getValue());
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public Format getFormat() {
+            return format;
+        }
+
+        /**
+         * Entity tag of the icon, suitable for a strong ETag header.
+         */
+        public String getTag() {
+            return tag;
+        }
+
+        /**
+         * Last update time of the package the icon was taken from.
+         */
+        public long getLastModified() {
+            return lastUpdateTime;
+        }
+
+        /**
+         * Evaluates the If-None-Match and If-Modified-Since conditions of a request.
+         * If-None-Match takes precedence when it is present.
+         *
+         * @param noneMatch the tags of If-None-Match, without quotes, or null
+         * @param modifiedSince the time of If-Modified-Since, or -1
+         */
+        public boolean isNotModified(List<String> noneMatch, long modifiedSince) {
+            if (noneMatch != null && !noneMatch.isEmpty())
+                return noneMatch.contains("*") || noneMatch.contains(tag);
+
+            return modifiedSince != -1 && lastUpdateTime / 1000 <= modifiedSince / 1000;
+        }
+    }
+
+    /**
+     * Where the cache gets the version of the packages and their rendered icons.
+     */
+    interface Source {
+
+        long getLastUpdateTime(String app) throws PackageManager.NameNotFoundException;
+
+        /**
+         * Encodes the icon of an application.
+         *
+         * @param size largest dimension of the icon, 0 for the original size
+         */
+        byte[] render(String app, int size, Format format)
+                throws PackageManager.NameNotFoundException;
+    }
+
+    /**
+     * Renders the icons returned by the package manager.
+     */
+    static class PackageManagerSource implements Source {
+
+        private static final Metrics.Histogram getPackageInfoLatency =
+                PlatformMetrics.getBinderHistogram("getPackageInfo");
+
+        private static final Metrics.Histogram getApplicationIconLatency =
+                PlatformMetrics.getBinderHistogram("getApplicationIcon");
+
+        /**
+         * Time taken by the compression of the bitmaps, and its output, by format.
+         */
+        private static final Map<Format, Metrics.Histogram> encodeLatency =
+                new EnumMap<Format, Metrics.Histogram>(Format.class);
+
+        private static final Map<Format, Metrics.Counter> bytesEncoded =
+                new EnumMap<Format, Metrics.Counter>(Format.class);
+
+        static {
+            for (Format format : Format.values()) {
+                encodeLatency.put(format, Metrics.get().histogram(
+                        "otlauncher_icon_encode_duration_seconds",
+                        "Time taken to compress an icon.", "format", format.extension));
+                bytesEncoded.put(format, Metrics.get().counter(
+                        "otlauncher_icon_encoded_bytes_total",
+                        "Bytes of compressed icons.", "format", format.extension));
+            }
+        }
+
+        private final PackageManager pm;
+
+        PackageManagerSource(PackageManager pm) {
+            this.pm = pm;
+        }
+
+        @Override
+        public long getLastUpdateTime(String app) throws PackageManager.NameNotFoundException {
+            PackageInfo pkgInfo;
+            long startTime;
+
+            startTime = System.nanoTime();
+            pkgInfo = pm.getPackageInfo(app, 0);
+            getPackageInfoLatency.observeSince(startTime);
+
+            return pkgInfo.lastUpdateTime;
+        }
+
+        @Override
+        public byte[] render(String app, int size, Format format)
+                throws PackageManager.NameNotFoundException {
+            ByteArrayOutputStream imgOut;
+            Drawable drawable;
+            Bitmap bitmap;
+            Canvas canvas;
+            int width, height, largest;
+            long startTime, encodeTime;
+
+            startTime = System.nanoTime();
+            drawable = pm.getApplicationIcon(app);
+            getApplicationIconLatency.observeSince(startTime);
+
+            startTime = System.nanoTime();
+
+            if (drawable instanceof BitmapDrawable)
+                bitmap = ((BitmapDrawable) drawable).getBitmap();
+            else {
+                bitmap = Bitmap.createBitmap(Math.max(drawable.getIntrinsicWidth(), 1),
+                        Math.max(drawable.getIntrinsicHeight(), 1), Bitmap.Config.ARGB_8888);
+                canvas = new Canvas(bitmap);
+                drawable.setBounds(0, 0, canvas.getWidth(), canvas.getHeight());
+                drawable.draw(canvas);
+            }
+
+            width = bitmap.getWidth();
+            height = bitmap.getHeight();
+            largest = Math.max(width, height);
+
+            if (size > 0 && size < largest) {
+                bitmap = Bitmap.createScaledBitmap(bitmap,
+                        Math.max(width * size / largest, 1),
+                        Math.max(height * size / largest, 1), true);
+            }
+
+            imgOut = new ByteArrayOutputStream(16 * 1024);
+            encodeTime = System.nanoTime();
+            bitmap.compress(format.getCompressFormat(), format.quality, imgOut);
+            encodeLatency.get(format).observeSince(encodeTime);
+            bytesEncoded.get(format).add(imgOut.size());
+
+            Log.d(TAG, String.format("Encoded %s %dx%d as %dx%d %s: %d bytes in %.2f ms",
+                    app, width, height, bitmap.getWidth(), bitmap.getHeight(), format,
+                    imgOut.size(), (System.nanoTime() - startTime) / 1e6));
+
+            return imgOut.toByteArray();
+        }
+    }
+
+    private final Source source;
+
+    private final File cacheDir;
+
+    private final long memoryBudget;
+
+    private long memoryUsed;
+
+    private final LinkedHashMap<String, Icon> memoryCache;
+
+    private final ConcurrentHashMap<String, FutureTask<Icon>> pending;
+
+    private final long validateInterval;
+
+    private ExecutorService renderPool;
+
+    private boolean stopped;
+
+    IconCache(Source source, File cacheDir, long memoryBudget, long validateInterval) {
+        this.source = source;
+        this.cacheDir = cacheDir;
+        this.memoryBudget = memoryBudget;
+        this.validateInterval = validateInterval;
+        this.memoryCache = new LinkedHashMap<String, Icon>(16, 0.75f, true);
+        this.pending = new ConcurrentHashMap<String, FutureTask<Icon>>();
+
+        if (cacheDir != null && !cacheDir.isDirectory() && !cacheDir.mkdirs())
+            Log.w(TAG, "Could not create icon cache directory " + cacheDir);
+    }
+
+    public IconCache(PackageManager pm, File cacheDir, long memoryBudget) {
+        this(new PackageManagerSource(pm), cacheDir, memoryBudget, VALIDATE_INTERVAL_MS);
+    }
+
+    public IconCache(PackageManager pm, File cacheDir) {
+        this(pm, cacheDir, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Parses the size parameter of a request.
+     *
+     * @return the size, 0 if there is no parameter, or -1 if it is not valid
+     */
+    public static int parseSize(String sizeParam) {
+        int size;
+
+        if (sizeParam == null)
+            return 0;
+
+        try {
+            size = Integer.parseInt(sizeParam);
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+
+        return size >= 0 && size <= MAX_SIZE ? size : -1;
+    }
+
+    /**
+     * Key of a variant in the memory cache. Package names can't contain '@'.
+     */
+    private static String getKey(String app, int size, Format format) {
+        return app + "@" + size + "." + format.extension;
+    }
+
+    private synchronized Icon getFromMemory(String key) {
+        return memoryCache.get(key);
+    }
+
+    private synchronized void putInMemory(String key, Icon icon) {
+        Icon old;
+        Iterator<Icon> it;
+
+        if (icon.data.length > memoryBudget)
+            return;
+
+        old = memoryCache.put(key, icon);
+        if (old != null)
+            memoryUsed -= old.data.length;
+        memoryUsed += icon.data.length;
+
+        // Drop the least recently used icons until we fit in the budget.
+        it = memoryCache.values().iterator();
+        while (memoryUsed > memoryBudget && it.hasNext()) {
+            memoryUsed -= it.next().data.length;
+            it.remove();
+        }
+    }
+
+    /**
+     * Forgets all the variants of the icon of an application, in both tiers.
+     */
+    public void invalidate(String app) {
+        Iterator<Map.Entry<String, Icon>> it;
+        Map.Entry<String, Icon> entry;
+
+        synchronized (this) {
+            it = memoryCache.entrySet().iterator();
+            while (it.hasNext()) {
+                entry = it.next();
+                if (entry.getKey().startsWith(app + "@")) {
+                    memoryUsed -= entry.getValue().data.length;
+                    it.remove();
+                }
+            }
+        }
+
+        if (cacheDir != null)
+            Utils.delete(getAppCacheDir(app), true);
+    }
+
+    /**
+     * Deletes, in the background, the saved icons of the packages which are not
+     * installed anymore. The service calls it when it starts, since packages may
+     * have been removed while it was not running.
+     */
+    public void prune() {
+        try {
+            getRenderPool().submit(new Runnable() {
+                @Override
+                public void run() {
+                    pruneNow();
+                }
+            });
+        } catch (IOException ex) {
+            // Stopped.
+        } catch (RejectedExecutionException ex) {
+            // Stopped.
+        }
+    }
+
+    void pruneNow() {
+        File[] files;
+
+        if (cacheDir == null || (files = cacheDir.listFiles()) == null)
+            return;
+
+        for (File file : files) {
+            // Icons saved before they were kept by application.
+            if (!file.isDirectory()) {
+                file.delete();
+                continue;
+            }
+
+            try {
+                source.getLastUpdateTime(file.getName());
+            } catch (PackageManager.NameNotFoundException ex) {
+                Utils.delete(file, true);
+            } catch (RuntimeException ex) {
+                Log.w(TAG, "Failed to check package " + file.getName(), ex);
+            }
+        }
+    }
+
+    public synchronized long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    public synchronized int getMemoryCount() {
+        return memoryCache.size();
+    }
+
+    /**
+     * Returns the full size PNG icon of an application.
+     */
+    public Icon get(String app) throws PackageManager.NameNotFoundException, IOException {
+        return get(app, 0, Format.PNG);
+    }
+
+    /**
+     * Returns the icon of an application, rendering it only if neither tier has
+     * a copy for the installed version of the package. Concurrent requests for an
+     * icon which is not cached wait on a single rendering.
+     *
+     * @param size largest dimension of the icon in pixels, 0 for the original size.
+     *             Icons are only ever scaled down.
+     */
+    public Icon get(final String app, final int size, final Format format)
+            throws PackageManager.NameNotFoundException, IOException {
+        final long lastUpdateTime;
+        FutureTask<Icon> task, running;
+        String key;
+        Icon icon;
+
+        if (size < 0 || size > MAX_SIZE)
+            throw new IllegalArgumentException("Invalid icon size: " + size);
+
+        key = getKey(app, size, format);
+        icon = getFromMemory(key);
+
+        if (icon != null && System.currentTimeMillis() - icon.validatedAt < validateInterval) {
+            memoryHits.inc();
+            return icon;
+        }
+
+        lastUpdateTime = source.getLastUpdateTime(app);
+
+        if (icon != null && icon.lastUpdateTime == lastUpdateTime) {
+            icon.validatedAt = System.currentTimeMillis();
+            memoryHits.inc();
+            return icon;
+        }
+
+        task = new FutureTask<Icon>(new Callable<Icon>() {
+            @Override
+            public Icon call() throws Exception {
+                return load(app, size, format, lastUpdateTime);
+            }
+        });
+
+        running = pending.putIfAbsent(key, task);
+        if (running == null) {
+            try {
+                task.run();
+            } finally {
+                pending.remove(key, task);
+            }
+            running = task;
+        }
+        else
+            coalesced.inc();
+
+        try {
+            return running.get();
+
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the icon of " + app);
+
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof PackageManager.NameNotFoundException)
+                throw (PackageManager.NameNotFoundException) ex.getCause();
+            if (ex.getCause() instanceof IOException)
+                throw (IOException) ex.getCause();
+            throw new IOException("Failed to render the icon of " + app + ": " + ex.getCause());
+        }
+    }
+
+    private synchronized ExecutorService getRenderPool() throws IOException {
+        if (stopped)
+            throw new IOException("Icon cache stopped");
+
+        if (renderPool == null) {
+            renderPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(),
+                    new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "IconCache");
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        }
+        return renderPool;
+    }
+
+    /**
+     * Stops the threads rendering icons for getAll(), which fails from then on.
+     */
+    public synchronized void stop() {
+        stopped = true;
+
+        if (renderPool != null)
+            renderPool.shutdownNow();
+    }
+
+    /**
+     * Returns the icons of several applications, in the order in which they were
+     * asked. The icons which are not cached are rendered in parallel. Unknown
+     * packages are left out of the result.
+     */
+    public Map<String, Icon> getAll(List<String> apps, final int size, final Format format)
+            throws IOException {
+        List<Future<Icon>> futures;
+        Map<String, Icon> icons;
+        Icon icon;
+
+        futures = new ArrayList<Future<Icon>>(apps.size());
+        icons = new LinkedHashMap<String, Icon>();
+
+        try {
+            for (final String app : apps) {
+                futures.add(getRenderPool().submit(new Callable<Icon>() {
+                    @Override
+                    public Icon call() throws Exception {
+                        return get(app, size, format);
+                    }
+                }));
+            }
+        } catch (RejectedExecutionException ex) {
+            // Stopped while submitting.
+            for (Future<Icon> future : futures)
+                future.cancel(true);
+            throw new IOException("Icon cache stopped");
+        }
+
+        for (int i = 0; i < apps.size(); i++) {
+            try {
+                icon = futures.get(i).get();
+                icons.put(apps.get(i), icon);
+
+            } catch (InterruptedException ex) {
+                for (Future<Icon> future : futures)
+                    future.cancel(true);
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the icons");
+
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof PackageManager.NameNotFoundException)
+                    continue;
+                Log.w(TAG, "Failed to get the icon of " + apps.get(i), ex.getCause());
+            }
+        }
+
+        return icons;
+    }
+
+    private Icon load(String app, int size, Format format, long lastUpdateTime)
+            throws PackageManager.NameNotFoundException, IOException {
+        File cacheFile;
+        byte[] data;
+        Icon icon;
+
+        cacheFile = getCacheFile(app, size, format, lastUpdateTime);
+        data = readCacheFile(cacheFile);
+
+        if (data == null) {
+            data = source.render(app, size, format);
+            writeCacheFile(app, lastUpdateTime, cacheFile, data);
+            renders.inc();
+        }
+        else
+            diskHits.inc();
+
+        icon = new Icon(data, format, lastUpdateTime);
+        icon.validatedAt = System.currentTimeMillis();
+        putInMemory(getKey(app, size, format), icon);
+
+        return icon;
+    }
+
+    private File getAppCacheDir(String app) {
+        return new File(cacheDir, app);
+    }
+
+    private String getCacheFilePrefix(long lastUpdateTime) {
+        return Long.toHexString(lastUpdateTime) + "-";
+    }
+
+    private File getCacheFile(String app, int size, Format format, long lastUpdateTime) {
+        if (cacheDir == null)
+            return null;
+
+        return new File(getAppCacheDir(app),
+                getCacheFilePrefix(lastUpdateTime) + size + "." + format.extension);
+    }
+
+    private byte[] readCacheFile(File cacheFile) {
+        FileInputStream in = null;
+        byte[] data;
+        int n, off;
+
+        if (cacheFile == null || !cacheFile.isFile())
+            return null;
+
+        try {
+            in = new FileInputStream(cacheFile);
+            data = new byte[(int) cacheFile.length()];
+
+            for (off = 0; off < data.length; off += n)
+                if ((n = in.read(data, off, data.length - off)) < 0)
+                    return null;
+
+            return data;
+
+        } catch (IOException ex) {
+            Log.w(TAG, "Failed to read cached icon " + cacheFile, ex);
+            return null;
+        } finally {
+            if (in != null)
+                try { in.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    private void writeCacheFile(String app, long lastUpdateTime, File cacheFile, byte[] data) {
+        FileOutputStream out = null;
+        File tmpFile;
+
+        if (cacheFile == null)
+            return;
+
+        // Icons of older versions of the package are of no use anymore.
+        deleteCacheFiles(app, lastUpdateTime);
+
+        tmpFile = new File(cacheFile.getPath() + ".tmp");
+
+        try {
+            if (!cacheFile.getParentFile().isDirectory() && !cacheFile.getParentFile().mkdirs())
+                throw new IOException("Could not create " + cacheFile.getParentFile());
+
+            out = new FileOutputStream(tmpFile);
+            out.write(data);
+            out.close();
+            out = null;
+
+            if (!tmpFile.renameTo(cacheFile))
+                Log.w(TAG, "Failed to save cached icon " + cacheFile);
+
+        } catch (IOException ex) {
+            Log.w(TAG, "Failed to save cached icon " + cacheFile, ex);
+        } finally {
+            if (out != null)
+                try { out.close(); } catch (IOException ignored) {}
+            if (tmpFile.exists())
+                tmpFile.delete();
+        }
+    }
+
+    /**
+     * Deletes the saved icons of an application, except those of the version
+     * identified by keepUpdateTime. Only the directory of the application is
+     * listed, which holds a few variants.
+     */
+    private void deleteCacheFiles(String app, long keepUpdateTime) {
+        String keepPrefix;
+        File[] files;
+
+        if ((files = getAppCacheDir(app).listFiles()) == null)
+            return;
+
+        keepPrefix = getCacheFilePrefix(keepUpdateTime);
+
+        for (File file : files)
+            if (!file.getName().startsWith(keepPrefix))
+                file.delete();
+    }
+}
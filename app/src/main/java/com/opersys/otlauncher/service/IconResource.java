@@ -17,60 +17,159 @@
 package com.opersys.otlauncher.service;
 
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.drawable.BitmapDrawable;
 import android.util.Log;
 import org.restlet.data.CacheDirective;
+import org.restlet.data.Dimension;
 import org.restlet.data.MediaType;
+import org.restlet.data.Preference;
+import org.restlet.data.Status;
+import org.restlet.data.Tag;
+import org.restlet.representation.EmptyRepresentation;
 import org.restlet.representation.OutputRepresentation;
 import org.restlet.representation.Representation;
-import org.restlet.representation.StreamRepresentation;
 import org.restlet.resource.Get;
+import org.restlet.resource.ResourceException;
 import org.restlet.resource.ServerResource;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
 
 public class IconResource extends ServerResource {
 
     private static final String TAG = "IconResource";
-    protected PackageManager pm;
+
+    @Override
+    protected void doInit() throws ResourceException {
+        // The conditions are checked against the cached icon in doGet(), we don't
+        // want Restlet to render the icon once more just to get its tag.
+        setConditional(false);
+    }
+
+    /**
+     * Reads the size parameter of the query, 0 if there is none.
+     *
+     * @return the size, or -1 if it is not valid
+     */
+    static int getRequestedSize(ServerResource resource) {
+        return IconCache.parseSize(resource.getQuery().getFirstValue("size"));
+    }
+
+    /**
+     * Picks WebP if the client explicitly accepts it and the platform can encode
+     * it, PNG otherwise.
+     */
+    static IconCache.Format getRequestedFormat(ServerResource resource) {
+        List<Preference<MediaType>> accepted;
+
+        // The response depends on the Accept header.
+        resource.getResponse().getDimensions().add(Dimension.MEDIA_TYPE);
+
+        if (!IconCache.Format.WEBP.isSupported())
+            return IconCache.Format.PNG;
+
+        accepted = resource.getRequest().getClientInfo().getAcceptedMediaTypes();
+
+        for (Preference<MediaType> pref : accepted)
+            if (IconCache.Format.WEBP.getMimeType().equals(pref.getMetadata().getName())
+                    && pref.getQuality() > 0)
+                return IconCache.Format.WEBP;
+
+        return IconCache.Format.PNG;
+    }
+
+    /**
+     * Returns the tags of the If-None-Match header of the request, without quotes.
+     */
+    static List<String> getNoneMatch(ServerResource resource) {
+        List<String> noneMatch;
+        List<Tag> tags;
+
+        noneMatch = new ArrayList<String>();
+        tags = resource.getRequest().getConditions().getNoneMatch();
+
+        if (tags != null)
+            for (Tag tag : tags)
+                noneMatch.add(tag.getName());
+
+        return noneMatch;
+    }
+
+    /**
+     * Returns the time of the If-Modified-Since header of the request, or -1.
+     */
+    static long getModifiedSince(ServerResource resource) {
+        Date modifiedSince;
+
+        modifiedSince = resource.getRequest().getConditions().getModifiedSince();
+
+        return modifiedSince != null ? modifiedSince.getTime() : -1;
+    }
 
     @Get
     public Representation doGet() {
-        final BitmapDrawable drawable;
-        final ByteArrayOutputStream imgOut;
+        final IconCache.Icon icon;
+        IconCache iconCache;
+        Representation rep;
+        IconCache.Format format;
         String app;
-        PackageManager pm;
-        StreamRepresentation sr = null;
+        int size;
 
-        pm = (PackageManager) getContext().getAttributes().get("pm");
+        iconCache = (IconCache) getContext().getAttributes().get("iconCache");
+        app = (String) getRequest().getAttributes().get("app");
+
+        if (app == null) {
+            setStatus(Status.CLIENT_ERROR_NOT_FOUND);
+            return null;
+        }
+
+        size = getRequestedSize(this);
+        if (size < 0) {
+            setStatus(Status.CLIENT_ERROR_BAD_REQUEST);
+            return null;
+        }
+
+        format = getRequestedFormat(this);
+
+        try {
+            icon = iconCache.get(app, size, format);
+
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.e(TAG, "Package not found: " + app);
+            setStatus(Status.CLIENT_ERROR_NOT_FOUND);
+            return null;
+
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to get the icon of " + app, e);
+            setStatus(Status.SERVER_ERROR_INTERNAL);
+            return null;
+        }
 
         // Make sure this is cached for a little while.
         getResponse().getCacheDirectives().add(
                 CacheDirective.maxAge(3600 * 24)
         );
 
-        app = (String) getRequest().getAttributes().get("app");
-
-        try {
-            drawable = (BitmapDrawable) pm.getApplicationIcon(app);
-            imgOut = new ByteArrayOutputStream();
-            drawable.getBitmap().compress(Bitmap.CompressFormat.PNG, 100, imgOut);
-
-            sr = new OutputRepresentation(MediaType.IMAGE_PNG, imgOut.size()) {
+        if (icon.isNotModified(getNoneMatch(this), getModifiedSince(this))) {
+            setStatus(Status.REDIRECTION_NOT_MODIFIED);
+            rep = new EmptyRepresentation();
+        }
+        else {
+            rep = new OutputRepresentation(
+                    MediaType.valueOf(format.getMimeType()), icon.getData().length) {
                 @Override
                 public void write(OutputStream outputStream) throws IOException {
-                    outputStream.write(imgOut.toByteArray());
+                    outputStream.write(icon.getData());
                 }
             };
-
-        } catch (PackageManager.NameNotFoundException e) {
-            Log.e(TAG, "Package not found: " + pm);
+            IconCache.recordSent(format, icon.getData().length);
         }
 
-        return sr;
+        rep.setTag(new Tag(icon.getTag(), false));
+        rep.setModificationDate(new Date(icon.getLastModified()));
+
+        return rep;
     }
 }
-
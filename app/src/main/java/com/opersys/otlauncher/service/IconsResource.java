@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.service;
+
+import android.util.Log;
+import org.restlet.data.CacheDirective;
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.data.Tag;
+import org.restlet.representation.EmptyRepresentation;
+import org.restlet.representation.OutputRepresentation;
+import org.restlet.representation.Representation;
+import org.restlet.resource.Get;
+import org.restlet.resource.ResourceException;
+import org.restlet.resource.ServerResource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Returns the icons of several applications in a single response, for example
+ * /icons?apps=com.android.settings,com.android.browser
+ *
+ * See IconBundle for the format of the response. The size parameter can be used
+ * like on /icon/{app}.
+ */
+public class IconsResource extends ServerResource {
+
+    private static final String TAG = "IconsResource";
+
+    @Override
+    protected void doInit() throws ResourceException {
+        setConditional(false);
+    }
+
+    @Get
+    public Representation doGet() {
+        final IconBundle bundle;
+        Map<String, IconCache.Icon> icons;
+        IconCache iconCache;
+        Representation rep;
+        List<String> apps;
+        List<String> noneMatch;
+        IconCache.Format format;
+        String appsParam;
+        int iconSize;
+
+        iconCache = (IconCache) getContext().getAttributes().get("iconCache");
+        appsParam = getQuery().getFirstValue("apps");
+
+        if (appsParam == null) {
+            setStatus(Status.CLIENT_ERROR_BAD_REQUEST);
+            return null;
+        }
+
+        iconSize = IconResource.getRequestedSize(this);
+        if (iconSize < 0) {
+            setStatus(Status.CLIENT_ERROR_BAD_REQUEST);
+            return null;
+        }
+
+        format = IconResource.getRequestedFormat(this);
+
+        apps = IconBundle.parseApps(appsParam);
+
+        try {
+            icons = iconCache.getAll(apps, iconSize, format);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to get icons", e);
+            setStatus(Status.SERVER_ERROR_INTERNAL);
+            return null;
+        }
+
+        bundle = new IconBundle(icons);
+
+        getResponse().getCacheDirectives().add(
+                CacheDirective.maxAge(3600 * 24)
+        );
+
+        noneMatch = IconResource.getNoneMatch(this);
+        if (noneMatch.contains("*") || noneMatch.contains(bundle.getTag())) {
+            setStatus(Status.REDIRECTION_NOT_MODIFIED);
+            rep = new EmptyRepresentation();
+        }
+        else {
+            rep = new OutputRepresentation(
+                    MediaType.valueOf(IconBundle.MIME_TYPE), bundle.getSize()) {
+                @Override
+                public void write(OutputStream outputStream) throws IOException {
+                    bundle.write(outputStream);
+                }
+            };
+            IconCache.recordSent(format, bundle.getSize());
+        }
+
+        rep.setTag(new Tag(bundle.getTag(), false));
+
+        return rep;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.service;
+
+import android.content.pm.PackageManager;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Engine serving the routes of PlatformApp through PlatformHttpHandler, without
+ * loading Restlet. It is meant for low-end devices, where initializing the
+ * Restlet component delays the moment the port becomes usable.
+ */
+public class LitePlatformServer implements PlatformEngine {
+
+    private static final String TAG = "LitePlatformServer";
+
+    private final ServerSettings settings;
+
+    private final PlatformHttpHandler handler;
+
+    private final LocalPlatformListener localListener;
+
+    private final ProcessSampler processSampler;
+
+    private final IconCache iconCache;
+
+    private ServerSocket serverSocket;
+
+    private Thread acceptThread;
+
+    public LitePlatformServer(PackageManager pm, File cacheDir, PackageCatalog catalog,
+                              SystemSampler systemSampler, ServerSettings settings) {
+        this.settings = settings;
+        this.processSampler = new ProcessSampler(settings.getProcessIntervalMs(),
+                settings.getMaxStreams());
+        this.iconCache = new IconCache(pm, new File(cacheDir, "icons"));
+        this.handler = new PlatformHttpHandler(iconCache, catalog, processSampler,
+                systemSampler, new RequestLimiter(settings));
+        this.localListener = new LocalPlatformListener(settings, handler);
+    }
+
+    @Override
+    public void startServer() {
+        try {
+            serverSocket = new ServerSocket();
+            serverSocket.setReuseAddress(true);
+            serverSocket.bind(new InetSocketAddress(PORT));
+
+        } catch (IOException e) {
+            Log.w(TAG, "Platform information server failed to start", e);
+            return;
+        }
+
+        acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections(serverSocket);
+            }
+        }, "LitePlatformServer-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+
+        localListener.start();
+        iconCache.prune();
+
+        Log.i(TAG, "Platform information server started");
+    }
+
+    @Override
+    public void stopServer() {
+        try {
+            if (serverSocket != null)
+                serverSocket.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Platform information server failed to stop", e);
+        }
+
+        localListener.stop();
+        handler.shutdown();
+        processSampler.stop();
+        iconCache.stop();
+
+        Log.i(TAG, "Platform information server stopped");
+    }
+
+    @Override
+    public void addLocalSocket(String name) {
+        localListener.listen(name);
+    }
+
+    @Override
+    public void removePackage(String app) {
+        iconCache.invalidate(app);
+    }
+
+    /**
+     * Socket only implements Closeable from API 19.
+     */
+    private static Closeable closer(final Socket socket) {
+        return new Closeable() {
+            @Override
+            public void close() throws IOException {
+                socket.close();
+            }
+        };
+    }
+
+    private void acceptConnections(ServerSocket server) {
+        Socket socket;
+
+        while (!server.isClosed()) {
+            try {
+                socket = server.accept();
+                socket.setSoTimeout(settings.getIdleTimeoutMs());
+
+                handler.submit(socket.getInputStream(), socket.getOutputStream(), closer(socket));
+
+            } catch (IOException e) {
+                if (!server.isClosed())
+                    Log.w(TAG, "Failed to accept a connection", e);
+            }
+        }
+    }
+}
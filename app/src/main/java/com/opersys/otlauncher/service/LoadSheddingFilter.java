@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.service;
+
+import org.restlet.Context;
+import org.restlet.Request;
+import org.restlet.Response;
+import org.restlet.data.Status;
+import org.restlet.routing.Filter;
+
+import java.util.Date;
+
+/**
+ * Applies a RequestLimiter to the requests of the Restlet engine, answering
+ * 503 with a Retry-After header to those it rejects. The time taken by the
+ * accepted requests is recorded in PlatformMetrics.
+ */
+public class LoadSheddingFilter extends Filter {
+
+    private final RequestLimiter limiter;
+
+    public LoadSheddingFilter(Context context, RequestLimiter limiter) {
+        super(context);
+
+        this.limiter = limiter;
+    }
+
+    @Override
+    protected int beforeHandle(Request request, Response response) {
+        if (limiter.acquire())
+            return CONTINUE;
+
+        response.setStatus(Status.SERVER_ERROR_SERVICE_UNAVAILABLE);
+        response.setRetryAfter(new Date(System.currentTimeMillis()
+                + RequestLimiter.RETRY_AFTER_SECS * 1000));
+        return STOP;
+    }
+
+    @Override
+    protected int doHandle(Request request, Response response) {
+        // Only called once a worker was acquired. The permit is released here
+        // rather than in afterHandle(), which is skipped if the next restlet throws.
+        long startTime = System.nanoTime();
+
+        try {
+            return super.doHandle(request, response);
+        } finally {
+            limiter.release();
+            PlatformMetrics.recordRequest(request.getResourceRef().getPath(), startTime);
+        }
+    }
+
+    public RequestLimiter getLimiter() {
+        return limiter;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.service;
+
+import android.net.LocalServerSocket;
+import android.net.LocalSocket;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Serves the platform information routes on a socket of the abstract local
+ * namespace. This avoids the TCP stack, and port conflicts, for the clients
+ * running on the device. When the launcher is given the name of the socket (-s),
+ * it passes it to the applications it starts in the PLATFORM_SOCKET environment
+ * variable.
+ *
+ * A launcher may ask for another name while the service already runs, so there
+ * can be several sockets, each with its own accept thread.
+ */
+public class LocalPlatformListener {
+
+    private static final String TAG = "LocalPlatformListener";
+
+    private final ServerSettings settings;
+
+    private final PlatformHttpHandler handler;
+
+    private final Map<String, LocalServerSocket> serverSockets =
+            new LinkedHashMap<String, LocalServerSocket>();
+
+    private volatile boolean stopped;
+
+    public LocalPlatformListener(ServerSettings settings, PlatformHttpHandler handler) {
+        this.settings = settings;
+        this.handler = handler;
+    }
+
+    public void start() {
+        listen(settings.getLocalSocket());
+    }
+
+    /**
+     * Listens on one more socket. Does nothing if we already listen on it.
+     */
+    public synchronized void listen(final String name) {
+        final LocalServerSocket serverSocket;
+        Thread acceptThread;
+
+        if (name == null || name.length() == 0 || stopped || serverSockets.containsKey(name))
+            return;
+
+        try {
+            serverSocket = new LocalServerSocket(name);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to listen on local socket " + name, e);
+            return;
+        }
+
+        serverSockets.put(name, serverSocket);
+
+        acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections(serverSocket, name);
+            }
+        }, "LocalPlatformListener-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+
+        Log.i(TAG, "Listening on local socket " + name);
+    }
+
+    public synchronized void stop() {
+        LocalSocket wakeUp;
+
+        stopped = true;
+
+        for (Map.Entry<String, LocalServerSocket> serverSocket : serverSockets.entrySet()) {
+            // Closing a LocalServerSocket doesn't wake up accept(), so we connect
+            // to it first.
+            try {
+                wakeUp = new LocalSocket();
+                wakeUp.connect(serverSocket.getValue().getLocalSocketAddress());
+                wakeUp.close();
+            } catch (IOException ignored) {}
+
+            try {
+                serverSocket.getValue().close();
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to close local socket " + serverSocket.getKey(), e);
+            }
+        }
+
+        serverSockets.clear();
+    }
+
+    private void acceptConnections(LocalServerSocket serverSocket, String name) {
+        LocalSocket socket;
+
+        while (!stopped) {
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (!stopped)
+                    Log.w(TAG, "Failed to accept a connection on " + name, e);
+                return;
+            }
+
+            if (stopped) {
+                try { socket.close(); } catch (IOException ignored) {}
+                return;
+            }
+
+            serveConnection(socket);
+        }
+    }
+
+    private void serveConnection(final LocalSocket socket) {
+        try {
+            socket.setSoTimeout(settings.getIdleTimeoutMs());
+
+            // LocalSocket only implements Closeable from API 17. The handler may
+            // close an idle connection from another thread, which only wakes up
+            // its read once the input is shut down.
+            handler.submit(socket.getInputStream(), socket.getOutputStream(), new Closeable() {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        socket.shutdownInput();
+                    } catch (IOException ignored) {}
+                    socket.close();
+                }
+            });
+
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to serve a connection", e);
+            try { socket.close(); } catch (IOException ignored) {}
+        }
+    }
+}
@@ -0,0 +1,439 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.service;
+
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.util.Log;
+import com.opersys.otlauncher.Metrics;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * In-memory catalog of the installed packages, kept current by the package
+ * broadcasts that OTLauncherService receives.
+ *
+ * Every change increments the version of the catalog and is kept in a bounded
+ * log, so that clients can ask only for the changes since the version they
+ * know. Versions start from the time at which the catalog was created, so that
+ * a version from before a restart of the service is simply too old and gets a
+ * full snapshot.
+ */
+public class PackageCatalog {
+
+    private static final String TAG = "PackageCatalog";
+
+    /**
+     * Number of changes kept for the clients asking for deltas.
+     */
+    static final int MAX_LOG_SIZE = 1024;
+
+    /**
+     * What we know about a package.
+     */
+    public static class Entry {
+        private final String name;
+        private final String label;
+        private final String versionName;
+        private final int versionCode;
+        private final long lastUpdateTime;
+
+        Entry(String name, String label, String versionName, int versionCode, long lastUpdateTime) {
+            this.name = name;
+            this.label = label;
+            this.versionName = versionName;
+            this.versionCode = versionCode;
+            this.lastUpdateTime = lastUpdateTime;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+
+        public String getVersionName() {
+            return versionName;
+        }
+
+        public int getVersionCode() {
+            return versionCode;
+        }
+
+        public long getLastUpdateTime() {
+            return lastUpdateTime;
+        }
+
+        boolean isSame(Entry other) {
+            return other != null && versionCode == other.versionCode
+                    && lastUpdateTime == other.lastUpdateTime
+                    && label.equals(other.label)
+                    && (versionName == null ? other.versionName == null
+                                            : versionName.equals(other.versionName));
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+
+            json.put("name", name);
+            json.put("label", label);
+            json.put("versionName", versionName != null ? versionName : JSONObject.NULL);
+            json.put("versionCode", versionCode);
+            json.put("lastUpdateTime", lastUpdateTime);
+            return json;
+        }
+    }
+
+    /**
+     * Where the catalog reads the packages from.
+     */
+    interface Source {
+
+        List<Entry> getInstalledEntries();
+
+        /**
+         * @return null if the package is not installed
+         */
+        Entry getEntry(String name);
+    }
+
+    /**
+     * Reads the packages from the package manager.
+     */
+    static class PackageManagerSource implements Source {
+
+        private static final Metrics.Histogram getPackageInfoLatency =
+                PlatformMetrics.getBinderHistogram("getPackageInfo");
+
+        private static final Metrics.Histogram getInstalledPackagesLatency =
+                PlatformMetrics.getBinderHistogram("getInstalledPackages");
+
+        private final PackageManager pm;
+
+        PackageManagerSource(PackageManager pm) {
+            this.pm = pm;
+        }
+
+        private Entry readEntry(PackageInfo pkgInfo) {
+            CharSequence label;
+
+            label = pkgInfo.applicationInfo != null ? pkgInfo.applicationInfo.loadLabel(pm) : null;
+
+            return new Entry(pkgInfo.packageName,
+                    label != null ? label.toString() : pkgInfo.packageName,
+                    pkgInfo.versionName, pkgInfo.versionCode, pkgInfo.lastUpdateTime);
+        }
+
+        @Override
+        public List<Entry> getInstalledEntries() {
+            List<PackageInfo> pkgInfos;
+            List<Entry> installed;
+            long startTime;
+
+            startTime = System.nanoTime();
+            pkgInfos = pm.getInstalledPackages(0);
+            getInstalledPackagesLatency.observeSince(startTime);
+
+            installed = new ArrayList<Entry>(pkgInfos.size());
+            for (PackageInfo pkgInfo : pkgInfos)
+                installed.add(readEntry(pkgInfo));
+
+            return installed;
+        }
+
+        @Override
+        public Entry getEntry(String name) {
+            PackageInfo pkgInfo;
+            long startTime;
+
+            try {
+                startTime = System.nanoTime();
+                pkgInfo = pm.getPackageInfo(name, 0);
+                getPackageInfoLatency.observeSince(startTime);
+            } catch (PackageManager.NameNotFoundException e) {
+                return null;
+            }
+
+            return readEntry(pkgInfo);
+        }
+    }
+
+    /**
+     * A change of the catalog. The entry is null when the package was removed.
+     */
+    private static class Change {
+        final long version;
+        final String name;
+        final Entry entry;
+
+        Change(long version, String name, Entry entry) {
+            this.version = version;
+            this.name = name;
+            this.entry = entry;
+        }
+    }
+
+    /**
+     * The full catalog, encoded, with its entity tag.
+     */
+    public static class Snapshot {
+        private final String json;
+        private final String tag;
+
+        Snapshot(String json, long version) {
+            this.json = json;
+            this.tag = Long.toHexString(version);
+        }
+
+        public String getJson() {
+            return json;
+        }
+
+        public String getTag() {
+            return tag;
+        }
+    }
+
+    private final Source source;
+
+    private final TreeMap<String, Entry> entries = new TreeMap<String, Entry>();
+
+    private final LinkedList<Change> log = new LinkedList<Change>();
+
+    private final ExecutorService updater;
+
+    private final long baseVersion;
+
+    private long version;
+
+    private boolean loaded;
+
+    private Snapshot snapshot;
+
+    public PackageCatalog(PackageManager pm) {
+        this(new PackageManagerSource(pm));
+    }
+
+    PackageCatalog(Source source) {
+        this.source = source;
+        this.baseVersion = System.currentTimeMillis();
+        this.version = baseVersion;
+
+        // Updates come from the main thread of the service, where we don't want
+        // to load labels.
+        this.updater = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "PackageCatalog");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Loads the catalog in the background, so that it is ready when the first
+     * request comes.
+     */
+    public void start() {
+        updater.execute(new Runnable() {
+            @Override
+            public void run() {
+                ensureLoaded();
+            }
+        });
+    }
+
+    public void stop() {
+        updater.shutdownNow();
+    }
+
+    private synchronized void ensureLoaded() {
+        long startTime;
+
+        if (loaded)
+            return;
+
+        startTime = System.nanoTime();
+
+        for (Entry entry : source.getInstalledEntries())
+            entries.put(entry.getName(), entry);
+
+        loaded = true;
+
+        Log.i(TAG, String.format("Loaded %d packages in %.1f ms", entries.size(),
+                (System.nanoTime() - startTime) / 1e6));
+    }
+
+    /**
+     * Reads a package again after it was added, changed or removed.
+     */
+    public void update(final String name) {
+        updater.execute(new Runnable() {
+            @Override
+            public void run() {
+                updateNow(name);
+            }
+        });
+    }
+
+    /**
+     * Reads a package again, on the calling thread.
+     */
+    void updateNow(String name) {
+        Entry entry = source.getEntry(name);
+
+        synchronized (this) {
+            ensureLoaded();
+            apply(name, entry);
+        }
+    }
+
+    private void apply(String name, Entry entry) {
+        Entry old;
+
+        old = entry != null ? entries.put(name, entry) : entries.remove(name);
+
+        if (entry == null ? old == null : entry.isSame(old))
+            return;
+
+        version++;
+        snapshot = null;
+
+        log.addLast(new Change(version, name, entry));
+        if (log.size() > MAX_LOG_SIZE)
+            log.removeFirst();
+
+        Log.d(TAG, (entry == null ? "Removed " : "Updated ") + name + ", version " + version);
+    }
+
+    public synchronized long getVersion() {
+        ensureLoaded();
+        return version;
+    }
+
+    public synchronized List<Entry> getEntries() {
+        ensureLoaded();
+        return new ArrayList<Entry>(entries.values());
+    }
+
+    /**
+     * Returns the full catalog:
+     *
+     *   {"version": 1429..., "full": true, "packages": [{"name": ..., "label": ...,
+     *    "versionName": ..., "versionCode": ..., "lastUpdateTime": ...}, ...]}
+     *
+     * The string is kept until the catalog changes.
+     */
+    public synchronized Snapshot getSnapshot() throws JSONException {
+        JSONObject json;
+        JSONArray packages;
+
+        ensureLoaded();
+
+        if (snapshot != null)
+            return snapshot;
+
+        packages = new JSONArray();
+        for (Entry entry : entries.values())
+            packages.put(entry.toJson());
+
+        json = new JSONObject();
+        json.put("version", version);
+        json.put("full", true);
+        json.put("packages", packages);
+
+        snapshot = new Snapshot(json.toString(), version);
+        return snapshot;
+    }
+
+    /**
+     * Returns the changes since a version, one per package, or the full catalog if
+     * the log doesn't go back that far:
+     *
+     *   {"version": 1429..., "full": false, "changes": [{"name": ..., "removed": true},
+     *    {"name": ..., "label": ..., ...}, ...]}
+     */
+    public synchronized String getDeltaJson(long since) throws JSONException {
+        Map<String, Change> changes;
+        JSONArray changesJson;
+        JSONObject json, change;
+
+        ensureLoaded();
+
+        if (since < baseVersion || since > version
+                || (since < version && (log.isEmpty() || log.getFirst().version > since + 1)))
+            return getSnapshot().getJson();
+
+        // Only the last change of each package matters.
+        changes = new LinkedHashMap<String, Change>();
+        for (Change c : log) {
+            if (c.version > since) {
+                changes.remove(c.name);
+                changes.put(c.name, c);
+            }
+        }
+
+        changesJson = new JSONArray();
+        for (Change c : changes.values()) {
+            if (c.entry != null)
+                change = c.entry.toJson();
+            else {
+                change = new JSONObject();
+                change.put("name", c.name);
+                change.put("removed", true);
+            }
+            changesJson.put(change);
+        }
+
+        json = new JSONObject();
+        json.put("version", version);
+        json.put("full", false);
+        json.put("changes", changesJson);
+
+        return json.toString();
+    }
+
+    /**
+     * Parses the since parameter of a request.
+     *
+     * @return the version, or -1 if there is no valid parameter
+     */
+    public static long parseSince(String sinceParam) {
+        if (sinceParam == null)
+            return -1;
+
+        try {
+            return Long.parseLong(sinceParam);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
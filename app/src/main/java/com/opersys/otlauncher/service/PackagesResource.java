@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.service;
+
+import org.json.JSONException;
+import org.restlet.data.CacheDirective;
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.data.Tag;
+import org.restlet.representation.EmptyRepresentation;
+import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.resource.Get;
+import org.restlet.resource.ResourceException;
+import org.restlet.resource.ServerResource;
+
+import java.util.List;
+
+/**
+ * Lists the installed packages. /packages returns the full catalog with an
+ * ETag, /packages?since=N only what changed after version N. See PackageCatalog.
+ */
+public class PackagesResource extends ServerResource {
+
+    @Override
+    protected void doInit() throws ResourceException {
+        setConditional(false);
+    }
+
+    @Get
+    public Representation doGet() throws JSONException {
+        PackageCatalog.Snapshot snapshot;
+        PackageCatalog catalog;
+        List<String> noneMatch;
+        Representation rep;
+        long since;
+
+        catalog = (PackageCatalog) getContext().getAttributes().get("packageCatalog");
+        since = PackageCatalog.parseSince(getQuery().getFirstValue("since"));
+
+        getResponse().getCacheDirectives().add(CacheDirective.noCache());
+
+        if (since != -1)
+            return new StringRepresentation(catalog.getDeltaJson(since), MediaType.APPLICATION_JSON);
+
+        snapshot = catalog.getSnapshot();
+        noneMatch = IconResource.getNoneMatch(this);
+
+        if (noneMatch.contains("*") || noneMatch.contains(snapshot.getTag())) {
+            setStatus(Status.REDIRECTION_NOT_MODIFIED);
+            rep = new EmptyRepresentation();
+        }
+        else
+            rep = new StringRepresentation(snapshot.getJson(), MediaType.APPLICATION_JSON);
+
+        rep.setTag(new Tag(snapshot.getTag(), false));
+
+        return rep;
+    }
+}
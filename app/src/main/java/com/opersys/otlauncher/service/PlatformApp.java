@@ -26,8 +26,11 @@ public class PlatformApp extends Application {
 
     protected Context appCtx;
 
+    protected RequestLimiter limiter;
+
     @Override
     public Restlet createInboundRoot() {
+        LoadSheddingFilter loadShedding;
         Router router = new Router();
 
         router.setContext(appCtx);
@@ -35,13 +38,31 @@ public class PlatformApp extends Application {
         // Routes
         router.attach("/icon/", IconResource.class);
         router.attach("/icon/{app}", IconResource.class);
+        router.attach("/history", HistoryResource.class);
+        router.attach("/icons", IconsResource.class);
+        router.attach("/metrics", MetricsResource.class);
+        router.attach("/packages", PackagesResource.class);
+        router.attach("/processes", ProcessesResource.class);
+        router.attach("/status", StatusResource.class);
         router.attachDefault(DefaultResource.class);
 
-        return router;
+        loadShedding = new LoadSheddingFilter(appCtx, limiter);
+        loadShedding.setNext(router);
+        appCtx.getAttributes().put("loadShedding", loadShedding);
+
+        return loadShedding;
     }
 
-    public PlatformApp(PackageManager pm) {
+    public PlatformApp(PackageManager pm, IconCache iconCache, PackageCatalog catalog,
+                       ProcessSampler processSampler, SystemSampler systemSampler,
+                       RequestLimiter limiter) {
+        this.limiter = limiter;
+
         appCtx = new Context();
         appCtx.getAttributes().put("pm", pm);
+        appCtx.getAttributes().put("iconCache", iconCache);
+        appCtx.getAttributes().put("packageCatalog", catalog);
+        appCtx.getAttributes().put("processSampler", processSampler);
+        appCtx.getAttributes().put("systemSampler", systemSampler);
     }
 }
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.service;
+
+/**
+ * HTTP engine serving the platform information routes.
+ */
+public interface PlatformEngine {
+
+    public static final int PORT = 3001;
+
+    public void startServer();
+
+    public void stopServer();
+
+    /**
+     * Serves the routes on one more local socket, for a launcher which asked
+     * for another name than the one the server was started with.
+     */
+    public void addLocalSocket(String name);
+
+    /**
+     * Forgets what the server saved about a package which was uninstalled.
+     */
+    public void removePackage(String app);
+}
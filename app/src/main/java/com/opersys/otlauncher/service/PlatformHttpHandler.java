@@ -0,0 +1,907 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.service;
+
+import android.content.pm.PackageManager;
+import android.util.Log;
+import org.json.JSONException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URLDecoder;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Minimal HTTP/1.1 implementation of the routes of PlatformApp, which doesn't
+ * load Restlet. It serves connections of any transport given as a pair of
+ * streams: TCP for LitePlatformServer, local sockets for LocalPlatformListener.
+ *
+ * Each connection is served by a thread of a bounded pool. The requests go
+ * through the same RequestLimiter as with the Restlet engine. A connection
+ * waiting for its next request still holds its thread, so when the pool is
+ * full, the connection which has been waiting the longest is closed to make
+ * room for a new one. A /processes
+ * stream lasts as long as its client, so it is handed to a thread of its own,
+ * outside of that pool; ServerSettings.getMaxStreams() bounds their number.
+ *
+ * Streams are sent with the chunked encoding to HTTP/1.1 clients, and delimited
+ * by the end of the connection for HTTP/1.0 clients.
+ */
+public class PlatformHttpHandler {
+
+    private static final String TAG = "PlatformHttpHandler";
+
+    private static final int MAX_LINE_LENGTH = 8192;
+
+    private static final int MAX_HEADERS = 100;
+
+    /**
+     * How long a new connection waits for the thread of an idle connection
+     * that was closed for it, in steps of EVICT_WAIT_MS.
+     */
+    private static final int EVICT_RETRIES = 50;
+
+    private static final int EVICT_WAIT_MS = 2;
+
+    private static final ThreadLocal<SimpleDateFormat> httpDateFormat =
+            new ThreadLocal<SimpleDateFormat>() {
+                @Override
+                protected SimpleDateFormat initialValue() {
+                    SimpleDateFormat format;
+
+                    format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+                    format.setTimeZone(TimeZone.getTimeZone("GMT"));
+                    return format;
+                }
+            };
+
+    /**
+     * A parsed request. Header names are in lower case.
+     */
+    static class Request {
+        String method;
+        String path;
+        String version;
+        final Map<String, String> query = new HashMap<String, String>();
+        final Map<String, String> headers = new HashMap<String, String>();
+
+        /**
+         * Set when the query has a malformed escape. The request is still read
+         * in full, so that the connection can be kept, and answered with a 400.
+         */
+        boolean malformed;
+
+        boolean isKeepAlive() {
+            String connection = headers.get("connection");
+
+            if ("HTTP/1.1".equals(version))
+                return connection == null || !connection.equalsIgnoreCase("close");
+            else
+                return connection != null && connection.equalsIgnoreCase("keep-alive");
+        }
+    }
+
+    /**
+     * A response. The body is either an array, a bundle of icons, which is
+     * written without being copied first, or a stream of processes samples,
+     * which is written with the chunked encoding until the client goes away.
+     */
+    static class Response {
+        int status = 200;
+        String reason = "OK";
+        final Map<String, String> headers = new LinkedHashMap<String, String>();
+        byte[] body;
+        IconBundle bundle;
+        ProcessSampler.Subscription stream;
+
+        Response setStatus(int status, String reason) {
+            this.status = status;
+            this.reason = reason;
+            return this;
+        }
+
+        Response setText(String contentType, String text) {
+            try {
+                body = text.getBytes("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new RuntimeException(e);
+            }
+            headers.put("Content-Type", contentType);
+            return this;
+        }
+    }
+
+    private final ServerSettings settings;
+
+    private final IconCache iconCache;
+
+    private final RequestLimiter limiter;
+
+    private final PackageCatalog catalog;
+
+    private final ProcessSampler processSampler;
+
+    private final SystemSampler systemSampler;
+
+    private final ThreadPoolExecutor connections;
+
+    private final ThreadPoolExecutor streams;
+
+    /**
+     * Connections waiting for a request, oldest first.
+     */
+    private final LinkedHashSet<Closeable> idleConnections = new LinkedHashSet<Closeable>();
+
+    public PlatformHttpHandler(IconCache iconCache, PackageCatalog catalog,
+                               ProcessSampler processSampler, SystemSampler systemSampler,
+                               RequestLimiter limiter) {
+        this.settings = limiter.getSettings();
+        this.iconCache = iconCache;
+        this.catalog = catalog;
+        this.processSampler = processSampler;
+        this.systemSampler = systemSampler;
+        this.limiter = limiter;
+
+        // Connections waiting for a worker still hold a thread, as with the
+        // Restlet connector.
+        this.connections = new ThreadPoolExecutor(0, settings.getWorkers() + settings.getMaxQueued(),
+                60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "PlatformHttpHandler");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+
+        // The number of streams is already bounded by ProcessSampler.subscribe().
+        this.streams = new ThreadPoolExecutor(0, Math.max(1, settings.getMaxStreams()),
+                60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "PlatformHttpHandler-stream");
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+    }
+
+    /**
+     * Serves a connection on a thread of the pool. The connection is closed once
+     * served, or right away with a 503 if all the threads are taken by
+     * connections which are not idle.
+     */
+    public void submit(final InputStream in, final OutputStream out, final Closeable connection) {
+        Runnable task;
+
+        task = new Runnable() {
+            @Override
+            public void run() {
+                boolean streaming = false;
+
+                try {
+                    streaming = serve(in, out, connection);
+                } catch (IOException e) {
+                    Log.d(TAG, "Connection closed: " + e);
+                } catch (RuntimeException e) {
+                    // Don't let a bug in a handler take the service down.
+                    Log.e(TAG, "Failed to serve a connection", e);
+                } finally {
+                    if (!streaming)
+                        closeQuietly(connection);
+                }
+            }
+        };
+
+        if (execute(task))
+            return;
+
+        // Don't even read the request.
+        limiter.reject();
+        try {
+            writeResponse(out, getUnavailable(), false, false, false);
+        } catch (IOException ignored) {
+        } finally {
+            closeQuietly(connection);
+        }
+    }
+
+    /**
+     * Runs a connection on the pool, closing the oldest idle connection if all
+     * the threads are taken.
+     *
+     * @return false if there was no thread for the connection
+     */
+    private boolean execute(Runnable task) {
+        Iterator<Closeable> it;
+        Closeable idle;
+
+        try {
+            connections.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            if (connections.isShutdown())
+                return false;
+        }
+
+        synchronized (idleConnections) {
+            it = idleConnections.iterator();
+            if (!it.hasNext())
+                return false;
+
+            idle = it.next();
+            it.remove();
+        }
+
+        Log.d(TAG, "Closing an idle connection for a new one");
+        closeQuietly(idle);
+
+        // Its thread goes back to the pool once serve() notices.
+        for (int i = 0; i < EVICT_RETRIES; i++) {
+            try {
+                Thread.sleep(EVICT_WAIT_MS);
+                connections.execute(task);
+                return true;
+
+            } catch (RejectedExecutionException ignored) {
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        return false;
+    }
+
+    int getIdleCount() {
+        synchronized (idleConnections) {
+            return idleConnections.size();
+        }
+    }
+
+    /**
+     * Waits for the first byte of the next request. The connection can be
+     * closed by execute() in the meantime.
+     *
+     * @return false at the end of the stream
+     */
+    private boolean awaitRequest(BufferedInputStream in, Closeable connection)
+            throws IOException {
+        int c;
+
+        synchronized (idleConnections) {
+            idleConnections.add(connection);
+        }
+
+        try {
+            in.mark(1);
+            c = in.read();
+            in.reset();
+        } finally {
+            synchronized (idleConnections) {
+                idleConnections.remove(connection);
+            }
+        }
+
+        return c != -1;
+    }
+
+    /**
+     * Stops the threads serving the connections and the streams.
+     */
+    public void shutdown() {
+        connections.shutdownNow();
+        streams.shutdownNow();
+    }
+
+    private static void closeQuietly(Closeable connection) {
+        try {
+            connection.close();
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * Writes a stream on a thread of its own, which closes the connection when
+     * the client goes away.
+     *
+     * @return false if there was no thread left for the stream, in which case
+     *         the connection is left to the caller
+     */
+    private boolean startStream(final OutputStream out, final Response response,
+                                final boolean chunked, final Closeable connection)
+            throws IOException {
+        try {
+            streams.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        writeResponse(out, response, false, false, chunked);
+                    } catch (IOException e) {
+                        Log.d(TAG, "Stream closed: " + e);
+                    } catch (RuntimeException e) {
+                        Log.e(TAG, "Failed to write a stream", e);
+                    } finally {
+                        response.stream.close();
+                        closeQuietly(connection);
+                    }
+                }
+            });
+
+            return true;
+
+        } catch (RejectedExecutionException e) {
+            response.stream.close();
+            writeResponse(out, getUnavailable(), false, false, false);
+            return false;
+        }
+    }
+
+    /**
+     * Serves the requests of a connection until it is closed, times out or the
+     * client asks for it to be closed.
+     *
+     * @return true if the connection was handed to a stream, which closes it
+     */
+    boolean serve(InputStream input, OutputStream output, Closeable connection)
+            throws IOException {
+        BufferedInputStream in;
+        BufferedOutputStream out;
+        Response response;
+        Request request;
+        boolean keepAlive, head, chunked;
+        long startTime;
+
+        in = new BufferedInputStream(input, 8192);
+        out = new BufferedOutputStream(output, 8192);
+
+        try {
+            do {
+                try {
+                    if (!awaitRequest(in, connection))
+                        return false;
+
+                    request = readRequest(in);
+                } catch (SocketTimeoutException e) {
+                    return false;
+                }
+
+                if (request == null)
+                    return false;
+
+                keepAlive = settings.isKeepAlive() && request.isKeepAlive();
+
+                if (limiter.acquire()) {
+                    startTime = System.nanoTime();
+
+                    try {
+                        response = handle(request);
+                    } finally {
+                        limiter.release();
+                        PlatformMetrics.recordRequest(request.path, startTime);
+                    }
+                }
+                else {
+                    response = getUnavailable();
+                    keepAlive = false;
+                }
+
+                head = "HEAD".equals(request.method);
+                chunked = "HTTP/1.1".equals(request.version);
+
+                // A stream lasts until the client closes the connection.
+                if (response.stream != null) {
+                    if (!head)
+                        return startStream(out, response, chunked, connection);
+
+                    keepAlive = false;
+                }
+
+                writeResponse(out, response, keepAlive, head, chunked);
+            } while (keepAlive);
+
+        } catch (SocketException e) {
+            // The client went away.
+        }
+
+        return false;
+    }
+
+    private static Response getUnavailable() {
+        Response response = new Response();
+
+        response.setStatus(503, "Service Unavailable");
+        response.headers.put("Retry-After", String.valueOf(RequestLimiter.RETRY_AFTER_SECS));
+        return response;
+    }
+
+    /**
+     * Reads a line terminated by LF, dropping the CR before it.
+     *
+     * @return null at the end of the stream
+     */
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line;
+        int c;
+
+        line = new StringBuilder(128);
+
+        while ((c = in.read()) != '\n') {
+            if (c == -1)
+                return line.length() == 0 ? null : line.toString();
+            if (line.length() >= MAX_LINE_LENGTH)
+                throw new IOException("Request line too long");
+            if (c != '\r')
+                line.append((char) c);
+        }
+
+        return line.toString();
+    }
+
+    /**
+     * @return null if the connection was closed before a new request
+     */
+    static Request readRequest(InputStream in) throws IOException {
+        String line, target, queryString;
+        Request request;
+        String[] parts;
+        long remaining;
+        int sep, n;
+
+        // Tolerate empty lines between requests.
+        do {
+            line = readLine(in);
+            if (line == null)
+                return null;
+        } while (line.length() == 0);
+
+        parts = line.split(" ");
+        if (parts.length != 3)
+            throw new IOException("Malformed request line: " + line);
+
+        request = new Request();
+        request.method = parts[0];
+        request.version = parts[2];
+        target = parts[1];
+
+        sep = target.indexOf('?');
+        if (sep != -1) {
+            queryString = target.substring(sep + 1);
+            target = target.substring(0, sep);
+
+            try {
+                for (String param : queryString.split("&")) {
+                    if (param.length() == 0)
+                        continue;
+
+                    sep = param.indexOf('=');
+                    if (sep == -1)
+                        request.query.put(URLDecoder.decode(param, "UTF-8"), "");
+                    else if (!request.query.containsKey(URLDecoder.decode(param.substring(0, sep), "UTF-8")))
+                        request.query.put(URLDecoder.decode(param.substring(0, sep), "UTF-8"),
+                                URLDecoder.decode(param.substring(sep + 1), "UTF-8"));
+                }
+            } catch (IllegalArgumentException e) {
+                // Thrown by URLDecoder on a bad escape.
+                request.malformed = true;
+            }
+        }
+        request.path = target;
+
+        for (n = 0; (line = readLine(in)) != null && line.length() > 0; n++) {
+            if (n >= MAX_HEADERS)
+                throw new IOException("Too many headers");
+
+            sep = line.indexOf(':');
+            if (sep > 0)
+                request.headers.put(line.substring(0, sep).trim().toLowerCase(Locale.US),
+                        line.substring(sep + 1).trim());
+        }
+
+        // We only serve GET and HEAD, but a body still has to be consumed to keep
+        // the connection usable.
+        if (request.headers.containsKey("content-length")) {
+            try {
+                remaining = Long.parseLong(request.headers.get("content-length"));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid Content-Length");
+            }
+
+            while (remaining > 0 && in.read() != -1)
+                remaining--;
+        }
+
+        return request;
+    }
+
+    /**
+     * Writes each write() as one chunk.
+     */
+    private static class ChunkedOutputStream extends FilterOutputStream {
+
+        ChunkedOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0)
+                return;
+
+            out.write((Integer.toHexString(len) + "\r\n").getBytes("ISO-8859-1"));
+            out.write(b, off, len);
+            out.write(CRLF);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        /**
+         * Writes the last chunk, without closing the underlying stream.
+         */
+        public void finish() throws IOException {
+            out.write(LAST_CHUNK);
+            out.flush();
+        }
+    }
+
+    private static final byte[] CRLF = { '\r', '\n' };
+
+    private static final byte[] LAST_CHUNK = { '0', '\r', '\n', '\r', '\n' };
+
+    private static void writeStream(OutputStream out, ProcessSampler.Subscription stream,
+                                    boolean chunked) throws IOException {
+        ChunkedOutputStream chunkedOut;
+
+        if (!chunked) {
+            stream.writeTo(out);
+            return;
+        }
+
+        chunkedOut = new ChunkedOutputStream(out);
+        stream.writeTo(chunkedOut);
+        chunkedOut.finish();
+    }
+
+    /**
+     * @param chunked whether the client takes the chunked encoding, which is
+     *                only used for streams
+     */
+    private static void writeResponse(OutputStream out, Response response, boolean keepAlive,
+                                      boolean head, boolean chunked) throws IOException {
+        StringBuilder header;
+        long length;
+
+        if (response.bundle != null)
+            length = response.bundle.getSize();
+        else if (response.body != null)
+            length = response.body.length;
+        else
+            length = 0;
+
+        header = new StringBuilder(256);
+        header.append("HTTP/1.1 ").append(response.status).append(' ')
+                .append(response.reason).append("\r\n");
+        header.append("Date: ").append(httpDateFormat.get().format(new Date())).append("\r\n");
+
+        for (Map.Entry<String, String> h : response.headers.entrySet())
+            header.append(h.getKey()).append(": ").append(h.getValue()).append("\r\n");
+
+        if (response.stream != null) {
+            // Otherwise the end of the stream is the end of the connection.
+            if (chunked)
+                header.append("Transfer-Encoding: chunked\r\n");
+        }
+        else if (response.status != 304)
+            header.append("Content-Length: ").append(length).append("\r\n");
+
+        header.append("Connection: ").append(keepAlive ? "keep-alive" : "close").append("\r\n");
+        header.append("\r\n");
+
+        out.write(header.toString().getBytes("ISO-8859-1"));
+
+        if (response.stream != null && head)
+            response.stream.close();
+
+        if (!head && response.status != 304) {
+            if (response.stream != null) {
+                out.flush();
+                writeStream(out, response.stream, chunked);
+            }
+            else if (response.bundle != null)
+                response.bundle.write(out);
+            else if (response.body != null)
+                out.write(response.body);
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Routes a request, the same way PlatformApp does.
+     */
+    Response handle(Request request) {
+        Response response = new Response();
+        String app;
+
+        if (!"GET".equals(request.method) && !"HEAD".equals(request.method)) {
+            response.headers.put("Allow", "GET, HEAD");
+            return response.setStatus(405, "Method Not Allowed");
+        }
+
+        if (request.malformed)
+            return response.setStatus(400, "Bad Request");
+
+        try {
+            if (request.path.startsWith("/icon/")) {
+                try {
+                    app = URLDecoder.decode(request.path.substring("/icon/".length()), "UTF-8");
+                } catch (IllegalArgumentException e) {
+                    return response.setStatus(400, "Bad Request");
+                }
+
+                if (app.length() == 0 || app.indexOf('/') != -1)
+                    return response.setStatus(404, "Not Found");
+
+                return handleIcon(request, response, app);
+            }
+            else if (request.path.equals("/history"))
+                return handleHistory(request, response);
+
+            else if (request.path.equals("/icons"))
+                return handleIcons(request, response);
+
+            else if (request.path.equals("/metrics")) {
+                response.headers.put("Cache-Control", "no-cache");
+                return response.setText(PlatformMetrics.MIME_TYPE, PlatformMetrics.toText());
+            }
+            else if (request.path.equals("/packages"))
+                return handlePackages(request, response);
+
+            else if (request.path.equals("/processes"))
+                return handleProcesses(request, response);
+
+            else if (request.path.equals("/status"))
+                return handleStatus(response);
+
+            else
+                return response.setText("text/plain; charset=UTF-8", "Platform Information Restlet");
+
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to handle " + request.path, e);
+            return new Response().setStatus(500, "Internal Server Error");
+        }
+    }
+
+    private static List<String> getNoneMatch(Request request) {
+        List<String> noneMatch;
+        String header;
+
+        noneMatch = new ArrayList<String>();
+        header = request.headers.get("if-none-match");
+
+        if (header == null)
+            return noneMatch;
+
+        for (String tag : header.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/"))
+                tag = tag.substring(2);
+            if (tag.length() >= 2 && tag.startsWith("\"") && tag.endsWith("\""))
+                tag = tag.substring(1, tag.length() - 1);
+            noneMatch.add(tag);
+        }
+
+        return noneMatch;
+    }
+
+    private static long getModifiedSince(Request request) {
+        String header;
+
+        header = request.headers.get("if-modified-since");
+
+        if (header == null)
+            return -1;
+
+        try {
+            return httpDateFormat.get().parse(header).getTime();
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    private Response handleIcon(Request request, Response response, String app)
+            throws IOException {
+        IconCache.Format format;
+        IconCache.Icon icon;
+        int size;
+
+        size = IconCache.parseSize(request.query.get("size"));
+        if (size < 0)
+            return response.setStatus(400, "Bad Request");
+
+        format = IconCache.Format.fromAccept(request.headers.get("accept"));
+
+        try {
+            icon = iconCache.get(app, size, format);
+        } catch (PackageManager.NameNotFoundException e) {
+            Log.e(TAG, "Package not found: " + app);
+            return response.setStatus(404, "Not Found");
+        }
+
+        response.headers.put("Cache-Control", "max-age=" + (3600 * 24));
+        response.headers.put("Vary", "Accept");
+        response.headers.put("ETag", "\"" + icon.getTag() + "\"");
+        response.headers.put("Last-Modified",
+                httpDateFormat.get().format(new Date(icon.getLastModified())));
+
+        if (icon.isNotModified(getNoneMatch(request), getModifiedSince(request)))
+            return response.setStatus(304, "Not Modified");
+
+        response.headers.put("Content-Type", format.getMimeType());
+        response.body = icon.getData();
+        IconCache.recordSent(format, icon.getData().length);
+
+        return response;
+    }
+
+    private Response handleHistory(Request request, Response response) throws IOException {
+        ByteArrayOutputStream binary;
+        long since;
+        int tier;
+
+        tier = SystemSampler.parseTier(request.query.get("tier"));
+        since = SystemSampler.parseSince(request.query.get("since"));
+
+        if (tier == -1)
+            return response.setStatus(400, "Bad Request");
+
+        response.headers.put("Cache-Control", "no-cache");
+
+        if ("binary".equals(request.query.get("format"))) {
+            binary = new ByteArrayOutputStream();
+            systemSampler.writeHistory(tier, since, binary);
+
+            response.headers.put("Content-Type", SystemSampler.BINARY_MIME_TYPE);
+            response.body = binary.toByteArray();
+            return response;
+        }
+
+        try {
+            return response.setText("application/json", systemSampler.getHistoryJson(tier, since));
+        } catch (JSONException e) {
+            return response.setStatus(500, "Internal Server Error");
+        }
+    }
+
+    private Response handleIcons(Request request, Response response) throws IOException {
+        IconCache.Format format;
+        List<String> noneMatch;
+        IconBundle bundle;
+        String appsParam;
+        int size;
+
+        appsParam = request.query.get("apps");
+        size = IconCache.parseSize(request.query.get("size"));
+
+        if (appsParam == null || size < 0)
+            return response.setStatus(400, "Bad Request");
+
+        format = IconCache.Format.fromAccept(request.headers.get("accept"));
+        bundle = new IconBundle(iconCache.getAll(IconBundle.parseApps(appsParam), size, format));
+
+        response.headers.put("Cache-Control", "max-age=" + (3600 * 24));
+        response.headers.put("Vary", "Accept");
+        response.headers.put("ETag", "\"" + bundle.getTag() + "\"");
+
+        noneMatch = getNoneMatch(request);
+        if (noneMatch.contains("*") || noneMatch.contains(bundle.getTag()))
+            return response.setStatus(304, "Not Modified");
+
+        response.headers.put("Content-Type", IconBundle.MIME_TYPE);
+        response.bundle = bundle;
+        IconCache.recordSent(format, bundle.getSize());
+
+        return response;
+    }
+
+    private Response handlePackages(Request request, Response response) {
+        PackageCatalog.Snapshot snapshot;
+        List<String> noneMatch;
+        long since;
+
+        since = PackageCatalog.parseSince(request.query.get("since"));
+
+        response.headers.put("Cache-Control", "no-cache");
+
+        try {
+            if (since != -1)
+                return response.setText("application/json", catalog.getDeltaJson(since));
+
+            snapshot = catalog.getSnapshot();
+
+        } catch (JSONException e) {
+            return response.setStatus(500, "Internal Server Error");
+        }
+
+        response.headers.put("ETag", "\"" + snapshot.getTag() + "\"");
+
+        noneMatch = getNoneMatch(request);
+        if (noneMatch.contains("*") || noneMatch.contains(snapshot.getTag()))
+            return response.setStatus(304, "Not Modified");
+
+        return response.setText("application/json", snapshot.getJson());
+    }
+
+    private Response handleProcesses(Request request, Response response) {
+        response.headers.put("Cache-Control", "no-cache");
+
+        try {
+            if (!request.query.containsKey("stream"))
+                return response.setText("application/json", processSampler.getSnapshotJson());
+
+            response.stream = processSampler.subscribe();
+
+            // Too many streams already.
+            if (response.stream == null)
+                return getUnavailable();
+
+            response.headers.put("Content-Type", ProcessSampler.STREAM_MIME_TYPE);
+            return response;
+
+        } catch (JSONException e) {
+            return response.setStatus(500, "Internal Server Error");
+        }
+    }
+
+    private Response handleStatus(Response response) {
+        response.headers.put("Cache-Control", "no-cache");
+
+        try {
+            return response.setText("application/json",
+                    PlatformStatus.toJson(limiter, iconCache).toString());
+        } catch (JSONException e) {
+            return response.setStatus(500, "Internal Server Error");
+        }
+    }
+}
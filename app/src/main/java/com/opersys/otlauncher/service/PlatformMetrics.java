@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.service;
+
+import com.opersys.otlauncher.Metrics;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Metrics of the platform information server, shared by both engines.
+ */
+public class PlatformMetrics {
+
+    public static final String MIME_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final String[] ROUTES = {
+            "/history", "/icon", "/icons", "/metrics", "/packages", "/processes", "/status"
+    };
+
+    /**
+     * Request latency per route. Filled once, so that it can be read without locking.
+     */
+    private static final Map<String, Metrics.Histogram> routeLatency;
+
+    private static final Metrics.Histogram otherLatency;
+
+    static {
+        routeLatency = new HashMap<String, Metrics.Histogram>();
+
+        for (String route : ROUTES)
+            routeLatency.put(route, getRouteHistogram(route));
+
+        otherLatency = getRouteHistogram("other");
+    }
+
+    private static Metrics.Histogram getRouteHistogram(String route) {
+        return Metrics.get().histogram("otlauncher_http_request_duration_seconds",
+                "Time taken to handle a request, before the body is written.", "route", route);
+    }
+
+    /**
+     * Records the handling of a request. The path is reduced to its first
+     * segment, so that there is one series per route.
+     */
+    public static void recordRequest(String path, long startNanos) {
+        Metrics.Histogram histogram = null;
+        int end;
+
+        if (path != null) {
+            end = path.indexOf('/', 1);
+            histogram = routeLatency.get(end == -1 ? path : path.substring(0, end));
+        }
+
+        (histogram != null ? histogram : otherLatency).observeSince(startNanos);
+    }
+
+    public static Metrics.Histogram getBinderHistogram(String call) {
+        return Metrics.get().histogram("otlauncher_binder_call_duration_seconds",
+                "Time taken by the calls to the package manager.", "call", call);
+    }
+
+    public static String toText() {
+        StringWriter out = new StringWriter();
+
+        try {
+            Metrics.get().write(out);
+        } catch (IOException e) {
+            // Not thrown by a StringWriter.
+            throw new RuntimeException(e);
+        }
+
+        return out.toString();
+    }
+}
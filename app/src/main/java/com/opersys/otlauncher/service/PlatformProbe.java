@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.service;
+
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.Arrays;
+
+/**
+ * Measures, from the device, the latency of the platform information server
+ * over TCP and over its local socket. Run it like the launcher:
+ *
+ *   CLASSPATH=$APK app_process /data/local/tmp com.opersys.otlauncher.service.PlatformProbe \
+ *       [requests] [path] [port] [socket]
+ *
+ * Each transport gets a warm up round, then the requests are made one after the
+ * other on a single kept-alive connection.
+ */
+public class PlatformProbe {
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+
+        while ((c = in.read()) != '\n') {
+            if (c == -1)
+                throw new IOException("Connection closed");
+            if (c != '\r')
+                line.append((char) c);
+        }
+        return line.toString();
+    }
+
+    /**
+     * Makes a request and reads the whole response.
+     */
+    private static void request(InputStream in, OutputStream out, byte[] request, byte[] buf)
+            throws IOException {
+        String line;
+        long length;
+        int n;
+
+        out.write(request);
+        out.flush();
+
+        length = 0;
+        while ((line = readLine(in)).length() > 0)
+            if (line.toLowerCase().startsWith("content-length:"))
+                length = Long.parseLong(line.substring("content-length:".length()).trim());
+
+        while (length > 0) {
+            if ((n = in.read(buf, 0, (int) Math.min(buf.length, length))) == -1)
+                throw new IOException("Connection closed");
+            length -= n;
+        }
+    }
+
+    private static long[] run(InputStream in, OutputStream out, String path, int count)
+            throws IOException {
+        byte[] request, buf;
+        long[] times;
+        long start;
+
+        request = ("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes("ISO-8859-1");
+        buf = new byte[8192];
+        times = new long[count];
+
+        for (int i = 0; i < count; i++) {
+            start = System.nanoTime();
+            request(in, out, request, buf);
+            times[i] = System.nanoTime() - start;
+        }
+
+        return times;
+    }
+
+    private static void report(String transport, long[] times) {
+        long total = 0;
+
+        Arrays.sort(times);
+        for (long t : times)
+            total += t;
+
+        System.out.println(String.format(
+                "%-6s min %.3f  median %.3f  p95 %.3f  max %.3f  mean %.3f ms  (n=%d)",
+                transport, times[0] / 1e6, times[times.length / 2] / 1e6,
+                times[Math.min(times.length - 1, (int) (times.length * 0.95))] / 1e6,
+                times[times.length - 1] / 1e6, total / 1e6 / times.length, times.length));
+    }
+
+    public static void main(String[] args) throws IOException {
+        LocalSocket local;
+        Socket tcp;
+        String path, socketName;
+        int count, port;
+
+        count = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        path = args.length > 1 ? args[1] : "/status";
+        port = args.length > 2 ? Integer.parseInt(args[2]) : 3001;
+        socketName = args.length > 3 ? args[3] : "otlauncher-platform";
+
+        tcp = new Socket("127.0.0.1", port);
+        tcp.setTcpNoDelay(true);
+        try {
+            run(tcp.getInputStream(), tcp.getOutputStream(), path, Math.max(count / 10, 1));
+            report("tcp", run(tcp.getInputStream(), tcp.getOutputStream(), path, count));
+        } finally {
+            tcp.close();
+        }
+
+        local = new LocalSocket();
+        local.connect(new LocalSocketAddress(socketName, LocalSocketAddress.Namespace.ABSTRACT));
+        try {
+            run(local.getInputStream(), local.getOutputStream(), path, Math.max(count / 10, 1));
+            report("local", run(local.getInputStream(), local.getOutputStream(), path, count));
+        } finally {
+            local.close();
+        }
+    }
+}
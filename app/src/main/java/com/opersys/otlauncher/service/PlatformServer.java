@@ -19,17 +19,33 @@ package com.opersys.otlauncher.service;
 import android.content.pm.PackageManager;
 import android.util.Log;
 import org.restlet.Component;
+import org.restlet.Server;
 import org.restlet.data.Protocol;
 
-public class PlatformServer {
+import java.io.File;
+
+/**
+ * Engine based on a Restlet component.
+ */
+public class PlatformServer implements PlatformEngine {
 
     private static String TAG = "PlatformInfoServer";
 
     protected Component mainComp;
 
+    protected PlatformHttpHandler localHandler;
+
+    protected LocalPlatformListener localListener;
+
+    protected ProcessSampler processSampler;
+
+    protected IconCache iconCache;
+
     public void startServer() {
         try {
             mainComp.start();
+            localListener.start();
+            iconCache.prune();
             Log.i(TAG, "Platform information server started");
         } catch (Exception e) {
             Log.w(TAG, "Platform information server failed to start", e);
@@ -39,18 +55,61 @@ public class PlatformServer {
     public void stopServer() {
         try {
             mainComp.stop();
+            localListener.stop();
+            localHandler.shutdown();
+            processSampler.stop();
+            iconCache.stop();
             Log.i(TAG, "Platform information server stopped");
         } catch (Exception e) {
             Log.w(TAG, "Platform information server failed to stop", e);
         }
     }
 
-    public PlatformServer(PackageManager pm) {
+    public void addLocalSocket(String name) {
+        localListener.listen(name);
+    }
+
+    public void removePackage(String app) {
+        iconCache.invalidate(app);
+    }
+
+    public PlatformServer(PackageManager pm, File cacheDir, PackageCatalog catalog,
+                          SystemSampler systemSampler, ServerSettings settings) {
+        RequestLimiter limiter;
+        Server server;
+
+        iconCache = new IconCache(pm, new File(cacheDir, "icons"));
+        limiter = new RequestLimiter(settings);
+        processSampler = new ProcessSampler(settings.getProcessIntervalMs(),
+                settings.getMaxStreams());
+
         mainComp = new Component();
 
         // Servers
-        mainComp.getServers().add(Protocol.HTTP, 3001);
-        mainComp.getDefaultHost().attachDefault(new PlatformApp(pm));
+        server = mainComp.getServers().add(Protocol.HTTP, PORT);
+
+        // Requests waiting in the load shedding filter still hold a connector
+        // thread, so there needs to be one for each of them on top of the workers.
+        server.getContext().getParameters().add("minThreads", "1");
+        server.getContext().getParameters().add("maxThreads",
+                String.valueOf(settings.getWorkers() + settings.getMaxQueued()));
+        server.getContext().getParameters().add("maxQueued",
+                String.valueOf(settings.getMaxQueued()));
+        server.getContext().getParameters().add("persistingConnections",
+                String.valueOf(settings.isKeepAlive()));
+        server.getContext().getParameters().add("maxIoIdleTimeMs",
+                String.valueOf(settings.getIdleTimeoutMs()));
+
+        Log.i(TAG, "Server settings: " + settings);
+
+        mainComp.getDefaultHost().attachDefault(new PlatformApp(pm, iconCache, catalog, processSampler,
+                systemSampler, limiter));
+
+        // Restlet has no connector for local sockets. They are served by the lite
+        // handler, on the same cache and within the same worker limit.
+        localHandler = new PlatformHttpHandler(iconCache, catalog, processSampler,
+                systemSampler, limiter);
+        localListener = new LocalPlatformListener(settings, localHandler);
     }
 
 }
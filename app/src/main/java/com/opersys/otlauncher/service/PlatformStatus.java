@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.service;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Gauges of the server, to help with the sizing of the worker pool.
+ */
+public class PlatformStatus {
+
+    public static JSONObject toJson(RequestLimiter limiter, IconCache iconCache)
+            throws JSONException {
+        JSONObject status;
+
+        status = new JSONObject();
+        status.put("engine", limiter.getSettings().getEngine());
+        status.put("activeWorkers", limiter.getActive());
+        status.put("queueDepth", limiter.getQueued());
+        status.put("handled", limiter.getHandled());
+        status.put("rejected", limiter.getRejected());
+        status.put("workers", limiter.getSettings().getWorkers());
+        status.put("maxQueued", limiter.getSettings().getMaxQueued());
+        status.put("iconCacheBytes", iconCache.getMemoryUsed());
+        status.put("iconCacheCount", iconCache.getMemoryCount());
+
+        return status;
+    }
+}
@@ -0,0 +1,479 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.service;
+
+import android.util.Log;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples the processes in /proc on a single background thread, for all the
+ * clients at once. The last snapshot is kept to answer polls, and the
+ * differences between two samples are pushed to the subscribers of the stream.
+ *
+ * Sampling only happens while there are subscribers, or for a little while
+ * after the last poll.
+ */
+public class ProcessSampler {
+
+    private static final String TAG = "ProcessSampler";
+
+    /**
+     * Content type of the stream, newline delimited JSON.
+     */
+    public static final String STREAM_MIME_TYPE = "application/x-ndjson";
+
+    /**
+     * Time after the last poll during which we keep sampling without subscribers.
+     */
+    private static final long POLL_IDLE_MS = 30000;
+
+    /**
+     * Messages kept for a subscriber that doesn't read fast enough. When it falls
+     * behind by more, its queue is replaced by a new snapshot.
+     */
+    private static final int SUBSCRIBER_QUEUE_SIZE = 16;
+
+    /**
+     * Size of the memory pages, which /proc/<pid>/stat counts the RSS in.
+     */
+    private static final int PAGE_SIZE_KB = 4;
+
+    /**
+     * Time without changes after which a heartbeat is written to the stream, to
+     * find out about clients which went away.
+     */
+    private static final long HEARTBEAT_MS = 15000;
+
+    private static final byte[] HEARTBEAT = "{\"type\":\"heartbeat\"}\n".getBytes();
+
+    /**
+     * A process, as seen in a sample.
+     */
+    static class ProcessInfo {
+        final int pid;
+        final int ppid;
+        final String name;
+        final long startTime;
+        final long cpuTicks;
+        final long rssKb;
+
+        ProcessInfo(int pid, int ppid, String name, long startTime, long cpuTicks, long rssKb) {
+            this.pid = pid;
+            this.ppid = ppid;
+            this.name = name;
+            this.startTime = startTime;
+            this.cpuTicks = cpuTicks;
+            this.rssKb = rssKb;
+        }
+
+        /**
+         * Returns true if this is the same process as another, with the same pid.
+         */
+        boolean isSameProcess(ProcessInfo other) {
+            return other != null && startTime == other.startTime;
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+
+            json.put("pid", pid);
+            json.put("ppid", ppid);
+            json.put("name", name);
+            json.put("cpu", cpuTicks);
+            json.put("rss", rssKb);
+            return json;
+        }
+    }
+
+    /**
+     * The stream of a client. Each message is a line of JSON.
+     */
+    public class Subscription {
+
+        private final BlockingQueue<String> queue =
+                new ArrayBlockingQueue<String>(SUBSCRIBER_QUEUE_SIZE);
+
+        private volatile boolean closed;
+
+        private void push(String message) {
+            if (queue.offer(message))
+                return;
+
+            // The client is too slow, make it start over.
+            queue.clear();
+            try {
+                queue.offer(getSnapshotJson());
+            } catch (JSONException e) {
+                Log.w(TAG, "Failed to encode a snapshot", e);
+            }
+        }
+
+        /**
+         * Waits for the next message.
+         *
+         * @return null if there was none in the given time
+         */
+        public String next(long timeoutMs) throws InterruptedException {
+            return closed ? null : queue.poll(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+
+        public boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * Writes the messages as they come, one per line, until the client goes
+         * away or the sampler is stopped. Each message is written with a single
+         * write() and flushed.
+         */
+        public void writeTo(OutputStream out) throws IOException {
+            String message;
+
+            try {
+                while (!closed) {
+                    try {
+                        message = next(HEARTBEAT_MS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+
+                    if (message != null)
+                        out.write((message + "\n").getBytes("UTF-8"));
+                    else if (!closed)
+                        out.write(HEARTBEAT);
+
+                    out.flush();
+                }
+            } finally {
+                close();
+            }
+        }
+
+        public void close() {
+            closed = true;
+            subscribers.remove(this);
+        }
+    }
+
+    private final long intervalMs;
+
+    private final int maxSubscribers;
+
+    private final CopyOnWriteArrayList<Subscription> subscribers =
+            new CopyOnWriteArrayList<Subscription>();
+
+    private final byte[] statBuffer = new byte[1024];
+
+    private ScheduledExecutorService scheduler;
+
+    private Map<Integer, ProcessInfo> lastSample;
+
+    private long lastSampleTime;
+
+    private long sequence;
+
+    private volatile long lastPollTime;
+
+    public ProcessSampler(long intervalMs, int maxSubscribers) {
+        this.intervalMs = intervalMs;
+        this.maxSubscribers = maxSubscribers;
+    }
+
+    public long getIntervalMs() {
+        return intervalMs;
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    private synchronized void ensureStarted() {
+        if (scheduler != null)
+            return;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "ProcessSampler");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tick();
+                } catch (Exception e) {
+                    Log.w(TAG, "Failed to sample the processes", e);
+                }
+            }
+        }, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null)
+            scheduler.shutdownNow();
+        scheduler = null;
+
+        for (Subscription subscription : subscribers)
+            subscription.close();
+    }
+
+    private void tick() throws JSONException {
+        Map<Integer, ProcessInfo> previous, current;
+        List<Subscription> targets;
+        String delta;
+
+        synchronized (this) {
+            if (subscribers.isEmpty() && System.currentTimeMillis() - lastPollTime > POLL_IDLE_MS) {
+                // Nobody is looking, the next poll will sample again.
+                lastSample = null;
+                return;
+            }
+
+            previous = lastSample;
+            current = sample();
+            lastSample = current;
+            lastSampleTime = System.currentTimeMillis();
+            sequence++;
+
+            if (previous == null || subscribers.isEmpty())
+                return;
+
+            delta = getDeltaJson(previous, current);
+
+            // Those who subscribe from now on get a snapshot of this sample.
+            targets = new ArrayList<Subscription>(subscribers);
+        }
+
+        if (delta != null)
+            for (Subscription subscription : targets)
+                subscription.push(delta);
+    }
+
+    /**
+     * Reads /proc/<pid>/stat for all the processes.
+     */
+    private Map<Integer, ProcessInfo> sample() {
+        Map<Integer, ProcessInfo> processes;
+        ProcessInfo info;
+        String[] names;
+        int pid;
+
+        processes = new HashMap<Integer, ProcessInfo>();
+        names = new File("/proc").list();
+
+        if (names == null)
+            return processes;
+
+        for (String name : names) {
+            if (name.length() == 0 || !Character.isDigit(name.charAt(0)))
+                continue;
+
+            try {
+                pid = Integer.parseInt(name);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+
+            // The process may have exited since we listed /proc.
+            if ((info = readStat(pid)) != null)
+                processes.put(pid, info);
+        }
+
+        return processes;
+    }
+
+    private ProcessInfo readStat(int pid) {
+        FileInputStream in = null;
+        String stat, comm;
+        String[] fields;
+        int n, nameEnd;
+
+        try {
+            in = new FileInputStream("/proc/" + pid + "/stat");
+            n = in.read(statBuffer);
+            if (n <= 0)
+                return null;
+
+            stat = new String(statBuffer, 0, n, "ISO-8859-1");
+
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if (in != null)
+                try { in.close(); } catch (IOException ignored) {}
+        }
+
+        // The name is between parentheses and can contain spaces and parentheses.
+        nameEnd = stat.lastIndexOf(')');
+        if (nameEnd == -1 || stat.indexOf('(') == -1)
+            return null;
+
+        comm = stat.substring(stat.indexOf('(') + 1, nameEnd);
+        fields = stat.substring(nameEnd + 2).split(" ");
+
+        // fields[0] is field 3 of proc(5): state.
+        if (fields.length < 22)
+            return null;
+
+        try {
+            return new ProcessInfo(pid, Integer.parseInt(fields[1]), comm,
+                    Long.parseLong(fields[19]),
+                    Long.parseLong(fields[11]) + Long.parseLong(fields[12]),
+                    Long.parseLong(fields[21]) * PAGE_SIZE_KB);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return null if nothing changed
+     */
+    private String getDeltaJson(Map<Integer, ProcessInfo> previous,
+                                Map<Integer, ProcessInfo> current) throws JSONException {
+        JSONArray added, exited, changed;
+        JSONObject json, change;
+        ProcessInfo old;
+
+        added = new JSONArray();
+        exited = new JSONArray();
+        changed = new JSONArray();
+
+        for (ProcessInfo info : current.values()) {
+            old = previous.get(info.pid);
+
+            // A reused pid is a new process.
+            if (!info.isSameProcess(old))
+                added.put(info.toJson());
+
+            else if (old.cpuTicks != info.cpuTicks || old.rssKb != info.rssKb
+                    || !old.name.equals(info.name)) {
+                change = new JSONObject();
+                change.put("pid", info.pid);
+                change.put("cpuDelta", info.cpuTicks - old.cpuTicks);
+                change.put("rss", info.rssKb);
+
+                // Processes can rename themselves, after a fork for example.
+                if (!old.name.equals(info.name))
+                    change.put("name", info.name);
+
+                changed.put(change);
+            }
+        }
+
+        for (ProcessInfo info : previous.values())
+            if (!info.isSameProcess(current.get(info.pid)))
+                exited.put(info.pid);
+
+        if (added.length() == 0 && exited.length() == 0 && changed.length() == 0)
+            return null;
+
+        json = new JSONObject();
+        json.put("type", "delta");
+        json.put("seq", sequence);
+        json.put("time", lastSampleTime);
+        json.put("intervalMs", intervalMs);
+        json.put("exited", exited);
+        json.put("added", added);
+        json.put("changed", changed);
+
+        return json.toString();
+    }
+
+    /**
+     * Returns the last sample, taking one if there is none:
+     *
+     *   {"type": "snapshot", "seq": N, "time": ..., "intervalMs": ...,
+     *    "processes": [{"pid": ..., "ppid": ..., "name": ..., "cpu": ..., "rss": ...}, ...]}
+     *
+     * cpu is in clock ticks, usually 100 per second, and rss in kB. Polls keep the
+     * sampler running for a while.
+     */
+    public synchronized String getSnapshotJson() throws JSONException {
+        JSONArray processes;
+        JSONObject json;
+
+        lastPollTime = System.currentTimeMillis();
+        ensureStarted();
+
+        if (lastSample == null) {
+            lastSample = sample();
+            lastSampleTime = System.currentTimeMillis();
+            sequence++;
+        }
+
+        processes = new JSONArray();
+        for (ProcessInfo info : lastSample.values())
+            processes.put(info.toJson());
+
+        json = new JSONObject();
+        json.put("type", "snapshot");
+        json.put("seq", sequence);
+        json.put("time", lastSampleTime);
+        json.put("intervalMs", intervalMs);
+        json.put("processes", processes);
+
+        return json.toString();
+    }
+
+    /**
+     * Subscribes to the stream. The first message is a snapshot, the following ones
+     * are deltas:
+     *
+     *   {"type": "delta", "seq": N, "time": ..., "exited": [pid, ...],
+     *    "added": [process, ...], "changed": [{"pid": ..., "cpuDelta": ..., "rss": ...}]}
+     *
+     * A change also has the name of the process if it was changed. A process whose
+     * pid was reused, as told by its start time, is both in exited and added.
+     *
+     * @return null if there are already as many subscribers as allowed.
+     */
+    public synchronized Subscription subscribe() throws JSONException {
+        Subscription subscription;
+
+        if (subscribers.size() >= maxSubscribers)
+            return null;
+
+        subscription = new Subscription();
+        subscription.push(getSnapshotJson());
+        subscribers.add(subscription);
+
+        return subscription;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.service;
+
+import org.json.JSONException;
+import org.restlet.data.CacheDirective;
+import org.restlet.data.MediaType;
+import org.restlet.data.Status;
+import org.restlet.representation.OutputRepresentation;
+import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.resource.Get;
+import org.restlet.resource.ServerResource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Date;
+
+/**
+ * /processes returns the last sample of the processes, /processes?stream=1 a
+ * stream of newline delimited JSON messages: a snapshot followed by the
+ * differences between the samples. See ProcessSampler.
+ */
+public class ProcessesResource extends ServerResource {
+
+    @Get
+    public Representation doGet() throws JSONException {
+        final ProcessSampler.Subscription subscription;
+        ProcessSampler sampler;
+        Representation rep;
+
+        sampler = (ProcessSampler) getContext().getAttributes().get("processSampler");
+
+        getResponse().getCacheDirectives().add(CacheDirective.noCache());
+
+        if (getQuery().getFirstValue("stream") == null)
+            return new StringRepresentation(sampler.getSnapshotJson(), MediaType.APPLICATION_JSON);
+
+        subscription = sampler.subscribe();
+
+        if (subscription == null) {
+            // Too many streams already, see ServerSettings.getMaxStreams().
+            getResponse().setStatus(Status.SERVER_ERROR_SERVICE_UNAVAILABLE);
+            getResponse().setRetryAfter(new Date(System.currentTimeMillis()
+                    + RequestLimiter.RETRY_AFTER_SECS * 1000));
+            return null;
+        }
+
+        rep = new OutputRepresentation(MediaType.valueOf(ProcessSampler.STREAM_MIME_TYPE)) {
+            @Override
+            public void write(OutputStream outputStream) throws IOException {
+                subscription.writeTo(outputStream);
+            }
+
+            @Override
+            public void release() {
+                // In case the stream was never written, for a HEAD request.
+                subscription.close();
+                super.release();
+            }
+        };
+        rep.setTransient(true);
+
+        return rep;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.service;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the number of requests handled at the same time. Requests over that
+ * limit wait in a bounded queue. Those which don't fit in the queue, or wait for
+ * too long, are to be answered with 503 by the server.
+ */
+public class RequestLimiter {
+
+    /**
+     * Value of the Retry-After header sent with the 503 responses.
+     */
+    public static final int RETRY_AFTER_SECS = 1;
+
+    private final ServerSettings settings;
+
+    private final Semaphore workers;
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicLong handled = new AtomicLong();
+
+    private final AtomicLong rejected = new AtomicLong();
+
+    public RequestLimiter(ServerSettings settings) {
+        this.settings = settings;
+        this.workers = new Semaphore(settings.getWorkers(), true);
+    }
+
+    /**
+     * Waits for a worker. When this returns true, release() must be called once
+     * the request is handled.
+     *
+     * @return false if the request has to be rejected
+     */
+    public boolean acquire() {
+        boolean acquired;
+
+        if (workers.tryAcquire())
+            return true;
+
+        if (queued.incrementAndGet() > settings.getMaxQueued()) {
+            queued.decrementAndGet();
+            rejected.incrementAndGet();
+            return false;
+        }
+
+        try {
+            acquired = workers.tryAcquire(settings.getQueueTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        } finally {
+            queued.decrementAndGet();
+        }
+
+        if (!acquired)
+            rejected.incrementAndGet();
+
+        return acquired;
+    }
+
+    public void release() {
+        handled.incrementAndGet();
+        workers.release();
+    }
+
+    /**
+     * Counts a request which was rejected before it could even queue.
+     */
+    public void reject() {
+        rejected.incrementAndGet();
+    }
+
+    /**
+     * Number of requests being handled.
+     */
+    public int getActive() {
+        return settings.getWorkers() - workers.availablePermits();
+    }
+
+    /**
+     * Number of requests waiting for a worker.
+     */
+    public int getQueued() {
+        return queued.get();
+    }
+
+    public long getHandled() {
+        return handled.get();
+    }
+
+    public long getRejected() {
+        return rejected.get();
+    }
+
+    public ServerSettings getSettings() {
+        return settings;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.service;
+
+import android.content.Intent;
+
+/**
+ * Tuning of the platform information server. The values can be given as extras
+ * of the intent which starts the service, for example:
+ *
+ *   am startservice --es engine lite --ei workers 2 --ei maxQueued 8 \
+ *       com.opersys.otlauncher/.OTLauncherService
+ */
+public class ServerSettings {
+
+    /**
+     * Engine based on a Restlet component, the default.
+     */
+    public static final String ENGINE_RESTLET = "restlet";
+
+    /**
+     * Minimal engine which doesn't need Restlet, see LitePlatformServer.
+     */
+    public static final String ENGINE_LITE = "lite";
+
+    public static final String EXTRA_ENGINE = "engine";
+    public static final String EXTRA_LOCAL_SOCKET = "localSocket";
+    public static final String EXTRA_PROCESS_INTERVAL = "processIntervalMs";
+    public static final String EXTRA_WORKERS = "workers";
+    public static final String EXTRA_MAX_QUEUED = "maxQueued";
+    public static final String EXTRA_MAX_STREAMS = "maxStreams";
+    public static final String EXTRA_QUEUE_TIMEOUT = "queueTimeoutMs";
+    public static final String EXTRA_KEEP_ALIVE = "keepAlive";
+    public static final String EXTRA_IDLE_TIMEOUT = "idleTimeoutMs";
+
+    /**
+     * Name of the socket of the abstract local namespace on which the server
+     * also listens.
+     */
+    public static final String DEFAULT_LOCAL_SOCKET = "otlauncher-platform";
+
+    private String engine = ENGINE_RESTLET;
+
+    /**
+     * Name of the local socket, null or empty to listen on TCP only.
+     */
+    private String localSocket = DEFAULT_LOCAL_SOCKET;
+
+    /**
+     * Number of requests handled at the same time, which is also the highest
+     * number of threads doing binder calls for the server.
+     */
+    private int workers = 4;
+
+    /**
+     * Number of requests allowed to wait for a worker before the server answers 503.
+     */
+    private int maxQueued = 16;
+
+    /**
+     * Number of /processes streams served at the same time, on top of the
+     * workers and queued requests, before the server answers 503. A stream lasts
+     * as long as its client, so streams don't count against the other limits.
+     * With the Restlet engine, they still take threads of its connector.
+     */
+    private int maxStreams = 4;
+
+    /**
+     * Time a request may wait for a worker before it gets a 503.
+     */
+    private int queueTimeoutMs = 10000;
+
+    /**
+     * Interval between two samples of the processes.
+     */
+    private int processIntervalMs = 2000;
+
+    /**
+     * Whether connections are kept open between requests.
+     */
+    private boolean keepAlive = true;
+
+    /**
+     * Time after which an idle connection is closed.
+     */
+    private int idleTimeoutMs = 30000;
+
+    public String getEngine() {
+        return engine;
+    }
+
+    public void setEngine(String engine) {
+        this.engine = engine;
+    }
+
+    public String getLocalSocket() {
+        return localSocket;
+    }
+
+    public void setLocalSocket(String localSocket) {
+        this.localSocket = localSocket;
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public void setWorkers(int workers) {
+        this.workers = workers;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    public void setMaxQueued(int maxQueued) {
+        this.maxQueued = maxQueued;
+    }
+
+    public int getMaxStreams() {
+        return maxStreams;
+    }
+
+    public void setMaxStreams(int maxStreams) {
+        this.maxStreams = maxStreams;
+    }
+
+    public int getQueueTimeoutMs() {
+        return queueTimeoutMs;
+    }
+
+    public void setQueueTimeoutMs(int queueTimeoutMs) {
+        this.queueTimeoutMs = queueTimeoutMs;
+    }
+
+    public int getProcessIntervalMs() {
+        return processIntervalMs;
+    }
+
+    public void setProcessIntervalMs(int processIntervalMs) {
+        this.processIntervalMs = processIntervalMs;
+    }
+
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public int getIdleTimeoutMs() {
+        return idleTimeoutMs;
+    }
+
+    public void setIdleTimeoutMs(int idleTimeoutMs) {
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    /**
+     * Reads the settings from the extras of an intent. Missing extras keep their
+     * default value.
+     */
+    public static ServerSettings fromIntent(Intent intent) {
+        ServerSettings settings = new ServerSettings();
+
+        if (intent == null)
+            return settings;
+
+        if (intent.getStringExtra(EXTRA_ENGINE) != null)
+            settings.engine = intent.getStringExtra(EXTRA_ENGINE);
+
+        if (intent.getStringExtra(EXTRA_LOCAL_SOCKET) != null)
+            settings.localSocket = intent.getStringExtra(EXTRA_LOCAL_SOCKET);
+
+        settings.workers = Math.max(1, intent.getIntExtra(EXTRA_WORKERS, settings.workers));
+        settings.maxQueued = Math.max(0, intent.getIntExtra(EXTRA_MAX_QUEUED, settings.maxQueued));
+        settings.maxStreams = Math.max(0, intent.getIntExtra(EXTRA_MAX_STREAMS, settings.maxStreams));
+        settings.queueTimeoutMs = intent.getIntExtra(EXTRA_QUEUE_TIMEOUT, settings.queueTimeoutMs);
+        settings.processIntervalMs = Math.max(100,
+                intent.getIntExtra(EXTRA_PROCESS_INTERVAL, settings.processIntervalMs));
+        settings.keepAlive = intent.getBooleanExtra(EXTRA_KEEP_ALIVE, settings.keepAlive);
+        settings.idleTimeoutMs = intent.getIntExtra(EXTRA_IDLE_TIMEOUT, settings.idleTimeoutMs);
+
+        return settings;
+    }
+
+    @Override
+    public String toString() {
+        return "engine=" + engine + " localSocket=" + localSocket + " workers=" + workers + " maxQueued=" + maxQueued
+                + " maxStreams=" + maxStreams + " queueTimeoutMs=" + queueTimeoutMs + " processIntervalMs=" + processIntervalMs + " keepAlive=" + keepAlive
+                + " idleTimeoutMs=" + idleTimeoutMs;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.service;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.restlet.data.CacheDirective;
+import org.restlet.data.MediaType;
+import org.restlet.representation.Representation;
+import org.restlet.representation.StringRepresentation;
+import org.restlet.resource.Get;
+import org.restlet.resource.ServerResource;
+
+/**
+ * Returns the gauges of the server, see PlatformStatus.
+ */
+public class StatusResource extends ServerResource {
+
+    @Get
+    public Representation doGet() throws JSONException {
+        LoadSheddingFilter loadShedding;
+        IconCache iconCache;
+        JSONObject status;
+
+        loadShedding = (LoadSheddingFilter) getContext().getAttributes().get("loadShedding");
+        iconCache = (IconCache) getContext().getAttributes().get("iconCache");
+
+        status = PlatformStatus.toJson(loadShedding.getLimiter(), iconCache);
+
+        getResponse().getCacheDirectives().add(CacheDirective.noCache());
+
+        return new StringRepresentation(status.toString(), MediaType.APPLICATION_JSON);
+    }
+}
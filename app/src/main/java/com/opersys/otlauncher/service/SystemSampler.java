@@ -0,0 +1,500 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.service;
+
+import android.util.Log;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples device level CPU, memory and I/O counters every second and keeps their
+ * history in two tiers: every sample for 10 minutes, and the average of every 10
+ * samples for 6 hours.
+ *
+ * The history is kept in preallocated arrays and the /proc files are read in
+ * reused buffers, so that sampling allocates nothing.
+ */
+public class SystemSampler {
+
+    private static final String TAG = "SystemSampler";
+
+    public static final long INTERVAL_MS = 1000;
+
+    /**
+     * Names of the values of a sample.
+     */
+    public static final String[] CHANNELS = {
+            "cpuBusy",      // Permille of the CPU time not idle, over the interval.
+            "cpuIowait",    // Permille of the CPU time waiting for I/O.
+            "memUsedKb",
+            "memAvailableKb",
+            "ioReadKbps",   // Paged in from storage, in kB/s.
+            "ioWriteKbps",  // Paged out to storage, in kB/s.
+    };
+
+    private static final int CPU_BUSY = 0;
+    private static final int CPU_IOWAIT = 1;
+    private static final int MEM_USED = 2;
+    private static final int MEM_AVAILABLE = 3;
+    private static final int IO_READ = 4;
+    private static final int IO_WRITE = 5;
+
+    /**
+     * Magic number of the binary format, "OTHS".
+     */
+    public static final int BINARY_MAGIC = 0x4f544853;
+
+    public static final int BINARY_VERSION = 1;
+
+    public static final String BINARY_MIME_TYPE = "application/octet-stream";
+
+    /**
+     * A ring of samples, each made of a time and one int per channel.
+     */
+    static class Ring {
+        final long intervalMs;
+        final long[] times;
+        final int[] values;
+        int head;
+        int count;
+
+        Ring(int capacity, long intervalMs) {
+            this.intervalMs = intervalMs;
+            this.times = new long[capacity];
+            this.values = new int[capacity * CHANNELS.length];
+        }
+
+        void add(long time, int[] sample) {
+            times[head] = time;
+            System.arraycopy(sample, 0, values, head * CHANNELS.length, CHANNELS.length);
+
+            head = (head + 1) % times.length;
+            if (count < times.length)
+                count++;
+        }
+
+        /**
+         * Index of the i-th oldest sample.
+         */
+        int index(int i) {
+            return (head - count + i + times.length) % times.length;
+        }
+    }
+
+    /**
+     * A file of /proc which is read again and again in the same buffer.
+     */
+    static class ProcFile {
+        private final String path;
+        private final byte[] buffer;
+        private final long[] single = new long[1];
+        private RandomAccessFile file;
+        private int length;
+
+        ProcFile(String path, int size) {
+            this.path = path;
+            this.buffer = new byte[size];
+        }
+
+        boolean read() {
+            int n;
+
+            try {
+                if (file == null)
+                    file = new RandomAccessFile(path, "r");
+
+                file.seek(0);
+                length = 0;
+
+                while (length < buffer.length
+                        && (n = file.read(buffer, length, buffer.length - length)) > 0)
+                    length += n;
+
+                return true;
+
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to read " + path, e);
+                return false;
+            }
+        }
+
+        /**
+         * Parses up to values.length numbers following a key at the start of a line.
+         *
+         * @return the number of values parsed, 0 if the key was not found
+         */
+        int find(byte[] key, long[] values) {
+            int pos, n;
+
+            for (pos = 0; pos < length; pos++) {
+                if ((pos == 0 || buffer[pos - 1] == '\n') && startsWith(pos, key))
+                    break;
+            }
+
+            if (pos >= length)
+                return 0;
+
+            pos += key.length;
+            n = 0;
+
+            while (n < values.length && pos < length && buffer[pos] != '\n') {
+                while (pos < length && buffer[pos] == ' ')
+                    pos++;
+
+                if (pos >= length || buffer[pos] < '0' || buffer[pos] > '9')
+                    break;
+
+                values[n] = 0;
+                while (pos < length && buffer[pos] >= '0' && buffer[pos] <= '9')
+                    values[n] = values[n] * 10 + (buffer[pos++] - '0');
+                n++;
+            }
+
+            return n;
+        }
+
+        /**
+         * Returns the first number following a key, or -1 if the key was not found.
+         */
+        long findValue(byte[] key) {
+            return find(key, single) > 0 ? single[0] : -1;
+        }
+
+        private boolean startsWith(int pos, byte[] key) {
+            if (pos + key.length > length)
+                return false;
+
+            for (int i = 0; i < key.length; i++)
+                if (buffer[pos + i] != key[i])
+                    return false;
+
+            return true;
+        }
+
+        void close() {
+            try {
+                if (file != null)
+                    file.close();
+            } catch (IOException ignored) {}
+            file = null;
+        }
+    }
+
+    private static final byte[] KEY_CPU = "cpu ".getBytes();
+    private static final byte[] KEY_MEM_TOTAL = "MemTotal:".getBytes();
+    private static final byte[] KEY_MEM_FREE = "MemFree:".getBytes();
+    private static final byte[] KEY_MEM_AVAILABLE = "MemAvailable:".getBytes();
+    private static final byte[] KEY_BUFFERS = "Buffers:".getBytes();
+    private static final byte[] KEY_CACHED = "Cached:".getBytes();
+    private static final byte[] KEY_PGPGIN = "pgpgin ".getBytes();
+    private static final byte[] KEY_PGPGOUT = "pgpgout ".getBytes();
+
+    /**
+     * Number of 1 s samples averaged in a sample of the second tier.
+     */
+    private static final int TIER2_FACTOR = 10;
+
+    private final Ring tier1 = new Ring(600, INTERVAL_MS);
+
+    private final Ring tier2 = new Ring(2160, INTERVAL_MS * TIER2_FACTOR);
+
+    private final ProcFile stat = new ProcFile("/proc/stat", 8192);
+
+    private final ProcFile meminfo = new ProcFile("/proc/meminfo", 4096);
+
+    private final ProcFile vmstat = new ProcFile("/proc/vmstat", 8192);
+
+    private final long[] scratch = new long[10];
+
+    private final int[] sample = new int[CHANNELS.length];
+
+    private final long[] tier2Sums = new long[CHANNELS.length];
+
+    private int tier2Count;
+
+    private long lastCpuTotal, lastCpuIdle, lastCpuIowait, lastPgpgin, lastPgpgout;
+
+    private long lastTime;
+
+    private ScheduledExecutorService scheduler;
+
+    public synchronized void start() {
+        if (scheduler != null)
+            return;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "SystemSampler");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        scheduler.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tick();
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Failed to sample the system counters", e);
+                }
+            }
+        }, 0, INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null)
+            scheduler.shutdownNow();
+        scheduler = null;
+
+        stat.close();
+        meminfo.close();
+        vmstat.close();
+    }
+
+    private synchronized void tick() {
+        long cpuTotal, cpuIdle, cpuIowait, pgpgin, pgpgout, memTotal, memAvailable;
+        long now, elapsed;
+        int n;
+
+        now = System.currentTimeMillis();
+
+        if (!stat.read() || !meminfo.read() || !vmstat.read())
+            return;
+
+        // cpu user nice system idle iowait irq softirq steal
+        n = stat.find(KEY_CPU, scratch);
+        cpuTotal = 0;
+        for (int i = 0; i < Math.min(n, 8); i++)
+            cpuTotal += scratch[i];
+        cpuIdle = n > 3 ? scratch[3] : 0;
+        cpuIowait = n > 4 ? scratch[4] : 0;
+
+        memTotal = meminfo.findValue(KEY_MEM_TOTAL);
+        memAvailable = meminfo.findValue(KEY_MEM_AVAILABLE);
+
+        // MemAvailable only exists from Linux 3.14.
+        if (memAvailable == -1)
+            memAvailable = Math.max(meminfo.findValue(KEY_MEM_FREE), 0)
+                    + Math.max(meminfo.findValue(KEY_BUFFERS), 0)
+                    + Math.max(meminfo.findValue(KEY_CACHED), 0);
+
+        pgpgin = vmstat.findValue(KEY_PGPGIN);
+        pgpgout = vmstat.findValue(KEY_PGPGOUT);
+
+        // The first read only gives the base of the counters.
+        if (lastTime != 0 && cpuTotal > lastCpuTotal) {
+            elapsed = Math.max(now - lastTime, 1);
+
+            sample[CPU_BUSY] = (int) (1000 * (cpuTotal - lastCpuTotal - (cpuIdle - lastCpuIdle))
+                    / (cpuTotal - lastCpuTotal));
+            sample[CPU_IOWAIT] = (int) (1000 * (cpuIowait - lastCpuIowait)
+                    / (cpuTotal - lastCpuTotal));
+            sample[MEM_USED] = (int) (memTotal - memAvailable);
+            sample[MEM_AVAILABLE] = (int) memAvailable;
+            sample[IO_READ] = (int) ((pgpgin - lastPgpgin) * 1000 / elapsed);
+            sample[IO_WRITE] = (int) ((pgpgout - lastPgpgout) * 1000 / elapsed);
+
+            addSample(now);
+        }
+
+        lastTime = now;
+        lastCpuTotal = cpuTotal;
+        lastCpuIdle = cpuIdle;
+        lastCpuIowait = cpuIowait;
+        lastPgpgin = pgpgin;
+        lastPgpgout = pgpgout;
+    }
+
+    private void addSample(long now) {
+        tier1.add(now, sample);
+
+        for (int i = 0; i < CHANNELS.length; i++)
+            tier2Sums[i] += sample[i];
+
+        if (++tier2Count < TIER2_FACTOR)
+            return;
+
+        for (int i = 0; i < CHANNELS.length; i++) {
+            sample[i] = (int) (tier2Sums[i] / TIER2_FACTOR);
+            tier2Sums[i] = 0;
+        }
+        tier2Count = 0;
+
+        tier2.add(now, sample);
+    }
+
+    /**
+     * Returns the ring of a tier, 1 for the samples of every second, 2 for those
+     * of every 10 seconds.
+     */
+    private Ring getRing(int tier) {
+        if (tier == 1)
+            return tier1;
+        else if (tier == 2)
+            return tier2;
+        else
+            throw new IllegalArgumentException("No tier " + tier);
+    }
+
+    /**
+     * Parses the tier parameter of a request, "1s" or "10s".
+     *
+     * @return the tier, or -1 if the parameter is not valid
+     */
+    public static int parseTier(String tierParam) {
+        if (tierParam == null || tierParam.equals("1s"))
+            return 1;
+        else if (tierParam.equals("10s"))
+            return 2;
+        else
+            return -1;
+    }
+
+    /**
+     * Parses the since parameter of a request, a time in ms.
+     *
+     * @return the time, or 0 for the whole history
+     */
+    public static long parseSince(String sinceParam) {
+        if (sinceParam == null)
+            return 0;
+
+        try {
+            return Long.parseLong(sinceParam);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the samples of a tier taken after a time, in columns:
+     *
+     *   {"intervalMs": 1000, "channels": ["cpuBusy", ...], "times": [...],
+     *    "values": [[cpuBusy of each sample], ...]}
+     */
+    public synchronized String getHistoryJson(int tier, long since) throws JSONException {
+        JSONArray times, channels, values, column;
+        JSONObject json;
+        Ring ring;
+        int first, idx;
+
+        ring = getRing(tier);
+        first = getFirst(ring, since);
+
+        times = new JSONArray();
+        values = new JSONArray();
+        channels = new JSONArray();
+
+        for (int i = first; i < ring.count; i++)
+            times.put(ring.times[ring.index(i)]);
+
+        for (int c = 0; c < CHANNELS.length; c++) {
+            channels.put(CHANNELS[c]);
+
+            column = new JSONArray();
+            for (int i = first; i < ring.count; i++) {
+                idx = ring.index(i);
+                column.put(ring.values[idx * CHANNELS.length + c]);
+            }
+            values.put(column);
+        }
+
+        json = new JSONObject();
+        json.put("intervalMs", ring.intervalMs);
+        json.put("channels", channels);
+        json.put("times", times);
+        json.put("values", values);
+
+        return json.toString();
+    }
+
+    /**
+     * Writes the samples of a tier taken after a time. All integers are big endian.
+     *
+     *   u32  magic, "OTHS"
+     *   u8   version, 1
+     *   u8   number of channels, C, in the order of CHANNELS
+     *   u32  interval in ms
+     *   u32  number of samples, N
+     *   N times:  i64 time in ms, C x i32 values
+     */
+    public void writeHistory(int tier, long since, OutputStream outputStream) throws IOException {
+        DataOutputStream out;
+        long[] times;
+        int[] values;
+        long intervalMs;
+        int count;
+        Ring ring;
+
+        // Copy under the lock, write without it.
+        synchronized (this) {
+            ring = getRing(tier);
+            intervalMs = ring.intervalMs;
+            count = ring.count - getFirst(ring, since);
+
+            times = new long[count];
+            values = new int[count * CHANNELS.length];
+
+            for (int i = 0; i < count; i++) {
+                int idx = ring.index(ring.count - count + i);
+                times[i] = ring.times[idx];
+                System.arraycopy(ring.values, idx * CHANNELS.length, values,
+                        i * CHANNELS.length, CHANNELS.length);
+            }
+        }
+
+        out = new DataOutputStream(outputStream);
+        out.writeInt(BINARY_MAGIC);
+        out.writeByte(BINARY_VERSION);
+        out.writeByte(CHANNELS.length);
+        out.writeInt((int) intervalMs);
+        out.writeInt(count);
+
+        for (int i = 0; i < count; i++) {
+            out.writeLong(times[i]);
+            for (int c = 0; c < CHANNELS.length; c++)
+                out.writeInt(values[i * CHANNELS.length + c]);
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Position, from the oldest, of the first sample taken after a time.
+     */
+    private static int getFirst(Ring ring, long since) {
+        int first;
+
+        first = 0;
+        while (first < ring.count && ring.times[ring.index(first)] <= since)
+            first++;
+
+        return first;
+    }
+}
@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.service;
+
+import android.content.pm.PackageManager;
+import com.opersys.otlauncher.Utils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for the icon cache: validation, variants, coalescing and the
+ * conditions of the requests.
+ */
+public class IconCacheTest {
+
+    /**
+     * Packages whose icons are their name, size and format, as text.
+     */
+    private static class FakeSource implements IconCache.Source {
+
+        final Map<String, Long> installed = new ConcurrentHashMap<String, Long>();
+
+        final AtomicInteger renders = new AtomicInteger();
+
+        /**
+         * When set, renderings wait for it after counting down 'rendering'.
+         */
+        volatile CountDownLatch release;
+
+        final CountDownLatch rendering = new CountDownLatch(1);
+
+        @Override
+        public long getLastUpdateTime(String app) throws PackageManager.NameNotFoundException {
+            Long lastUpdateTime = installed.get(app);
+
+            if (lastUpdateTime == null)
+                throw new PackageManager.NameNotFoundException(app);
+
+            return lastUpdateTime;
+        }
+
+        @Override
+        public byte[] render(String app, int size, IconCache.Format format)
+                throws PackageManager.NameNotFoundException {
+            renders.incrementAndGet();
+
+            if (release != null) {
+                rendering.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            return (app + " " + getLastUpdateTime(app) + " " + size + " " + format).getBytes();
+        }
+    }
+
+    private FakeSource source;
+
+    private File cacheDir;
+
+    private IconCache iconCache;
+
+    /**
+     * Cache which checks the package on every lookup.
+     */
+    private IconCache newCache() {
+        return new IconCache(source, cacheDir, IconCache.DEFAULT_MEMORY_BUDGET, 0);
+    }
+
+    @Before
+    public void createCache() throws IOException {
+        source = new FakeSource();
+        source.installed.put("com.example.a", 1000L);
+        source.installed.put("com.example.b", 2000L);
+
+        cacheDir = File.createTempFile("otlauncher-icons", "");
+        if (!cacheDir.delete() || !cacheDir.mkdir())
+            throw new IOException("Couldn't create " + cacheDir);
+
+        iconCache = newCache();
+    }
+
+    @After
+    public void deleteCache() {
+        iconCache.stop();
+        Utils.delete(cacheDir, true);
+    }
+
+    @Test
+    public void testNotModified() throws Exception {
+        IconCache.Icon icon;
+
+        icon = iconCache.get("com.example.a");
+
+        assertEquals(1000L, icon.getLastModified());
+        assertTrue(icon.getTag().startsWith(Long.toHexString(1000L) + "-"));
+
+        assertTrue(icon.isNotModified(Arrays.asList(icon.getTag()), -1));
+        assertTrue(icon.isNotModified(Arrays.asList("other", icon.getTag()), -1));
+        assertTrue(icon.isNotModified(Arrays.asList("*"), -1));
+        assertFalse(icon.isNotModified(Arrays.asList("other"), -1));
+
+        // Second precision, like the HTTP dates.
+        assertTrue(icon.isNotModified(null, 1999L));
+        assertTrue(icon.isNotModified(Collections.<String>emptyList(), 1000L));
+        assertFalse(icon.isNotModified(null, 999L));
+        assertFalse(icon.isNotModified(null, -1));
+
+        // If-None-Match takes precedence.
+        assertFalse(icon.isNotModified(Arrays.asList("other"), 1000L));
+    }
+
+    @Test
+    public void testUpdatedPackage() throws Exception {
+        IconCache.Icon icon, updated;
+
+        icon = iconCache.get("com.example.a");
+        assertSame(icon, iconCache.get("com.example.a"));
+        assertEquals(1, source.renders.get());
+
+        source.installed.put("com.example.a", 3000L);
+        updated = iconCache.get("com.example.a");
+
+        assertEquals(2, source.renders.get());
+        assertEquals(3000L, updated.getLastModified());
+        assertFalse(updated.getTag().equals(icon.getTag()));
+        assertFalse(updated.isNotModified(Arrays.asList(icon.getTag()), -1));
+
+        // The icon of the previous version is gone from the disk.
+        assertEquals(1, new File(cacheDir, "com.example.a").list().length);
+    }
+
+    @Test
+    public void testValidateInterval() throws Exception {
+        IconCache.Icon icon;
+
+        iconCache = new IconCache(source, cacheDir, IconCache.DEFAULT_MEMORY_BUDGET, 60000);
+        icon = iconCache.get("com.example.a");
+
+        // Not checked again until the interval is over.
+        source.installed.put("com.example.a", 3000L);
+        assertSame(icon, iconCache.get("com.example.a"));
+        assertEquals(1, source.renders.get());
+    }
+
+    @Test
+    public void testDisk() throws Exception {
+        IconCache.Icon icon;
+
+        icon = iconCache.get("com.example.a", 32, IconCache.Format.PNG);
+
+        // A new cache, as after a restart of the service, reads it back.
+        iconCache = newCache();
+        assertEquals(icon.getTag(), iconCache.get("com.example.a", 32, IconCache.Format.PNG).getTag());
+        assertEquals(1, source.renders.get());
+
+        // Unless the package was updated.
+        iconCache = newCache();
+        source.installed.put("com.example.a", 3000L);
+        assertEquals(3000L, iconCache.get("com.example.a", 32, IconCache.Format.PNG).getLastModified());
+        assertEquals(2, source.renders.get());
+    }
+
+    @Test
+    public void testVariants() throws Exception {
+        IconCache.Icon full, small, webp;
+
+        full = iconCache.get("com.example.a", 0, IconCache.Format.PNG);
+        small = iconCache.get("com.example.a", 32, IconCache.Format.PNG);
+        webp = iconCache.get("com.example.a", 32, IconCache.Format.WEBP);
+
+        assertEquals("com.example.a 1000 0 PNG", new String(full.getData()));
+        assertEquals("com.example.a 1000 32 PNG", new String(small.getData()));
+        assertEquals("com.example.a 1000 32 WEBP", new String(webp.getData()));
+        assertEquals(IconCache.Format.WEBP, webp.getFormat());
+
+        assertFalse(full.getTag().equals(small.getTag()));
+        assertFalse(small.getTag().equals(webp.getTag()));
+
+        assertEquals(3, source.renders.get());
+        assertEquals(3, iconCache.getMemoryCount());
+        assertEquals(3, new File(cacheDir, "com.example.a").list().length);
+
+        assertSame(small, iconCache.get("com.example.a", 32, IconCache.Format.PNG));
+        assertEquals(3, source.renders.get());
+
+        // All the variants go at once.
+        iconCache.get("com.example.b");
+        iconCache.invalidate("com.example.a");
+
+        assertEquals(1, iconCache.getMemoryCount());
+        assertEquals(iconCache.get("com.example.b").getData().length, iconCache.getMemoryUsed());
+        assertFalse(new File(cacheDir, "com.example.a").exists());
+        assertEquals(1, new File(cacheDir, "com.example.b").list().length);
+    }
+
+    @Test
+    public void testPrune() throws Exception {
+        File oldFile;
+
+        iconCache.get("com.example.a");
+        iconCache.get("com.example.b");
+
+        oldFile = new File(cacheDir, "com.example.c-3e8-0.png");
+        assertTrue(oldFile.createNewFile());
+
+        // Uninstalled while the service was not running.
+        source.installed.remove("com.example.b");
+        newCache().pruneNow();
+
+        assertEquals(Arrays.asList("com.example.a"), Arrays.asList(cacheDir.list()));
+        assertEquals(1, new File(cacheDir, "com.example.a").list().length);
+    }
+
+    @Test
+    public void testInvalidSize() throws Exception {
+        assertEquals(0, IconCache.parseSize(null));
+        assertEquals(48, IconCache.parseSize("48"));
+        assertEquals(-1, IconCache.parseSize("-1"));
+        assertEquals(-1, IconCache.parseSize(String.valueOf(IconCache.MAX_SIZE + 1)));
+        assertEquals(-1, IconCache.parseSize("big"));
+
+        try {
+            iconCache.get("com.example.a", IconCache.MAX_SIZE + 1, IconCache.Format.PNG);
+            fail("Size above the maximum accepted");
+        } catch (IllegalArgumentException e) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        final IconCache.Icon[] icons = new IconCache.Icon[2];
+        Thread[] threads;
+
+        source.release = new CountDownLatch(1);
+        threads = new Thread[icons.length];
+
+        for (int i = 0; i < threads.length; i++) {
+            final int n = i;
+
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        icons[n] = iconCache.get("com.example.a", 32, IconCache.Format.PNG);
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            threads[i].start();
+
+            // The second thread starts once the first one is rendering, and is
+            // let go once it waits for that rendering.
+            if (i == 0)
+                assertTrue(source.rendering.await(10, TimeUnit.SECONDS));
+        }
+
+        waitUntilWaiting(threads[1]);
+        source.release.countDown();
+
+        for (Thread thread : threads)
+            thread.join(10000);
+
+        assertEquals(1, source.renders.get());
+        assertNotNull(icons[0]);
+        assertSame(icons[0], icons[1]);
+    }
+
+    private static void waitUntilWaiting(Thread thread) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+
+        while (thread.getState() != Thread.State.WAITING && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+
+        assertEquals(Thread.State.WAITING, thread.getState());
+    }
+
+    @Test
+    public void testGetAll() throws Exception {
+        Map<String, IconCache.Icon> icons;
+
+        icons = iconCache.getAll(Arrays.asList("com.example.b", "com.example.none", "com.example.a"),
+                16, IconCache.Format.PNG);
+
+        // In the order asked, without the unknown package.
+        assertEquals(Arrays.asList("com.example.b", "com.example.a"),
+                Arrays.asList(icons.keySet().toArray()));
+        assertEquals("com.example.a 1000 16 PNG", new String(icons.get("com.example.a").getData()));
+    }
+
+    @Test
+    public void testStop() throws Exception {
+        iconCache.getAll(Arrays.asList("com.example.a"), 0, IconCache.Format.PNG);
+        iconCache.stop();
+
+        try {
+            iconCache.getAll(Arrays.asList("com.example.a"), 0, IconCache.Format.PNG);
+            fail("Rendering after stop");
+        } catch (IOException e) {
+            // Expected.
+        }
+
+        // Single icons don't need the pool.
+        assertNotNull(iconCache.get("com.example.a"));
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.service;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for the deltas of the package catalog.
+ */
+public class PackageCatalogTest {
+
+    /**
+     * Packages installed on a pretend device.
+     */
+    private static class FakeSource implements PackageCatalog.Source {
+
+        final Map<String, PackageCatalog.Entry> installed =
+                new TreeMap<String, PackageCatalog.Entry>();
+
+        void install(String name, int versionCode) {
+            installed.put(name, new PackageCatalog.Entry(name, "Label of " + name,
+                    "1." + versionCode, versionCode, 1000L + versionCode));
+        }
+
+        @Override
+        public List<PackageCatalog.Entry> getInstalledEntries() {
+            return new ArrayList<PackageCatalog.Entry>(installed.values());
+        }
+
+        @Override
+        public PackageCatalog.Entry getEntry(String name) {
+            return installed.get(name);
+        }
+    }
+
+    private FakeSource source;
+
+    private PackageCatalog catalog;
+
+    private long baseVersion;
+
+    @Before
+    public void createCatalog() {
+        source = new FakeSource();
+        source.install("com.example.a", 1);
+        source.install("com.example.b", 1);
+
+        catalog = new PackageCatalog(source);
+        baseVersion = catalog.getVersion();
+    }
+
+    private void install(String name, int versionCode) {
+        source.install(name, versionCode);
+        catalog.updateNow(name);
+    }
+
+    private void remove(String name) {
+        source.installed.remove(name);
+        catalog.updateNow(name);
+    }
+
+    private JSONObject getDelta(long since) throws JSONException {
+        return new JSONObject(catalog.getDeltaJson(since));
+    }
+
+    @Test
+    public void testSnapshot() throws JSONException {
+        JSONObject json;
+
+        json = new JSONObject(catalog.getSnapshot().getJson());
+
+        assertTrue(json.getBoolean("full"));
+        assertEquals(baseVersion, json.getLong("version"));
+        assertEquals(2, json.getJSONArray("packages").length());
+        assertEquals("com.example.a", json.getJSONArray("packages").getJSONObject(0).getString("name"));
+
+        // Kept until the catalog changes.
+        assertSame(catalog.getSnapshot(), catalog.getSnapshot());
+        assertEquals(Long.toHexString(baseVersion), catalog.getSnapshot().getTag());
+    }
+
+    @Test
+    public void testDelta() throws JSONException {
+        JSONObject json;
+        JSONArray changes;
+
+        install("com.example.c", 1);
+        install("com.example.a", 2);
+        remove("com.example.b");
+
+        assertEquals(baseVersion + 3, catalog.getVersion());
+
+        json = getDelta(baseVersion);
+        changes = json.getJSONArray("changes");
+
+        assertFalse(json.getBoolean("full"));
+        assertEquals(baseVersion + 3, json.getLong("version"));
+        assertEquals(3, changes.length());
+        assertEquals("com.example.c", changes.getJSONObject(0).getString("name"));
+        assertEquals(2, changes.getJSONObject(1).getInt("versionCode"));
+        assertEquals("com.example.b", changes.getJSONObject(2).getString("name"));
+        assertTrue(changes.getJSONObject(2).getBoolean("removed"));
+
+        // Only what changed after the given version.
+        changes = getDelta(baseVersion + 2).getJSONArray("changes");
+        assertEquals(1, changes.length());
+        assertEquals("com.example.b", changes.getJSONObject(0).getString("name"));
+
+        // Up to date.
+        json = getDelta(catalog.getVersion());
+        assertFalse(json.getBoolean("full"));
+        assertEquals(0, json.getJSONArray("changes").length());
+    }
+
+    /**
+     * Test that updates which don't change a package don't make a new version.
+     */
+    @Test
+    public void testSameEntry() throws JSONException {
+        install("com.example.a", 1);
+        remove("com.example.z");
+
+        assertEquals(baseVersion, catalog.getVersion());
+        assertEquals(0, getDelta(baseVersion).getJSONArray("changes").length());
+    }
+
+    /**
+     * Test that a package removed then added again, or the other way around, is
+     * a single change: the last one.
+     */
+    @Test
+    public void testCollapsedChanges() throws JSONException {
+        JSONArray changes;
+
+        remove("com.example.a");
+        install("com.example.a", 3);
+        install("com.example.c", 1);
+        remove("com.example.c");
+
+        changes = getDelta(baseVersion).getJSONArray("changes");
+
+        assertEquals(2, changes.length());
+        assertEquals("com.example.a", changes.getJSONObject(0).getString("name"));
+        assertEquals(3, changes.getJSONObject(0).getInt("versionCode"));
+        assertFalse(changes.getJSONObject(0).has("removed"));
+        assertEquals("com.example.c", changes.getJSONObject(1).getString("name"));
+        assertTrue(changes.getJSONObject(1).getBoolean("removed"));
+    }
+
+    /**
+     * Test that versions the catalog can't answer for get the full catalog.
+     */
+    @Test
+    public void testOutOfRange() throws JSONException {
+        install("com.example.c", 1);
+
+        // From before the catalog was created, as after a restart of the service.
+        assertTrue(getDelta(baseVersion - 1).getBoolean("full"));
+
+        // From the future.
+        assertTrue(getDelta(catalog.getVersion() + 1).getBoolean("full"));
+    }
+
+    /**
+     * Test that the log only goes back MAX_LOG_SIZE changes.
+     */
+    @Test
+    public void testLogTruncation() throws JSONException {
+        JSONObject json;
+        long version;
+
+        for (int i = 0; i < PackageCatalog.MAX_LOG_SIZE + 2; i++)
+            install("com.example.a", i + 2);
+
+        version = catalog.getVersion();
+        assertEquals(baseVersion + PackageCatalog.MAX_LOG_SIZE + 2, version);
+
+        // The first two changes were dropped.
+        assertTrue(getDelta(baseVersion).getBoolean("full"));
+        assertTrue(getDelta(baseVersion + 1).getBoolean("full"));
+
+        json = getDelta(baseVersion + 2);
+        assertFalse(json.getBoolean("full"));
+        assertEquals(1, json.getJSONArray("changes").length());
+        assertEquals(PackageCatalog.MAX_LOG_SIZE + 3,
+                json.getJSONArray("changes").getJSONObject(0).getInt("versionCode"));
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for the lite HTTP engine, on the routes which don't need the
+ * package manager.
+ */
+public class PlatformHttpHandlerTest {
+
+    private ServerSettings settings;
+
+    private PlatformHttpHandler handler;
+
+    private ServerSocket serverSocket;
+
+    @Before
+    public void createHandler() {
+        settings = new ServerSettings();
+        settings.setWorkers(1);
+        settings.setMaxQueued(1);
+
+        handler = new PlatformHttpHandler(null, null, null, null, new RequestLimiter(settings));
+    }
+
+    @After
+    public void shutdownHandler() throws IOException {
+        if (serverSocket != null)
+            serverSocket.close();
+
+        handler.shutdown();
+    }
+
+    /**
+     * Serves the handler on a TCP port of the loopback interface, the way
+     * LitePlatformServer does.
+     */
+    private void listen() throws IOException {
+        Thread acceptThread;
+
+        serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+
+        acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Socket socket;
+
+                while (!serverSocket.isClosed()) {
+                    try {
+                        socket = serverSocket.accept();
+                        socket.setSoTimeout(settings.getIdleTimeoutMs());
+                        handler.submit(socket.getInputStream(), socket.getOutputStream(),
+                                closer(socket));
+                    } catch (IOException e) {
+                        // Closed by the test.
+                    }
+                }
+            }
+        });
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    private static Closeable closer(final Socket socket) {
+        return new Closeable() {
+            @Override
+            public void close() throws IOException {
+                socket.close();
+            }
+        };
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket;
+
+        socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+        socket.setSoTimeout(10000);
+        return socket;
+    }
+
+    /**
+     * Reads a response up to the end of its headers.
+     */
+    private static String readHeaders(InputStream in) throws IOException {
+        StringBuilder headers;
+        int c;
+
+        headers = new StringBuilder();
+
+        while (!headers.toString().endsWith("\r\n\r\n") && (c = in.read()) != -1)
+            headers.append((char) c);
+
+        return headers.toString();
+    }
+
+    private static void waitForIdleCount(PlatformHttpHandler handler, int count)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+
+        while (handler.getIdleCount() != count && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+
+        assertEquals(count, handler.getIdleCount());
+    }
+
+    /**
+     * Serves the requests in 'requests' and returns everything written back.
+     */
+    private String serve(String requests) throws IOException {
+        ByteArrayOutputStream out;
+
+        out = new ByteArrayOutputStream();
+        handler.serve(new ByteArrayInputStream(requests.getBytes("ISO-8859-1")), out,
+                new Closeable() {
+                    @Override
+                    public void close() {}
+                });
+
+        return out.toString("ISO-8859-1");
+    }
+
+    @Test
+    public void testRequest() throws IOException {
+        String response;
+
+        response = serve("GET / HTTP/1.1\r\nConnection: close\r\n\r\n");
+
+        assertTrue(response, response.startsWith("HTTP/1.1 200 OK\r\n"));
+        assertTrue(response, response.contains("Connection: close\r\n"));
+        assertTrue(response, response.endsWith("Platform Information Restlet"));
+    }
+
+    @Test
+    public void testMalformedEscapes() throws IOException {
+        String response;
+
+        response = serve("GET /icon/%zz HTTP/1.1\r\nConnection: close\r\n\r\n");
+        assertTrue(response, response.startsWith("HTTP/1.1 400 Bad Request\r\n"));
+
+        response = serve("GET /status?x=%g HTTP/1.1\r\nConnection: close\r\n\r\n");
+        assertTrue(response, response.startsWith("HTTP/1.1 400 Bad Request\r\n"));
+
+        // The connection is still usable after a bad request.
+        response = serve("GET /icons?apps=%2 HTTP/1.1\r\n\r\n"
+                + "GET / HTTP/1.1\r\nConnection: close\r\n\r\n");
+        assertTrue(response, response.startsWith("HTTP/1.1 400 Bad Request\r\n"));
+        assertTrue(response, response.contains("HTTP/1.1 200 OK\r\n"));
+    }
+
+    @Test
+    public void testIdleConnections() throws Exception {
+        List<Socket> idle;
+        Socket socket;
+        String response;
+        int maxThreads;
+
+        listen();
+        maxThreads = settings.getWorkers() + settings.getMaxQueued();
+        idle = new ArrayList<Socket>();
+
+        try {
+            // One connection kept alive after a request, the others never used.
+            socket = connect();
+            socket.getOutputStream().write("HEAD / HTTP/1.1\r\n\r\n".getBytes("ISO-8859-1"));
+            response = readHeaders(socket.getInputStream());
+            assertTrue(response, response.contains("Connection: keep-alive\r\n"));
+            idle.add(socket);
+
+            while (idle.size() < maxThreads)
+                idle.add(connect());
+
+            waitForIdleCount(handler, maxThreads);
+
+            // All the threads are taken, by connections doing nothing.
+            socket = connect();
+            try {
+                socket.getOutputStream().write(
+                        "GET / HTTP/1.1\r\nConnection: close\r\n\r\n".getBytes("ISO-8859-1"));
+                response = readHeaders(socket.getInputStream());
+                assertTrue(response, response.startsWith("HTTP/1.1 200 OK\r\n"));
+            } finally {
+                socket.close();
+            }
+
+            // The oldest one made room for it.
+            assertEquals(-1, idle.get(0).getInputStream().read());
+            assertEquals(maxThreads - 1, handler.getIdleCount());
+
+        } finally {
+            for (Socket s : idle)
+                s.close();
+        }
+    }
+}
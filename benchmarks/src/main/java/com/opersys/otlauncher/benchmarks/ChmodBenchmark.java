@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.benchmarks;
+
+import com.opersys.otlauncher.Utils;
+import com.opersys.otlauncher.tools.Shell;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies the same mode to a number of files, through Utils.chmod, which is what
+ * the launcher calls, and through the chmod command only.
+ *
+ * Utils.chmod only changes modes in process where android.system.Os or libcore
+ * is there, so on a desktop JVM both paths run the chmod command.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChmodBenchmark {
+
+    @Param({"1", "100", "1000"})
+    public int files;
+
+    private File workDir;
+
+    private Map<String, String> fileModes;
+
+    private List<String> targets;
+
+    @Setup(Level.Trial)
+    public void createFiles() throws IOException {
+        File file;
+
+        workDir = SyntheticApk.createWorkDir("chmod");
+        fileModes = new LinkedHashMap<String, String>();
+        targets = new ArrayList<String>();
+
+        for (int f = 0; f < files; f++) {
+            file = new File(workDir, "file" + f);
+            if (!file.createNewFile())
+                throw new IOException("Couldn't create " + file);
+
+            fileModes.put(file.toString(), "0755");
+            targets.add(file.toString());
+        }
+
+        // Starting the shell is a one time cost, not what we measure.
+        Shell.get().exec("true");
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() {
+        SyntheticApk.deleteWorkDir(workDir);
+    }
+
+    @Benchmark
+    public void chmod() throws IOException {
+        Utils.chmod(fileModes);
+    }
+
+    @Benchmark
+    public void chmodExternal() throws IOException {
+        Utils.chmodExternal("0755", targets);
+    }
+}
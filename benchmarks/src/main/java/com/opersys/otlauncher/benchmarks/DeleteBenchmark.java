@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.benchmarks;
+
+import com.opersys.otlauncher.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Utils.delete on an application tree, which is what reclaiming a replaced
+ * extraction costs.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DeleteBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int files;
+
+    private File workDir;
+
+    private File appDir;
+
+    @Setup(Level.Trial)
+    public void createWorkDir() throws IOException {
+        workDir = SyntheticApk.createWorkDir("delete");
+        appDir = new File(workDir, "app");
+    }
+
+    @Setup(Level.Invocation)
+    public void createTree() throws IOException {
+        FileOutputStream out;
+        File file;
+
+        for (int f = 0; f < files; f++) {
+            file = new File(appDir, SyntheticApk.getFileName(f));
+            file.getParentFile().mkdirs();
+
+            out = new FileOutputStream(file);
+            out.write(f);
+            out.close();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteWorkDir() {
+        SyntheticApk.deleteWorkDir(workDir);
+    }
+
+    @Benchmark
+    public boolean delete() {
+        return Utils.delete(appDir, true);
+    }
+}
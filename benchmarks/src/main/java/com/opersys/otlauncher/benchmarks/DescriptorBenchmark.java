@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.benchmarks;
+
+import com.opersys.otlauncher.Descriptor;
+import com.opersys.otlauncher.DescriptorReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opens an .apk, reads its descriptor and gets its last package, as a launch
+ * does. This is done without the descriptor cache, with a cache which has to be
+ * written ("miss") and with an up to date cache ("hit").
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DescriptorBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int packages;
+
+    @Param({"none", "miss", "hit"})
+    public String cache;
+
+    private File workDir;
+
+    private File apkFile;
+
+    private File cacheFile;
+
+    @Setup(Level.Trial)
+    public void createApk() throws Exception {
+        workDir = SyntheticApk.createWorkDir("descriptor");
+        apkFile = new SyntheticApk(workDir, packages, 20, 16, false).getFile();
+        cacheFile = new File(workDir, "otlauncher-descriptor.cache");
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteApk() {
+        SyntheticApk.deleteWorkDir(workDir);
+    }
+
+    @Benchmark
+    public Descriptor.Package getPackage() throws Exception {
+        DescriptorReader reader;
+
+        // Deleting the file is part of the measure, but is small next to writing it.
+        if (cache.equals("miss"))
+            cacheFile.delete();
+
+        reader = new DescriptorReader(apkFile);
+
+        try {
+            if (!cache.equals("none"))
+                reader.setCacheFile(cacheFile);
+
+            return reader.getDescriptor().getPackage(SyntheticApk.getPackageId(packages - 1));
+        } finally {
+            reader.close();
+        }
+    }
+}
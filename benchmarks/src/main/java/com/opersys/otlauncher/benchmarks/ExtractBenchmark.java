@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.benchmarks;
+
+import com.opersys.otlauncher.AppDirectory;
+import com.opersys.otlauncher.DescriptorReader;
+import com.opersys.otlauncher.Utils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A complete extraction of a package into an empty directory, as the launcher does
+ * it the first time: checking the MD5 sum of the nested archive, writing the files,
+ * applying the modes and writing the manifest and the MD5SUM file.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ExtractBenchmark {
+
+    @Param({"100", "1000"})
+    public int files;
+
+    @Param({"1024", "65536"})
+    public int fileSize;
+
+    @Param({"false", "true"})
+    public boolean compressed;
+
+    private File workDir;
+
+    private File appDir;
+
+    private DescriptorReader descriptorReader;
+
+    private AppDirectory appDirectory;
+
+    @Setup(Level.Trial)
+    public void createApk() throws Exception {
+        workDir = SyntheticApk.createWorkDir("extract");
+        descriptorReader = new DescriptorReader(
+                new SyntheticApk(workDir, 1, files, fileSize, compressed).getFile());
+        appDir = new File(workDir, SyntheticApk.getPackageId(0));
+        appDirectory = new AppDirectory(descriptorReader.getDescriptor(),
+                SyntheticApk.getPackageId(0), Utils.getArchitecture(), appDir);
+    }
+
+    @Setup(Level.Invocation)
+    public void clearAppDir() {
+        Utils.delete(appDir, true);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteApk() {
+        descriptorReader.close();
+        SyntheticApk.deleteWorkDir(workDir);
+    }
+
+    @Benchmark
+    public void extract() throws Exception {
+        appDirectory.extract();
+    }
+}
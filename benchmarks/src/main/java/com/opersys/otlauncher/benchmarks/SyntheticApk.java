@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.benchmarks;
+
+import com.opersys.otlauncher.Utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Builds an .apk file like the ones the launcher runs: a descriptor and, for each
+ * package, a nested archive of the application files. Its content only depends on
+ * the parameters, so that runs can be compared.
+ */
+public class SyntheticApk {
+
+    private static final String[] ARCHS = { "ia32", "arm" };
+
+    private final File file;
+
+    private final String[] md5Sums;
+
+    /**
+     * Creates the .apk file in 'dir'.
+     *
+     * @param packages   the number of packages in the descriptor
+     * @param files      the number of files in each package
+     * @param fileSize   the size of each file
+     * @param compressed true to deflate the files, false to store them. The
+     *                   nested archives themselves are always stored.
+     */
+    public SyntheticApk(File dir, int packages, int files, int fileSize, boolean compressed)
+            throws IOException {
+        ZipOutputStream apkOut;
+        StringBuilder json;
+        byte[] pkgArchive;
+
+        file = new File(dir, String.format("synthetic-%d-%d-%d-%s.apk", packages, files,
+                fileSize, compressed ? "deflated" : "stored"));
+        md5Sums = new String[packages];
+
+        json = new StringBuilder();
+        json.append("{\n  \"version\": \"1.0\",\n  \"packages\": [\n");
+
+        apkOut = new ZipOutputStream(new FileOutputStream(file));
+
+        try {
+            for (int i = 0; i < packages; i++) {
+                pkgArchive = createPackageArchive(i, files, fileSize, compressed);
+                md5Sums[i] = md5(pkgArchive);
+
+                putStored(apkOut, "assets/" + getPackageId(i) + ".zip", pkgArchive);
+
+                json.append(i > 0 ? ",\n" : "").append("    {\n");
+                json.append("      \"id\": \"").append(getPackageId(i)).append("\",\n");
+                json.append("      \"desc\": \"Synthetic package ").append(i).append("\",\n");
+                json.append("      \"cmd\": \"./bin/run\",\n");
+                json.append("      \"files\": [\n");
+
+                for (int a = 0; a < ARCHS.length; a++) {
+                    json.append(a > 0 ? ",\n" : "").append("        {\n");
+                    json.append("          \"file\": \"assets/").append(getPackageId(i)).append(".zip\",\n");
+                    json.append("          \"md5sum\": \"").append(md5Sums[i]).append("\",\n");
+                    json.append("          \"arch\": \"").append(ARCHS[a]).append("\",\n");
+                    json.append("          \"modes\": { ");
+
+                    for (int f = 0; f < files; f += 10)
+                        json.append(f > 0 ? ", " : "").append('"').append(getFileName(f))
+                                .append("\": \"0755\"");
+
+                    json.append(" }\n        }");
+                }
+
+                json.append("\n      ]\n    }");
+            }
+
+            json.append("\n  ]\n}\n");
+
+            putStored(apkOut, "assets/otlauncher.json", json.toString().getBytes("UTF-8"));
+        } finally {
+            apkOut.close();
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public static String getPackageId(int i) {
+        return "app" + i;
+    }
+
+    public String getMd5Sum(int i) {
+        return md5Sums[i];
+    }
+
+    /**
+     * Spreads the files over a few directories, as real applications do.
+     */
+    public static String getFileName(int f) {
+        return "lib/dir" + (f % 16) + "/file" + f + ".bin";
+    }
+
+    private static byte[] createPackageArchive(int pkg, int files, int fileSize, boolean compressed)
+            throws IOException {
+        ByteArrayOutputStream archive;
+        ZipOutputStream out;
+        Random random;
+        byte[] content;
+        ZipEntry entry;
+
+        archive = new ByteArrayOutputStream();
+        out = new ZipOutputStream(archive);
+        random = new Random(pkg);
+        content = new byte[fileSize];
+
+        for (int f = 0; f < files; f++) {
+            // Half random, half text-like, so that deflating does some work.
+            random.nextBytes(content);
+            for (int i = fileSize / 2; i < fileSize; i++)
+                content[i] = (byte) ('a' + (content[i] & 0x0f));
+
+            if (compressed) {
+                entry = new ZipEntry(getFileName(f));
+                out.putNextEntry(entry);
+                out.write(content);
+                out.closeEntry();
+            } else
+                putStored(out, getFileName(f), content);
+        }
+
+        out.close();
+
+        return archive.toByteArray();
+    }
+
+    private static void putStored(ZipOutputStream out, String name, byte[] content)
+            throws IOException {
+        ZipEntry entry;
+        CRC32 crc;
+
+        crc = new CRC32();
+        crc.update(content);
+
+        entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setSize(content.length);
+        entry.setCompressedSize(content.length);
+        entry.setCrc(crc.getValue());
+
+        out.putNextEntry(entry);
+        out.write(content);
+        out.closeEntry();
+    }
+
+    private static String md5(byte[] content) {
+        StringBuilder hex;
+        byte[] digest;
+
+        try {
+            digest = MessageDigest.getInstance("MD5").digest(content);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+
+        hex = new StringBuilder();
+        for (byte b : digest)
+            hex.append(String.format("%02x", b & 0xff));
+
+        return hex.toString();
+    }
+
+    /**
+     * Creates a temporary directory for the files of a benchmark.
+     */
+    public static File createWorkDir(String name) throws IOException {
+        File dir;
+
+        dir = File.createTempFile("otlauncher-" + name, "");
+        if (!dir.delete() || !dir.mkdir())
+            throw new IOException("Couldn't create " + dir);
+
+        return dir;
+    }
+
+    public static void deleteWorkDir(File dir) {
+        if (dir != null)
+            Utils.delete(dir, true);
+    }
+}
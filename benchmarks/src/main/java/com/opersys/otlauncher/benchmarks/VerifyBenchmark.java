@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.benchmarks;
+
+import com.opersys.otlauncher.AppDirectory;
+import com.opersys.otlauncher.DescriptorReader;
+import com.opersys.otlauncher.Utils;
+import com.opersys.otlauncher.Verifier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The checks made on an extracted application before it is run: the MD5SUM file
+ * (isExtractedOk), then the files against the manifest in each verification mode.
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VerifyBenchmark {
+
+    @Param({"100", "1000"})
+    public int files;
+
+    @Param({"1024", "65536"})
+    public int fileSize;
+
+    private File workDir;
+
+    private File appDir;
+
+    private AppDirectory appDirectory;
+
+    @Setup(Level.Trial)
+    public void extractApk() throws Exception {
+        DescriptorReader descriptorReader;
+        SyntheticApk apk;
+
+        workDir = SyntheticApk.createWorkDir("verify");
+        apk = new SyntheticApk(workDir, 1, files, fileSize, true);
+        appDir = new File(workDir, SyntheticApk.getPackageId(0));
+
+        descriptorReader = new DescriptorReader(apk.getFile());
+        try {
+            appDirectory = new AppDirectory(descriptorReader.getDescriptor(),
+                    SyntheticApk.getPackageId(0), Utils.getArchitecture(), appDir);
+            appDirectory.extract();
+        } finally {
+            descriptorReader.close();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteApk() {
+        SyntheticApk.deleteWorkDir(workDir);
+    }
+
+    @Benchmark
+    public boolean isExtractedOk() throws IOException {
+        return appDirectory.isExtractedOk();
+    }
+
+    @Benchmark
+    public List<String> verifyQuick() throws IOException {
+        return appDirectory.check(Verifier.Mode.QUICK);
+    }
+
+    @Benchmark
+    public List<String> verifyDeep() throws IOException {
+        return appDirectory.check(Verifier.Mode.DEEP);
+    }
+}
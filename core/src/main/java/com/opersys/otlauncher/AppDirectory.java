@@ -0,0 +1,461 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * The directory in which a package of a descriptor is extracted, for one
+ * architecture. The launcher runs applications from there, and the host tools
+ * stage such directories before they are pushed to a device.
+ */
+public class AppDirectory {
+
+    private static final String TAG = "OTLauncher";
+
+    /**
+     * Suffix of the directory in which a full extraction is done before it replaces
+     * the application directory.
+     */
+    public static final String STAGING_SUFFIX = ".staging";
+
+    /**
+     * Suffix, followed by a number, of the directories waiting to be deleted.
+     */
+    public static final String RETIRED_SUFFIX = ".old.";
+
+    private final Descriptor descriptor;
+
+    private final Descriptor.PackageFile pkgFile;
+
+    private final File appDir;
+
+    private final File stagingDir;
+
+    /**
+     * @param id   the id of the package in the descriptor
+     * @param arch the architecture, as returned by Utils.getArchitecture()
+     */
+    public AppDirectory(Descriptor descriptor, String id, String arch, File appDir) {
+        this.descriptor = descriptor;
+        this.appDir = appDir;
+        this.stagingDir = new File(appDir.getParentFile(), appDir.getName() + STAGING_SUFFIX);
+
+        if (descriptor.getPackage(id) == null)
+            throw new IllegalArgumentException("No package " + id);
+
+        this.pkgFile = descriptor.getPackage(id).getFileForArch(arch);
+
+        if (pkgFile == null)
+            throw new IllegalArgumentException("No file for " + arch + " in package " + id);
+    }
+
+    public File getDir() {
+        return appDir;
+    }
+
+    private static void log(String msg) {
+        Platform.get().log(TAG, msg);
+    }
+
+    /**
+     * Verifies the extracted application MD5 sum.
+     *
+     * @return true if the extracted application doesn't need to be updated
+     */
+    public boolean isExtractedOk() throws IOException {
+        String md5sum;
+
+        if (appDir.exists()) {
+            md5sum = Verifier.readMd5Sum(appDir);
+
+            // Check the MD5 sum of the extracted application.
+            if (md5sum != null)
+                return md5sum.equals(pkgFile.getMd5Sum());
+            else
+                log("No MD5SUM file found.");
+
+        } else {
+            log("Target directory " + appDir + " not found.");
+        }
+
+        return false;
+    }
+
+    /**
+     * Returns the file modes the descriptor asks for, indexed by file.
+     */
+    private static Map<String, String> getFileModes(Descriptor.PackageFile pkgFile) {
+        Map<String, String> fileModes;
+
+        fileModes = new LinkedHashMap<String, String>();
+
+        for (Descriptor.PackageFileMode pkgFileMode : pkgFile.getPackageFileModes())
+            fileModes.put(pkgFileMode.getFile(), pkgFileMode.getMode());
+
+        return fileModes;
+    }
+
+    /**
+     * Removes the files that are no longer part of an application as well as the
+     * directories that are left empty.
+     */
+    private void deleteRemovedFiles(List<PackageManifest.Entry> removedEntries)
+            throws IOException {
+        File targetFile, parentFile;
+
+        for (PackageManifest.Entry entry : removedEntries) {
+            targetFile = new File(appDir, entry.getPath());
+
+            log("Removing " + targetFile);
+
+            if (targetFile.exists() && !Utils.delete(targetFile, true))
+                throw new IOException("Couldn't remove " + targetFile);
+
+            parentFile = targetFile.getParentFile();
+            while (!parentFile.equals(appDir) && parentFile.delete())
+                parentFile = parentFile.getParentFile();
+        }
+    }
+
+    /**
+     * Only writes the files that differ from what the manifest of the previous
+     * extraction records.
+     *
+     * @return the names of the entries that were written
+     */
+    private Set<String> extractDelta(NestedArchive pkgArchive, Extractor extractor,
+                                     PackageManifest oldManifest,
+                                     PackageManifest newManifest) throws IOException {
+        List<ZipEntry> changedEntries;
+        Set<String> written;
+
+        changedEntries = oldManifest.getChangedEntries(appDir, pkgArchive.getEntries());
+        written = new HashSet<String>();
+
+        log("Incremental extraction: " + changedEntries.size() + " of "
+                + pkgArchive.getEntries().size() + " entries changed");
+
+        deleteRemovedFiles(oldManifest.getRemovedEntries(newManifest));
+
+        for (ZipEntry entry : changedEntries)
+            written.add(entry.getName());
+
+        // Directory entries are cheap to create and keep empty directories around.
+        for (ZipEntry entry : pkgArchive.getEntries())
+            if (entry.isDirectory())
+                changedEntries.add(entry);
+
+        extractor.extract(pkgArchive, changedEntries, appDir);
+
+        return written;
+    }
+
+    /**
+     * Moves a directory out of the way, under a name that reclaim() will find.
+     */
+    private void retire(File dir) throws IOException {
+        File retiredDir;
+        int n = 0;
+
+        do {
+            retiredDir = new File(appDir.getParentFile(), appDir.getName() + RETIRED_SUFFIX + n++);
+        } while (retiredDir.exists());
+
+        if (!dir.renameTo(retiredDir))
+            throw new IOException("Couldn't move " + dir + " to " + retiredDir);
+    }
+
+    /**
+     * Extracts the package in the application directory.
+     *
+     * If the application directory holds the manifest of a previous extraction,
+     * only the files that have changed are written or removed, in place. Otherwise,
+     * the whole package is extracted in a staging directory which then replaces the
+     * application directory, so that an interrupted extraction never leaves a half
+     * written application behind. The previous tree is left for reclaim().
+     */
+    public void extract() throws IOException {
+        File targetDir = appDir, targetFile, md5File;
+        ZipFile apkFile;
+        ZipEntry pkgEntry;
+        NestedArchive pkgArchive;
+        Extractor extractor;
+        FileOutputStream md5OutStream;
+        PackageManifest oldManifest, newManifest;
+        PackageManifest.Entry oldEntry;
+        Map<String, String> fileModes, pendingModes;
+        Set<String> written = null;
+        long startTime;
+
+        apkFile = descriptor.getAPK();
+        pkgEntry = apkFile.getEntry(pkgFile.getFile());
+
+        // This fails on a corrupted archive before the current extraction is touched.
+        pkgArchive = NestedArchive.open(apkFile, pkgEntry, appDir.getParentFile(),
+                pkgFile.getMd5Sum());
+
+        fileModes = getFileModes(pkgFile);
+        oldManifest = PackageManifest.read(appDir);
+        md5File = new File(appDir, Verifier.MD5SUM_FILE);
+
+        try {
+            newManifest = PackageManifest.fromArchive(pkgArchive.getEntries(), fileModes);
+            extractor = new Extractor();
+            extractor.setFileModes(fileModes);
+
+            if (oldManifest != null) {
+                // The directory is not valid anymore until the update is complete.
+                if (md5File.exists() && !md5File.delete())
+                    throw new IOException("Couldn't remove " + md5File);
+
+                try {
+                    written = extractDelta(pkgArchive, extractor, oldManifest, newManifest);
+                } catch (IOException ex) {
+                    log("Incremental extraction failed: " + ex.getMessage());
+                    oldManifest = null;
+                }
+            }
+
+            if (oldManifest == null) {
+                // Left by an interrupted extraction.
+                if (stagingDir.exists())
+                    retire(stagingDir);
+
+                // Don't count what a failed incremental extraction did.
+                extractor = new Extractor();
+                extractor.setFileModes(fileModes);
+
+                targetDir = stagingDir;
+                extractor.extract(pkgArchive, targetDir);
+            }
+
+            log("Extracted " + extractor.getThroughput());
+
+            Metrics.get().counter("otlauncher_extracted_files_total",
+                    "Files written by the extractions.").add(extractor.getFileCount());
+            Metrics.get().counter("otlauncher_extracted_bytes_total",
+                    "Bytes written by the extractions.").add(extractor.getByteCount());
+        } finally {
+            pkgArchive.close();
+        }
+
+        // Only touch the modes of the files that were written or whose mode changed,
+        // and that the extractor could not already take care of.
+        pendingModes = new LinkedHashMap<String, String>();
+
+        for (Map.Entry<String, String> fileMode : fileModes.entrySet()) {
+            targetFile = new File(targetDir, fileMode.getKey());
+
+            if (extractor.isModeApplied(fileMode.getKey()))
+                continue;
+
+            if (oldManifest != null && !written.contains(fileMode.getKey())) {
+                oldEntry = oldManifest.getEntry(fileMode.getKey());
+
+                if (oldEntry != null && fileMode.getValue().equals(oldEntry.getMode()))
+                    continue;
+            }
+
+            log("Setting file mode of " + targetFile.toString() + " to " + fileMode.getValue());
+
+            pendingModes.put(targetFile.toString(), fileMode.getValue());
+        }
+
+        startTime = System.nanoTime();
+        Utils.chmod(pendingModes);
+        LaunchTrace.endPhase("chmod", startTime);
+
+        newManifest.updateMtimes(targetDir, written, oldManifest);
+        newManifest.write(targetDir);
+
+        // Write the MD5SUM file.
+        md5OutStream = new FileOutputStream(new File(targetDir, Verifier.MD5SUM_FILE));
+        md5OutStream.write(pkgFile.getMd5Sum().getBytes());
+
+        md5OutStream.close();
+
+        if (targetDir == stagingDir) {
+            if (appDir.exists())
+                retire(appDir);
+
+            if (!stagingDir.renameTo(appDir))
+                throw new IOException("Couldn't move " + stagingDir + " to " + appDir);
+        }
+    }
+
+    /**
+     * Deletes the trees replaced by extract() and those left by interrupted
+     * extractions. It takes as long as deleting the application, which is why it
+     * isn't part of extract() and can be done once the application runs.
+     *
+     * @return the number of trees that were deleted
+     */
+    public int reclaim() {
+        File[] leftovers;
+        int count = 0;
+
+        leftovers = appDir.getParentFile().listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.equals(stagingDir.getName())
+                        || name.startsWith(appDir.getName() + RETIRED_SUFFIX);
+            }
+        });
+
+        if (leftovers == null)
+            return 0;
+
+        for (File leftover : leftovers) {
+            log("Removing " + leftover);
+
+            if (Utils.delete(leftover, true))
+                count++;
+            else
+                log("Couldn't remove " + leftover);
+        }
+
+        return count;
+    }
+
+    /**
+     * Extracts again the files of an application that failed verification.
+     */
+    private void repair(PackageManifest manifest, List<String> failed) throws IOException {
+        ZipFile apkFile;
+        ZipEntry entry;
+        NestedArchive pkgArchive;
+        Extractor extractor;
+        List<ZipEntry> entries;
+        Map<String, String> fileModes, pendingModes;
+        String mode;
+
+        apkFile = descriptor.getAPK();
+        pkgArchive = NestedArchive.open(apkFile, apkFile.getEntry(pkgFile.getFile()),
+                appDir.getParentFile(), pkgFile.getMd5Sum());
+        fileModes = getFileModes(pkgFile);
+        extractor = new Extractor();
+        extractor.setFileModes(fileModes);
+
+        try {
+            entries = new ArrayList<ZipEntry>();
+
+            for (String path : failed) {
+                entry = pkgArchive.getEntry(path);
+
+                if (entry == null)
+                    throw new IOException("Entry " + path + " not found in " + pkgFile.getFile());
+
+                log("Repairing " + path);
+                entries.add(entry);
+            }
+
+            extractor.extract(pkgArchive, entries, appDir);
+        } finally {
+            pkgArchive.close();
+        }
+
+        pendingModes = new LinkedHashMap<String, String>();
+
+        for (String path : failed) {
+            mode = fileModes.get(path);
+
+            if (mode != null && !extractor.isModeApplied(path))
+                pendingModes.put(new File(appDir, path).toString(), mode);
+        }
+
+        Utils.chmod(pendingModes);
+
+        manifest.updateMtimes(appDir, failed, manifest);
+        manifest.write(appDir);
+    }
+
+    private List<String> check(Verifier.Mode verifyMode, PackageManifest manifest)
+            throws IOException {
+        Verifier verifier;
+        List<String> failed;
+
+        verifier = new Verifier(verifyMode);
+        failed = verifier.verify(appDir, manifest);
+
+        Metrics.get().counter("otlauncher_verified_files_total",
+                "Files checked by the verifications.").add(verifier.getFileCount());
+
+        log(String.format("Verified %d files (%s) in %d ms, %d failed",
+                verifier.getFileCount(), verifyMode.toString().toLowerCase(Locale.US),
+                verifier.getElapsedNanos() / 1000000, failed.size()));
+
+        return failed;
+    }
+
+    /**
+     * Checks the files of an extracted application against its manifest.
+     *
+     * @return the paths of the files that don't match, or null if there is no
+     *         manifest to check them against
+     */
+    public List<String> check(Verifier.Mode verifyMode) throws IOException {
+        PackageManifest manifest;
+
+        manifest = PackageManifest.read(appDir);
+
+        return manifest != null ? check(verifyMode, manifest) : null;
+    }
+
+    /**
+     * Checks the files of an extracted application and repairs those that don't
+     * match what was extracted.
+     *
+     * @return false if the application can't be verified and needs to be extracted
+     */
+    public boolean verify(Verifier.Mode verifyMode) throws IOException {
+        PackageManifest manifest;
+        List<String> failed;
+
+        if (verifyMode == Verifier.Mode.NONE)
+            return true;
+
+        manifest = PackageManifest.read(appDir);
+
+        if (manifest == null) {
+            log("No manifest in " + appDir + ", cannot verify.");
+            return false;
+        }
+
+        failed = check(verifyMode, manifest);
+
+        if (!failed.isEmpty()) {
+            Metrics.get().counter("otlauncher_verify_failures_total",
+                    "Files which failed verification and were extracted again.").add(failed.size());
+            repair(manifest, failed);
+        }
+
+        return true;
+    }
+}
@@ -16,6 +16,9 @@
 
 package com.opersys.otlauncher;
 
+import org.json.JSONException;
+
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -24,10 +27,26 @@ import java.util.zip.ZipFile;
 /**
  * Simple data structure to hold the information provided by the "otlauncher.json"
  * files that describes what is stored in the .apk package.
+ *
+ * The files of a package are read when they are first needed, from the .apk or
+ * from the cache the descriptor came from. The descriptor was checked in full
+ * when it was read, so this only fails if the .apk or the cache can't be read
+ * anymore, in which case the accessors throw a LoadException.
  */
 public class Descriptor {
 
-    private final String defaultAppId;
+    /**
+     * Thrown when the files of a package can't be read on first use.
+     */
+    public static class LoadException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public LoadException(String msg, Throwable cause) {
+            super(msg, cause);
+        }
+    }
+
+    private String defaultAppId;
 
     public class PackageFileMode {
 
@@ -97,6 +116,13 @@ public class Descriptor {
         }
     }
 
+    /**
+     * Reads the files of a package when they are first needed.
+     */
+    interface PackageLoader {
+        void loadPackageFiles(Package pkg) throws IOException, JSONException;
+    }
+
     public class Package {
 
         private String id;
@@ -105,6 +131,43 @@ public class Descriptor {
 
         private HashMap<String, PackageFile> packageFiles;
 
+        private PackageLoader loader;
+
+        /**
+         * Sets the loader of the files of the package. The files read so far are
+         * dropped, the loader will read them again.
+         */
+        synchronized void setLoader(PackageLoader loader) {
+            this.loader = loader;
+            packageFiles.clear();
+        }
+
+        /**
+         * Makes sure the files of the package have been read.
+         */
+        synchronized void ensureLoaded() {
+            if (loader == null)
+                return;
+
+            try {
+                loader.loadPackageFiles(this);
+                loader = null;
+            } catch (IOException ex) {
+                packageFiles.clear();
+                throw new LoadException("Couldn't read package " + id, ex);
+            } catch (JSONException ex) {
+                packageFiles.clear();
+                throw new LoadException("Syntax error in package " + id, ex);
+            }
+        }
+
+        /**
+         * Returns the files read so far, without loading them.
+         */
+        PackageFile[] getLoadedPackageFiles() {
+            return packageFiles.values().toArray(new PackageFile[packageFiles.size()]);
+        }
+
         public String getDescription() {
             return desc;
         }
@@ -130,9 +193,15 @@ public class Descriptor {
         }
 
         public PackageFile getFileForArch(String arch) {
+            ensureLoaded();
             return packageFiles.get(arch);
         }
 
+        public PackageFile[] getPackageFiles() {
+            ensureLoaded();
+            return getLoadedPackageFiles();
+        }
+
         public void addPackageFile(PackageFile pkgFile) {
             packageFiles.put(pkgFile.getArchitecture(), pkgFile);
         }
@@ -150,6 +219,10 @@ public class Descriptor {
         return this.defaultAppId;
     }
 
+    public void setDefaultAppId(String defaultAppId) {
+        this.defaultAppId = defaultAppId;
+    }
+
     //public Descriptor() {
     //    this.packages = new HashMap<>();
     //}
@@ -173,7 +246,15 @@ public class Descriptor {
         return pkg;
     }
 
+    /**
+     * Returns a package, reading its files if they were not read yet.
+     */
     public Package getPackage(String id) {
-        return packages.get(id);
+        Package pkg = packages.get(id);
+
+        if (pkg != null)
+            pkg.ensureLoaded();
+
+        return pkg;
     }
 }
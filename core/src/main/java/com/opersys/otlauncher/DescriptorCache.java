@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Binary copy of a parsed {@link Descriptor}, so that the JSON descriptor doesn't
+ * need to be parsed every time the launcher is started.
+ *
+ * The cache is keyed on the path, size and modification time of the .apk file,
+ * and on the CRC of its descriptor entry. Any change in these makes the cache
+ * stale and the descriptor is parsed again.
+ *
+ * The cache is written while the descriptor is parsed, one package at a time, so
+ * that the files of all the packages are never held in memory together. The
+ * files of each package are written as a block of known length, so that loading
+ * the cache only reads the headers of the packages. Like with the descriptor,
+ * the files are read from the cache when the package is first used.
+ */
+public class DescriptorCache {
+
+    private static final int MAGIC = 0x4f54444c;
+
+    private static final int VERSION = 3;
+
+    private final File cacheFile;
+
+    private final File apkFile;
+
+    private final ZipEntry descEntry;
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        out.writeBoolean(s != null);
+        if (s != null)
+            out.writeUTF(s);
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private void writeKey(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(apkFile.getAbsolutePath());
+        out.writeLong(apkFile.length());
+        out.writeLong(apkFile.lastModified());
+        out.writeLong(descEntry.getCrc());
+    }
+
+    private boolean isKeyValid(DataInput in) throws IOException {
+        return in.readInt() == MAGIC
+                && in.readInt() == VERSION
+                && in.readUTF().equals(apkFile.getAbsolutePath())
+                && in.readLong() == apkFile.length()
+                && in.readLong() == apkFile.lastModified()
+                && in.readLong() == descEntry.getCrc();
+    }
+
+    /**
+     * Counts the bytes read, to know where the files of each package start.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+
+            if (b != -1)
+                count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+
+            if (n > 0)
+                count += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public CountingInputStream(InputStream in) {
+            super(in);
+        }
+    }
+
+    private static void writePackage(DataOutputStream out, Descriptor.Package pkg)
+            throws IOException {
+        ByteArrayOutputStream filesBuf;
+        DataOutputStream filesOut;
+        Descriptor.PackageFile[] pkgFiles;
+        Descriptor.PackageFileMode[] pkgFileModes;
+
+        writeString(out, pkg.getId());
+        writeString(out, pkg.getDescription());
+        writeString(out, pkg.getCommand());
+
+        filesBuf = new ByteArrayOutputStream();
+        filesOut = new DataOutputStream(filesBuf);
+
+        pkgFiles = pkg.getLoadedPackageFiles();
+        filesOut.writeInt(pkgFiles.length);
+
+        for (Descriptor.PackageFile pkgFile : pkgFiles) {
+            writeString(filesOut, pkgFile.getFile());
+            writeString(filesOut, pkgFile.getMd5Sum());
+            writeString(filesOut, pkgFile.getArchitecture());
+
+            pkgFileModes = pkgFile.getPackageFileModes();
+            filesOut.writeInt(pkgFileModes.length);
+
+            for (Descriptor.PackageFileMode pkgFileMode : pkgFileModes) {
+                writeString(filesOut, pkgFileMode.getFile());
+                writeString(filesOut, pkgFileMode.getMode());
+            }
+        }
+
+        filesOut.flush();
+        out.writeInt(filesBuf.size());
+        filesBuf.writeTo(out);
+    }
+
+    private static void readPackageFiles(DataInput in, Descriptor descriptor,
+                                         Descriptor.Package pkg) throws IOException {
+        Descriptor.PackageFile pkgFile;
+        Descriptor.PackageFileMode pkgFileMode;
+        int nbFiles, nbModes;
+
+        nbFiles = in.readInt();
+
+        for (int i = 0; i < nbFiles; i++) {
+            pkgFile = descriptor.new PackageFile();
+            pkgFile.setFile(readString(in));
+            pkgFile.setMd5sum(readString(in));
+            pkgFile.setArchitecture(readString(in));
+
+            nbModes = in.readInt();
+
+            for (int j = 0; j < nbModes; j++) {
+                pkgFileMode = descriptor.new PackageFileMode();
+                pkgFileMode.setFile(readString(in));
+                pkgFileMode.setMode(readString(in));
+                pkgFile.addPackageFileMode(pkgFileMode);
+            }
+
+            pkg.addPackageFile(pkgFile);
+        }
+    }
+
+    /**
+     * Reads the files of a package, written at 'offset' in the cache.
+     */
+    private void loadPackageFiles(Descriptor descriptor, Descriptor.Package pkg,
+                                  long offset, int length) throws IOException {
+        RandomAccessFile raf;
+        byte[] filesBuf;
+
+        raf = new RandomAccessFile(cacheFile, "r");
+
+        try {
+            // The cache may have been written again by another launcher since.
+            if (!isKeyValid(raf))
+                throw new IOException("Stale descriptor cache " + cacheFile);
+
+            filesBuf = new byte[length];
+            raf.seek(offset);
+            raf.readFully(filesBuf);
+        } finally {
+            raf.close();
+        }
+
+        readPackageFiles(new DataInputStream(new ByteArrayInputStream(filesBuf)), descriptor, pkg);
+    }
+
+    /**
+     * Reads the header of a package and skips its files, which are loaded from
+     * the cache when needed.
+     */
+    private Descriptor.Package readPackage(DataInputStream in, CountingInputStream counter,
+                                           final Descriptor descriptor) throws IOException {
+        final Descriptor.Package pkg;
+        final long offset;
+        final int length;
+
+        pkg = descriptor.new Package();
+        pkg.setId(readString(in));
+        pkg.setDescription(readString(in));
+        pkg.setCommand(readString(in));
+
+        length = in.readInt();
+        offset = counter.getCount();
+
+        for (int n = 0, skipped; n < length; n += skipped)
+            if ((skipped = in.skipBytes(length - n)) == 0)
+                throw new EOFException();
+
+        pkg.setLoader(new Descriptor.PackageLoader() {
+            @Override
+            public void loadPackageFiles(Descriptor.Package pkg) throws IOException {
+                DescriptorCache.this.loadPackageFiles(descriptor, pkg, offset, length);
+            }
+        });
+
+        return pkg;
+    }
+
+    /**
+     * Loads the descriptor from the cache.
+     *
+     * @return the cached descriptor, or null if there is no valid cache for the .apk.
+     */
+    public Descriptor load(ZipFile apkZip) {
+        CountingInputStream counter;
+        DataInputStream in;
+        Descriptor descriptor;
+
+        if (!cacheFile.exists())
+            return null;
+
+        try {
+            counter = new CountingInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+            in = new DataInputStream(counter);
+            try {
+                if (!isKeyValid(in))
+                    return null;
+
+                descriptor = new Descriptor(apkZip, null);
+
+                while (in.readBoolean())
+                    descriptor.addPackage(readPackage(in, counter, descriptor));
+
+                descriptor.setDefaultAppId(readString(in));
+
+                return descriptor;
+
+            } finally {
+                in.close();
+            }
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the cache one package at a time. The cache is written to a temporary
+     * file first so that a concurrent launcher never sees it half written.
+     */
+    public class Writer {
+
+        private final File tmpFile;
+
+        private DataOutputStream out;
+
+        /**
+         * Writes a package along with the files it holds at this time.
+         */
+        public void writePackage(Descriptor.Package pkg) throws IOException {
+            out.writeBoolean(true);
+            DescriptorCache.writePackage(out, pkg);
+        }
+
+        /**
+         * Ends the cache and puts it in place.
+         */
+        public void commit(String defaultAppId) throws IOException {
+            try {
+                out.writeBoolean(false);
+                writeString(out, defaultAppId);
+                out.close();
+                out = null;
+            } finally {
+                if (out != null)
+                    abort();
+            }
+
+            if (!tmpFile.renameTo(cacheFile)) {
+                tmpFile.delete();
+                throw new IOException("Couldn't write " + cacheFile);
+            }
+        }
+
+        /**
+         * Drops the cache being written.
+         */
+        public void abort() {
+            if (out != null) {
+                try {
+                    out.close();
+                } catch (IOException ex) {}
+                out = null;
+            }
+
+            tmpFile.delete();
+        }
+
+        private Writer() throws IOException {
+            tmpFile = new File(cacheFile + ".tmp");
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+
+            try {
+                writeKey(out);
+            } catch (IOException ex) {
+                abort();
+                throw ex;
+            }
+        }
+    }
+
+    /**
+     * Starts writing the cache.
+     */
+    public Writer openWriter() throws IOException {
+        return new Writer();
+    }
+
+    public DescriptorCache(File cacheFile, File apkFile, ZipEntry descEntry) {
+        this.cacheFile = cacheFile;
+        this.apkFile = apkFile;
+        this.descEntry = descEntry;
+    }
+}
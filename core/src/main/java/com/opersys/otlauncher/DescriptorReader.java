@@ -0,0 +1,372 @@
+/*
+ * Copyright (C) 2015, Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher;
+
+import org.json.JSONException;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Date: 09/04/15
+ * Time: 1:02 PM
+ *
+ * The descriptor is read as a stream. getDescriptor() reads each package in
+ * full, so that a malformed package is reported there, but only keeps its header
+ * (id, description, command) and its position in the descriptor. Its files and
+ * modes are dropped, after being written to the cache if there is one, and read
+ * again from that position when the package is first used.
+ */
+public class DescriptorReader {
+
+    private byte[] jsonBytes;
+
+    private ZipFile apkZip;
+
+    private ZipEntry descEntry;
+
+    private Descriptor descriptor;
+
+    private DescriptorCache descriptorCache;
+
+    private DescriptorCache.Writer cacheWriter;
+
+    private static JSONException notFound(String key) {
+        return new JSONException("JSONObject[\"" + key + "\"] not found.");
+    }
+
+    /**
+     * Opens a new stream over the descriptor text.
+     */
+    private InputStream openDescriptor() throws IOException {
+        if (jsonBytes != null)
+            return new ByteArrayInputStream(jsonBytes);
+        else if (apkZip != null)
+            return apkZip.getInputStream(descEntry);
+        else
+            throw new IOException("Descriptor reader closed");
+    }
+
+    /**
+     *
+     * @throws IOException
+     */
+    private void readPackagesFileMode(Descriptor descriptor,
+                                      Descriptor.PackageFile pkgFile,
+                                      JsonScanner scanner)
+            throws IOException, JSONException {
+        Descriptor.PackageFileMode pkgFileMode;
+
+        scanner.beginObject();
+
+        while (scanner.hasNext()) {
+            pkgFileMode = descriptor.new PackageFileMode();
+            pkgFileMode.setFile(scanner.nextName());
+            pkgFileMode.setMode(scanner.nextString());
+
+            pkgFile.addPackageFileMode(pkgFileMode);
+        }
+
+        scanner.endObject();
+    }
+
+    /**
+     *
+     *
+     * @throws IOException
+     */
+    private void readPackageFiles(Descriptor descriptor,
+                                  Descriptor.Package pkg,
+                                  JsonScanner scanner) throws IOException, JSONException {
+        Descriptor.PackageFile pkgFile;
+        String key;
+        boolean hasModes;
+
+        scanner.beginArray();
+
+        while (scanner.hasNext()) {
+            pkgFile = descriptor.new PackageFile();
+            hasModes = false;
+
+            scanner.beginObject();
+
+            while (scanner.hasNext()) {
+                key = scanner.nextName();
+
+                if (key.equals("file"))
+                    pkgFile.setFile(scanner.nextString());
+                else if (key.equals("md5sum"))
+                    pkgFile.setMd5sum(scanner.nextString());
+                else if (key.equals("arch"))
+                    pkgFile.setArchitecture(scanner.nextString());
+                else if (key.equals("modes")) {
+                    readPackagesFileMode(descriptor, pkgFile, scanner);
+                    hasModes = true;
+                }
+                else
+                    scanner.skipValue();
+            }
+
+            scanner.endObject();
+
+            if (pkgFile.getFile() == null) throw notFound("file");
+            if (pkgFile.getMd5Sum() == null) throw notFound("md5sum");
+            if (pkgFile.getArchitecture() == null) throw notFound("arch");
+            if (!hasModes) throw notFound("modes");
+
+            pkg.addPackageFile(pkgFile);
+        }
+
+        scanner.endArray();
+    }
+
+    /**
+     * Reads the "files" member of the package object found at 'position' in the
+     * descriptor.
+     */
+    private void loadPackageFiles(Descriptor descriptor, Descriptor.Package pkg, long position)
+            throws IOException, JSONException {
+        InputStream descStream;
+        JsonScanner scanner;
+
+        descStream = openDescriptor();
+
+        try {
+            scanner = new JsonScanner(descStream);
+            scanner.skipTo(position);
+            scanner.beginObject();
+
+            while (scanner.hasNext()) {
+                if (scanner.nextName().equals("files"))
+                    readPackageFiles(descriptor, pkg, scanner);
+                else
+                    scanner.skipValue();
+            }
+
+            scanner.endObject();
+        } finally {
+            descStream.close();
+        }
+    }
+
+    /**
+     * Writes a package to the cache being written. The cache is dropped if that
+     * fails.
+     */
+    private void cachePackage(Descriptor.Package pkg) {
+        try {
+            cacheWriter.writePackage(pkg);
+        } catch (IOException ex) {
+            // We'll just parse the descriptor again next time.
+            cacheWriter.abort();
+            cacheWriter = null;
+        }
+    }
+
+    /**
+     * Reads a package. Only its header is kept, its files will be loaded from the
+     * same position in the descriptor when needed.
+     */
+    private Descriptor.Package readPackageHeader(final Descriptor descriptor, JsonScanner scanner)
+            throws IOException, JSONException {
+        final Descriptor.Package pkg;
+        final long position;
+        String key;
+        boolean hasFiles = false;
+
+        scanner.peek();
+        position = scanner.getPosition();
+        pkg = descriptor.new Package();
+
+        scanner.beginObject();
+
+        while (scanner.hasNext()) {
+            key = scanner.nextName();
+
+            if (key.equals("id"))
+                pkg.setId(scanner.nextString());
+            else if (key.equals("desc"))
+                pkg.setDescription(scanner.nextString());
+            else if (key.equals("cmd"))
+                pkg.setCommand(scanner.nextString());
+            else if (key.equals("files")) {
+                readPackageFiles(descriptor, pkg, scanner);
+                hasFiles = true;
+            }
+            else
+                scanner.skipValue();
+        }
+
+        scanner.endObject();
+
+        if (pkg.getId() == null) throw notFound("id");
+        if (pkg.getDescription() == null) throw notFound("desc");
+        if (pkg.getCommand() == null) throw notFound("cmd");
+        if (!hasFiles) throw notFound("files");
+
+        if (cacheWriter != null)
+            cachePackage(pkg);
+
+        pkg.setLoader(new Descriptor.PackageLoader() {
+            @Override
+            public void loadPackageFiles(Descriptor.Package pkg) throws IOException, JSONException {
+                DescriptorReader.this.loadPackageFiles(descriptor, pkg, position);
+            }
+        });
+
+        return pkg;
+    }
+
+    /**
+     *
+     * @throws IOException
+     */
+    private void readPackages(Descriptor descriptor, JsonScanner scanner)
+            throws IOException, JSONException {
+        scanner.beginArray();
+
+        while (scanner.hasNext())
+            descriptor.addPackage(readPackageHeader(descriptor, scanner));
+
+        scanner.endArray();
+    }
+
+    /**
+     * Keeps a binary copy of the descriptor of the .apk file in 'cacheFile'. When
+     * the copy is up to date, getDescriptor() doesn't parse the JSON descriptor.
+     */
+    public void setCacheFile(File cacheFile) {
+        if (apkZip != null)
+            descriptorCache = new DescriptorCache(cacheFile, new File(apkZip.getName()), descEntry);
+    }
+
+    public Descriptor getDescriptor() throws IOException, JSONException {
+        InputStream descStream;
+        JsonScanner scanner;
+        String key, version = null;
+        boolean hasPackages = false;
+
+        if (descriptor != null)
+            return descriptor;
+
+        if (descriptorCache != null) {
+            descriptor = descriptorCache.load(apkZip);
+
+            if (descriptor != null)
+                return descriptor;
+        }
+
+        descriptor = new Descriptor(apkZip, null);
+        descStream = openDescriptor();
+
+        if (descriptorCache != null) {
+            try {
+                cacheWriter = descriptorCache.openWriter();
+            } catch (IOException ex) {
+                // Read the descriptor without the cache.
+            }
+        }
+
+        try {
+            scanner = new JsonScanner(descStream);
+            scanner.beginObject();
+
+            while (scanner.hasNext()) {
+                key = scanner.nextName();
+
+                if (key.equals("version"))
+                    version = scanner.nextString();
+                else if (key.equals("default"))
+                    descriptor.setDefaultAppId(scanner.nextString());
+                else if (key.equals("packages")) {
+                    readPackages(descriptor, scanner);
+                    hasPackages = true;
+                }
+                else
+                    scanner.skipValue();
+            }
+
+            scanner.endObject();
+
+            if (version == null)
+                throw notFound("version");
+            else if (!version.equals("1.0"))
+                throw new JSONException("Unknown version: " + version);
+            else if (!hasPackages)
+                throw notFound("packages");
+
+            if (cacheWriter != null) {
+                try {
+                    cacheWriter.commit(descriptor.getDefaultAppId());
+                } catch (IOException ex) {
+                    // We'll just parse the descriptor again next time.
+                } finally {
+                    cacheWriter = null;
+                }
+            }
+
+        } catch (JSONException ex) {
+            descriptor = null;
+            throw ex;
+
+        } finally {
+            descStream.close();
+
+            // Only left when the descriptor couldn't be read.
+            if (cacheWriter != null) {
+                cacheWriter.abort();
+                cacheWriter = null;
+            }
+        }
+
+        return descriptor;
+    }
+
+    public void close()  {
+        if (apkZip != null) {
+            try {
+                apkZip.close();
+            } catch (IOException ex) {}
+            apkZip = null;
+        }
+    }
+
+    public DescriptorReader(String json) throws IOException {
+        jsonBytes = json.getBytes("UTF-8");
+    }
+
+    public DescriptorReader(File apkFile) throws IOException {
+        ZipFile apkZip;
+        ZipEntry descEntry;
+
+        apkZip = new ZipFile(apkFile.toString());
+        descEntry = apkZip.getEntry("assets/otlauncher.json");
+
+        if (descEntry == null) {
+            apkZip.close();
+            throw new IOException("No descriptor");
+        }
+
+        // The descriptor itself is only read if it is not found in the cache.
+        this.descEntry = descEntry;
+        this.apkZip = apkZip;
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.ZipEntry;
+
+/**
+ * Extracts the entries of a {@link NestedArchive} on a pool of worker threads.
+ *
+ * Directories are created up front on the calling thread, then the file entries
+ * are inflated and written in parallel, largest first so that a big binary does
+ * not end up being the last thing running on a single core.
+ */
+public class Extractor {
+
+    private final int nbThreads;
+
+    private int fileCount;
+
+    private long byteCount;
+
+    private long elapsedNanos;
+
+    private Map<String, String> fileModes = Collections.emptyMap();
+
+    private final Set<String> modesApplied = Collections.synchronizedSet(new HashSet<String>());
+
+    private final ThreadLocal<byte[]> copyBuffer = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[Utils.COPY_BUFFER_SIZE];
+        }
+    };
+
+    private static final ThreadFactory workerFactory = new ThreadFactory() {
+        private int n = 0;
+
+        @Override
+        public synchronized Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "otlauncher-extract-" + (n++));
+            t.setDaemon(true);
+            return t;
+        }
+    };
+
+    private long extractEntry(NestedArchive archive, ZipEntry entry, File targetFile)
+            throws IOException {
+        long n, startTime;
+        String mode;
+
+        startTime = System.nanoTime();
+        n = archive.extractTo(entry, targetFile, copyBuffer.get());
+        LaunchTrace.get().record("extract", entry.getName(), startTime);
+
+        // Set the mode while we are at it, if that can be done without forking.
+        mode = fileModes.get(entry.getName());
+        if (mode != null && Utils.chmodInProcess(mode, targetFile.toString()))
+            modesApplied.add(entry.getName());
+
+        return n;
+    }
+
+    private static void makeDirectory(File dir) {
+        if (!dir.exists() && !dir.mkdirs() && !dir.isDirectory()) {
+            String s = String.format("Couldn't create directory %s.", dir.getAbsolutePath());
+            throw new IllegalStateException(s);
+        }
+    }
+
+    /**
+     * Extracts all the entries of the archive below 'targetDir'.
+     */
+    public void extract(NestedArchive archive, File targetDir) throws IOException {
+        extract(archive, archive.getEntries(), targetDir);
+    }
+
+    /**
+     * Extracts a subset of the entries of the archive below 'targetDir'.
+     */
+    public void extract(final NestedArchive archive, Collection<ZipEntry> entries, File targetDir)
+            throws IOException {
+        List<ZipEntry> fileEntries;
+        List<Future<Long>> results;
+        Set<File> dirs;
+        ExecutorService workers;
+        long startTime;
+
+        startTime = System.nanoTime();
+        fileEntries = new ArrayList<ZipEntry>(entries.size());
+        dirs = new HashSet<File>();
+        dirs.add(targetDir);
+
+        for (ZipEntry entry : entries) {
+            File targetFile = new File(targetDir, entry.getName());
+
+            if (entry.isDirectory())
+                dirs.add(targetFile);
+            else {
+                dirs.add(targetFile.getParentFile());
+                fileEntries.add(entry);
+            }
+        }
+
+        // Creating the tree first means the workers never race on mkdirs().
+        for (File dir : dirs)
+            makeDirectory(dir);
+
+        Collections.sort(fileEntries, new Comparator<ZipEntry>() {
+            @Override
+            public int compare(ZipEntry e1, ZipEntry e2) {
+                return Long.valueOf(e2.getSize()).compareTo(e1.getSize());
+            }
+        });
+
+        results = new ArrayList<Future<Long>>(fileEntries.size());
+        workers = Executors.newFixedThreadPool(nbThreads, workerFactory);
+
+        try {
+            for (final ZipEntry entry : fileEntries) {
+                final File targetFile = new File(targetDir, entry.getName());
+
+                results.add(workers.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws IOException {
+                        return extractEntry(archive, entry, targetFile);
+                    }
+                }));
+            }
+
+            for (Future<Long> result : results) {
+                byteCount += result.get();
+                fileCount++;
+            }
+
+        } catch (InterruptedException ex) {
+            throw new IOException("Extraction interrupted");
+
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException)
+                throw (IOException) ex.getCause();
+            else if (ex.getCause() instanceof RuntimeException)
+                throw (RuntimeException) ex.getCause();
+            else
+                throw new IOException("Extraction failed: " + ex.getCause());
+
+        } finally {
+            workers.shutdownNow();
+            elapsedNanos += System.nanoTime() - startTime;
+        }
+    }
+
+    /**
+     * Sets the file modes, indexed by entry name, to apply to the files as they are
+     * written.
+     */
+    public void setFileModes(Map<String, String> fileModes) {
+        this.fileModes = fileModes;
+    }
+
+    /**
+     * Returns true if the mode of the entry was already applied by the extractor.
+     */
+    public boolean isModeApplied(String name) {
+        return modesApplied.contains(name);
+    }
+
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    public long getByteCount() {
+        return byteCount;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Returns a human readable summary of the extraction throughput.
+     */
+    public String getThroughput() {
+        double secs = Math.max(elapsedNanos, 1) / 1e9;
+        double mbytes = byteCount / (1024.0 * 1024.0);
+
+        return String.format("%d files (%.1f MB) in %d ms, %.0f files/s, %.1f MB/s",
+                fileCount, mbytes, elapsedNanos / 1000000,
+                fileCount / secs, mbytes / secs);
+    }
+
+    public Extractor(int nbThreads) {
+        this.nbThreads = Math.max(nbThreads, 1);
+    }
+
+    public Extractor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher;
+
+import org.json.JSONException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Pull parser reading JSON straight from a stream of UTF-8 bytes.
+ *
+ * Only the values the caller asks for are turned into objects, anything else can
+ * be skipped with skipValue(). The scanner keeps track of its position in the
+ * stream so that a value can be found again later on without keeping the text
+ * around.
+ */
+public class JsonScanner {
+
+    private static final int MAX_DEPTH = 64;
+
+    private final InputStream in;
+
+    private final byte[] buf = new byte[8192];
+
+    private int bufPos, bufLen;
+
+    private long bufStart;
+
+    private final boolean[] firstInScope = new boolean[MAX_DEPTH];
+
+    private int depth;
+
+    private final ByteArrayOutputStream strBytes = new ByteArrayOutputStream();
+
+    private JSONException syntaxError(String msg) {
+        return new JSONException(msg + " at " + getPosition());
+    }
+
+    private boolean fill() throws IOException {
+        int n;
+
+        bufStart += bufLen;
+        bufPos = 0;
+        bufLen = 0;
+
+        while ((n = in.read(buf)) == 0);
+
+        if (n < 0)
+            return false;
+
+        bufLen = n;
+        return true;
+    }
+
+    private int read() throws IOException {
+        if (bufPos == bufLen && !fill())
+            return -1;
+
+        return buf[bufPos++] & 0xff;
+    }
+
+    private int peekRaw() throws IOException {
+        if (bufPos == bufLen && !fill())
+            return -1;
+
+        return buf[bufPos] & 0xff;
+    }
+
+    /**
+     * Returns the next character that is not blank, without consuming it.
+     */
+    private int peekChar() throws IOException {
+        int c;
+
+        while ((c = peekRaw()) == ' ' || c == '\t' || c == '\n' || c == '\r')
+            bufPos++;
+
+        return c;
+    }
+
+    private void expect(char expected) throws IOException, JSONException {
+        if (peekChar() != expected)
+            throw syntaxError("Expected '" + expected + "'");
+
+        bufPos++;
+    }
+
+    private void flushString(StringBuilder sb) throws IOException {
+        if (strBytes.size() > 0) {
+            sb.append(strBytes.toString("UTF-8"));
+            strBytes.reset();
+        }
+    }
+
+    private String readString() throws IOException, JSONException {
+        StringBuilder sb;
+        int c;
+
+        expect('"');
+        sb = new StringBuilder();
+        strBytes.reset();
+
+        while ((c = read()) != '"') {
+            if (c == -1)
+                throw syntaxError("Unterminated string");
+
+            if (c != '\\') {
+                strBytes.write(c);
+                continue;
+            }
+
+            flushString(sb);
+
+            switch (c = read()) {
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                    c = 0;
+                    for (int i = 0; i < 4; i++)
+                        c = (c << 4) | hexValue(read());
+                    sb.append((char) c);
+                    break;
+                case '"':
+                case '\\':
+                case '/':
+                    sb.append((char) c);
+                    break;
+                default:
+                    throw syntaxError("Invalid escape sequence");
+            }
+        }
+
+        flushString(sb);
+        return sb.toString();
+    }
+
+    private int hexValue(int c) throws JSONException {
+        if (c >= '0' && c <= '9') return c - '0';
+        if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+        if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+
+        throw syntaxError("Invalid unicode escape");
+    }
+
+    private void skipString() throws IOException, JSONException {
+        int c;
+
+        expect('"');
+
+        while ((c = read()) != '"') {
+            if (c == -1)
+                throw syntaxError("Unterminated string");
+            if (c == '\\')
+                read();
+        }
+    }
+
+    private String readLiteral() throws IOException, JSONException {
+        StringBuilder sb;
+        int c;
+
+        sb = new StringBuilder();
+        peekChar();
+
+        while ((c = peekRaw()) != -1
+                && (Character.isLetterOrDigit(c) || c == '-' || c == '+' || c == '.')) {
+            sb.append((char) c);
+            bufPos++;
+        }
+
+        if (sb.length() == 0)
+            throw syntaxError("Unexpected character");
+
+        return sb.toString();
+    }
+
+    /**
+     * Returns the position, in bytes from the start of the stream, of the next
+     * value.
+     */
+    public long getPosition() {
+        return bufStart + bufPos;
+    }
+
+    /**
+     * Discards everything up to 'position' in the stream.
+     */
+    public void skipTo(long position) throws IOException {
+        while (bufStart + bufLen < position)
+            if (!fill())
+                throw new IOException("Unexpected end of stream");
+
+        bufPos = (int) (position - bufStart);
+    }
+
+    /**
+     * Returns the first character of the next value, without consuming it.
+     */
+    public int peek() throws IOException {
+        return peekChar();
+    }
+
+    public void beginObject() throws IOException, JSONException {
+        expect('{');
+        enterScope();
+    }
+
+    public void endObject() throws IOException, JSONException {
+        expect('}');
+        depth--;
+    }
+
+    public void beginArray() throws IOException, JSONException {
+        expect('[');
+        enterScope();
+    }
+
+    public void endArray() throws IOException, JSONException {
+        expect(']');
+        depth--;
+    }
+
+    private void enterScope() throws JSONException {
+        if (depth == MAX_DEPTH - 1)
+            throw syntaxError("Nesting too deep");
+
+        firstInScope[++depth] = true;
+    }
+
+    /**
+     * Returns true if the current object or array has another member, in which
+     * case the separator before it is consumed. Call it once per member.
+     */
+    public boolean hasNext() throws IOException, JSONException {
+        int c = peekChar();
+
+        if (c == '}' || c == ']')
+            return false;
+
+        if (!firstInScope[depth]) {
+            if (c != ',')
+                throw syntaxError("Expected ','");
+            bufPos++;
+        }
+
+        firstInScope[depth] = false;
+        return true;
+    }
+
+    public String nextName() throws IOException, JSONException {
+        String name = readString();
+
+        expect(':');
+        return name;
+    }
+
+    /**
+     * Returns the next value as a string. Numbers and literals are returned as
+     * they are written.
+     */
+    public String nextString() throws IOException, JSONException {
+        int c = peekChar();
+
+        if (c == '"')
+            return readString();
+        else if (c == '{' || c == '[')
+            throw syntaxError("Expected a string");
+        else
+            return readLiteral();
+    }
+
+    /**
+     * Skips the next value, whatever it is, without building any object.
+     */
+    public void skipValue() throws IOException, JSONException {
+        int c, nesting;
+
+        c = peekChar();
+
+        if (c == '"') {
+            skipString();
+            return;
+        }
+
+        if (c != '{' && c != '[') {
+            readLiteral();
+            return;
+        }
+
+        nesting = 0;
+
+        do {
+            c = peekChar();
+
+            if (c == -1)
+                throw syntaxError("Unexpected end of input");
+            else if (c == '"')
+                skipString();
+            else {
+                if (c == '{' || c == '[')
+                    nesting++;
+                else if (c == '}' || c == ']')
+                    nesting--;
+                bufPos++;
+            }
+        } while (nesting > 0);
+    }
+
+    public JsonScanner(InputStream in) {
+        this.in = in;
+    }
+}
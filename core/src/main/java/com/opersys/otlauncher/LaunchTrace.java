@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Timings of the phases of a launch, and of their steps, enabled by -t.
+ *
+ * Times come from System.nanoTime() and are relative to the creation of the
+ * trace. Events can be recorded from any thread.
+ */
+public class LaunchTrace {
+
+    /**
+     * Name of the trace file, written in the extraction path.
+     */
+    public static final String TRACE_FILE = "otlauncher.trace";
+
+    /**
+     * The phases of the launch. The other categories are steps of the phases.
+     */
+    public static final String PHASE = "phase";
+
+    private static class Event {
+        final String category;
+        final String name;
+        final String thread;
+        final long start;
+        final long end;
+
+        Event(String category, String name, long start, long end) {
+            this.category = category;
+            this.name = name;
+            this.thread = Thread.currentThread().getName();
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Totals of the steps of a category.
+     */
+    private static class Totals {
+        int count;
+        long total;
+        long max;
+        String slowest;
+    }
+
+    private static final LaunchTrace instance = new LaunchTrace();
+
+    public static LaunchTrace get() {
+        return instance;
+    }
+
+    private final long origin = System.nanoTime();
+
+    private final List<Event> events = new ArrayList<Event>();
+
+    private final List<String> notes = new ArrayList<String>();
+
+    private volatile boolean enabled;
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Records an event which started at a System.nanoTime() value and ends now.
+     * Does nothing if the trace is not enabled.
+     */
+    public void record(String category, String name, long startNanos) {
+        if (enabled)
+            record(category, name, startNanos, System.nanoTime());
+    }
+
+    public void record(String category, String name, long startNanos, long endNanos) {
+        if (!enabled)
+            return;
+
+        synchronized (events) {
+            events.add(new Event(category, name, startNanos, endNanos));
+        }
+    }
+
+    public void recordPhase(String name, long startNanos) {
+        record(PHASE, name, startNanos);
+    }
+
+    /**
+     * Adds a line to the summary, and as a comment to the trace file, for what the
+     * events alone don't tell. Does nothing if the trace is not enabled.
+     */
+    public void note(String note) {
+        if (!enabled)
+            return;
+
+        synchronized (events) {
+            notes.add(note);
+        }
+    }
+
+    /**
+     * Records the end of a phase of the launch, in the trace if it is enabled and
+     * in the launch metrics.
+     */
+    public static void endPhase(String phase, long startNanos) {
+        Metrics.get().histogram("otlauncher_launch_phase_duration_seconds",
+                "Time taken by the phases of a launch.", "phase", phase).observeSince(startNanos);
+        instance.recordPhase(phase, startNanos);
+    }
+
+    private List<Event> getEvents() {
+        synchronized (events) {
+            return new ArrayList<Event>(events);
+        }
+    }
+
+    private List<String> getNotes() {
+        synchronized (events) {
+            return new ArrayList<String>(notes);
+        }
+    }
+
+    /**
+     * Writes the events, one per line, as tab separated values:
+     *
+     *   start_us  duration_us  thread  category  name
+     */
+    public void writeTo(File file) throws IOException {
+        Writer out;
+
+        out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+
+        try {
+            out.write("# otlauncher trace 1\n");
+            out.write("# start_us\tduration_us\tthread\tcategory\tname\n");
+
+            for (String note : getNotes())
+                out.write("# " + note.replace('\n', ' ') + "\n");
+
+            for (Event event : getEvents())
+                out.write((event.start - origin) / 1000 + "\t" + (event.end - event.start) / 1000
+                        + "\t" + event.thread + "\t" + event.category
+                        + "\t" + event.name.replace('\t', ' ').replace('\n', ' ') + "\n");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Prints the phases in the order they started and the notes, then the totals
+     * of the steps of each category.
+     */
+    public void printSummary(PrintStream out) {
+        Map<String, Totals> steps;
+        List<Event> snapshot;
+        Totals totals;
+        long end;
+
+        // Phases are recorded when they end, the nested ones first.
+        snapshot = getEvents();
+        Collections.sort(snapshot, new Comparator<Event>() {
+            @Override
+            public int compare(Event e1, Event e2) {
+                return Long.valueOf(e1.start).compareTo(e2.start);
+            }
+        });
+
+        steps = new LinkedHashMap<String, Totals>();
+        end = origin;
+
+        out.println(String.format("%-24s %10s %10s", "Phase", "Start ms", "Time ms"));
+
+        for (Event event : snapshot) {
+            end = Math.max(end, event.end);
+
+            if (PHASE.equals(event.category)) {
+                out.println(String.format("%-24s %10.1f %10.1f", event.name,
+                        (event.start - origin) / 1e6, (event.end - event.start) / 1e6));
+                continue;
+            }
+
+            totals = steps.get(event.category);
+            if (totals == null) {
+                totals = new Totals();
+                steps.put(event.category, totals);
+            }
+
+            totals.count++;
+            totals.total += event.end - event.start;
+
+            if (event.end - event.start >= totals.max) {
+                totals.max = event.end - event.start;
+                totals.slowest = event.name;
+            }
+        }
+
+        out.println(String.format("%-24s %10s %10.1f", "Total", "", (end - origin) / 1e6));
+
+        for (String note : getNotes())
+            out.println(note);
+
+        if (steps.isEmpty())
+            return;
+
+        out.println();
+        out.println(String.format("%-24s %8s %10s %10s  %s", "Step", "Count", "Total ms",
+                "Max ms", "Slowest"));
+
+        for (Map.Entry<String, Totals> entry : steps.entrySet()) {
+            totals = entry.getValue();
+            out.println(String.format("%-24s %8d %10.1f %10.1f  %s", entry.getKey(), totals.count,
+                    totals.total / 1e6, totals.max / 1e6, totals.slowest));
+        }
+    }
+}
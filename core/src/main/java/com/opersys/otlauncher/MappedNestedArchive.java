@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Package archive stored without compression in the .apk, read in place through
+ * a memory mapping of the .apk file.
+ *
+ * The central directory of the archive is read straight from the mapping. Its
+ * stored entries are copied to their target file with FileChannel.transferTo()
+ * and its deflated entries are inflated from the mapping, so nothing but the
+ * inflated data goes through the Java heap.
+ */
+public class MappedNestedArchive extends NestedArchive {
+
+    /**
+     * InputStream reading from a ByteBuffer.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buf;
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!buf.hasRemaining())
+                return -1;
+
+            len = Math.min(len, buf.remaining());
+            buf.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
+
+        public ByteBufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+    }
+
+    /**
+     * Inflates raw deflate data. Like the stream of ZipFile, this feeds a dummy
+     * byte to the inflater at the end of the input, which zlib may need to finish.
+     */
+    private static class EntryInflaterStream extends InflaterInputStream {
+
+        private boolean eof;
+
+        @Override
+        protected void fill() throws IOException {
+            if (eof)
+                throw new EOFException("Unexpected end of entry data");
+
+            len = in.read(buf, 0, buf.length);
+
+            if (len == -1) {
+                buf[0] = 0;
+                len = 1;
+                eof = true;
+            }
+
+            inf.setInput(buf, 0, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            inf.end();
+        }
+
+        public EntryInflaterStream(InputStream in) {
+            super(in, new Inflater(true), Utils.COPY_BUFFER_SIZE);
+        }
+    }
+
+    private RandomAccessFile apkRaf;
+
+    private FileChannel apkChannel;
+
+    private final long archiveOffset;
+
+    private final long archiveSize;
+
+    private final ZipDirectory zipDirectory;
+
+    private final List<ZipEntry> entries;
+
+    @Override
+    public List<ZipEntry> getEntries() {
+        return entries;
+    }
+
+    @Override
+    public ZipEntry getEntry(String name) {
+        return zipDirectory.getEntry(name);
+    }
+
+    @Override
+    public InputStream getInputStream(ZipEntry entry) throws IOException {
+        InputStream dataStream;
+
+        dataStream = new ByteBufferInputStream(zipDirectory.getData((ZipDirectory.Entry) entry));
+
+        if (entry.getMethod() == ZipEntry.STORED)
+            return dataStream;
+        else
+            return new EntryInflaterStream(dataStream);
+    }
+
+    @Override
+    public long extractTo(ZipEntry entry, File targetFile, byte[] buf) throws IOException {
+        FileOutputStream targetStream;
+        FileChannel targetChannel;
+        long dataOffset, offset, count, n, copied;
+
+        if (entry.getMethod() != ZipEntry.STORED)
+            return super.extractTo(entry, targetFile, buf);
+
+        dataOffset = zipDirectory.getDataOffset((ZipDirectory.Entry) entry);
+        count = entry.getSize();
+
+        // As in ZipDirectory.getData(), or we would copy what follows the
+        // archive in the .apk.
+        if (count < 0 || dataOffset + count > archiveSize)
+            throw new IOException("Truncated data for " + entry.getName());
+
+        offset = archiveOffset + dataOffset;
+        targetStream = new FileOutputStream(targetFile);
+
+        try {
+            targetChannel = targetStream.getChannel();
+
+            // transferTo() is allowed to copy less than what was asked for, but
+            // copies nothing at the end of the file.
+            for (n = 0; n < count; n += copied) {
+                copied = apkChannel.transferTo(offset + n, count - n, targetChannel);
+
+                if (copied == 0)
+                    throw new IOException("Truncated entry " + entry.getName());
+            }
+
+            return n;
+        } finally {
+            targetStream.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (apkRaf != null) {
+            try {
+                apkRaf.close();
+            } catch (IOException ex) {}
+            apkRaf = null;
+            apkChannel = null;
+        }
+    }
+
+    private MappedNestedArchive(RandomAccessFile apkRaf, long archiveOffset, ByteBuffer archiveBuf)
+            throws IOException {
+        this.apkRaf = apkRaf;
+        this.apkChannel = apkRaf.getChannel();
+        this.archiveOffset = archiveOffset;
+        this.archiveSize = archiveBuf.remaining();
+        this.zipDirectory = new ZipDirectory(archiveBuf);
+        this.entries = zipDirectory.getEntries();
+    }
+
+    /**
+     * Opens the archive stored, uncompressed, as 'pkgEntry' in the .apk file.
+     *
+     * The MD5 sum of the archive is computed over the mapping, which also pages in
+     * the data the extraction is about to read.
+     */
+    public static MappedNestedArchive open(File apkFile, ZipEntry pkgEntry, String md5sum)
+            throws IOException {
+        RandomAccessFile apkRaf;
+        MappedByteBuffer apkBuf;
+        ZipDirectory apkDirectory;
+        ZipDirectory.Entry apkEntry;
+        ByteBuffer archiveBuf;
+        MessageDigest md5;
+        long archiveOffset;
+
+        apkRaf = new RandomAccessFile(apkFile, "r");
+
+        try {
+            if (apkRaf.length() > Integer.MAX_VALUE)
+                throw new ZipDirectory.UnsupportedException("File too large to be mapped");
+
+            apkBuf = apkRaf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, apkRaf.length());
+            apkDirectory = new ZipDirectory(apkBuf);
+            apkEntry = apkDirectory.getEntry(pkgEntry.getName());
+
+            if (apkEntry == null || apkEntry.getMethod() != ZipEntry.STORED)
+                throw new ZipDirectory.UnsupportedException("No stored entry " + pkgEntry.getName());
+
+            archiveOffset = apkDirectory.getDataOffset(apkEntry);
+            archiveBuf = apkDirectory.getData(apkEntry);
+
+            if (isMd5Sum(md5sum)) {
+                try {
+                    md5 = MessageDigest.getInstance("MD5");
+                    md5.update(archiveBuf.duplicate());
+                    checkMd5Sum(pkgEntry, md5sum, md5.digest());
+                } catch (NoSuchAlgorithmException ex) {}
+            }
+
+            return new MappedNestedArchive(apkRaf, archiveOffset, archiveBuf);
+
+        } catch (IOException ex) {
+            apkRaf.close();
+            throw ex;
+
+        } catch (RuntimeException ex) {
+            apkRaf.close();
+            throw ex;
+        }
+    }
+}
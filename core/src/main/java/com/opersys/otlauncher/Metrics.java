@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Registry of counters and latency histograms, written in the Prometheus text
+ * format.
+ *
+ * Looking up a metric goes through a map, so the code that records on a hot path
+ * keeps the metric in a field. Recording is then a few atomic increments.
+ */
+public class Metrics {
+
+    /**
+     * A value that only goes up.
+     */
+    public static class Counter {
+        private final AtomicLong value = new AtomicLong();
+
+        public void inc() {
+            value.incrementAndGet();
+        }
+
+        public void add(long n) {
+            value.addAndGet(n);
+        }
+
+        public long get() {
+            return value.get();
+        }
+    }
+
+    /**
+     * Counts durations in fixed buckets, in microseconds.
+     */
+    public static class Histogram {
+
+        /**
+         * Upper bounds of the buckets, from 100 us to 10 s. The last bucket has no bound.
+         */
+        static final long[] BUCKETS_US = {
+                100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000,
+                100000, 250000, 500000, 1000000, 2500000, 5000000, 10000000
+        };
+
+        /**
+         * The bounds in seconds, as they are written.
+         */
+        private static final String[] BUCKET_LABELS = new String[BUCKETS_US.length];
+
+        static {
+            for (int i = 0; i < BUCKETS_US.length; i++)
+                BUCKET_LABELS[i] = seconds(BUCKETS_US[i]);
+        }
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS_US.length + 1);
+
+        private final AtomicLong sumUs = new AtomicLong();
+
+        public void observe(long us) {
+            int i = 0;
+
+            while (i < BUCKETS_US.length && us > BUCKETS_US[i])
+                i++;
+
+            counts.incrementAndGet(i);
+            sumUs.addAndGet(us);
+        }
+
+        /**
+         * Records the time elapsed since a System.nanoTime() value.
+         */
+        public void observeSince(long startNanos) {
+            observe((System.nanoTime() - startNanos) / 1000);
+        }
+
+        public long getCount() {
+            long count = 0;
+
+            for (int i = 0; i < counts.length(); i++)
+                count += counts.get(i);
+
+            return count;
+        }
+    }
+
+    private static class Series {
+        final String name;
+        final String labels;
+        final Object metric;
+
+        Series(String name, String labels, Object metric) {
+            this.name = name;
+            this.labels = labels;
+            this.metric = metric;
+        }
+    }
+
+    private static final Metrics instance = new Metrics();
+
+    /**
+     * Returns the registry of the process.
+     */
+    public static Metrics get() {
+        return instance;
+    }
+
+    private final ConcurrentHashMap<String, Series> series = new ConcurrentHashMap<String, Series>();
+
+    private final ConcurrentHashMap<String, String> help = new ConcurrentHashMap<String, String>();
+
+    public Counter counter(String name, String help) {
+        return counter(name, help, null, null);
+    }
+
+    /**
+     * Returns the counter with a name and a label, creating it if needed.
+     */
+    public Counter counter(String name, String help, String labelName, String labelValue) {
+        return (Counter) register(name, help, labelName, labelValue, new Counter());
+    }
+
+    public Histogram histogram(String name, String help) {
+        return histogram(name, help, null, null);
+    }
+
+    /**
+     * Returns the histogram with a name and a label, creating it if needed. The
+     * name is expected to end with _seconds.
+     */
+    public Histogram histogram(String name, String help, String labelName, String labelValue) {
+        return (Histogram) register(name, help, labelName, labelValue, new Histogram());
+    }
+
+    private Object register(String name, String helpText, String labelName, String labelValue,
+                            Object metric) {
+        Series created, existing;
+        String labels;
+
+        labels = labelName != null ? labelName + "=\"" + escape(labelValue) + "\"" : "";
+
+        // '{' sorts after the characters of the names, so the series of a name
+        // stay together in write().
+        created = new Series(name, labels, metric);
+        existing = series.putIfAbsent(name + "{" + labels, created);
+
+        if (existing == null) {
+            help.putIfAbsent(name, helpText);
+            existing = created;
+        }
+
+        if (existing.metric.getClass() != metric.getClass())
+            throw new IllegalArgumentException(name + " is already registered as another type");
+
+        return existing.metric;
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static String seconds(long us) {
+        return new BigDecimal(us).movePointLeft(6).stripTrailingZeros().toPlainString();
+    }
+
+    private static String withLabel(String labels, String extra) {
+        return "{" + (labels.length() > 0 ? labels + "," : "") + extra + "}";
+    }
+
+    /**
+     * Writes every metric in the Prometheus text format, version 0.0.4.
+     */
+    public void write(Writer out) throws IOException {
+        String lastName = null;
+        Histogram histogram;
+        Series s;
+        long cumulative;
+
+        for (Map.Entry<String, Series> entry : new TreeMap<String, Series>(series).entrySet()) {
+            s = entry.getValue();
+
+            if (!s.name.equals(lastName)) {
+                out.write("# HELP " + s.name + " " + help.get(s.name) + "\n");
+                out.write("# TYPE " + s.name + " "
+                        + (s.metric instanceof Counter ? "counter" : "histogram") + "\n");
+                lastName = s.name;
+            }
+
+            if (s.metric instanceof Counter) {
+                out.write(s.name + (s.labels.length() > 0 ? "{" + s.labels + "}" : "")
+                        + " " + ((Counter) s.metric).get() + "\n");
+                continue;
+            }
+
+            histogram = (Histogram) s.metric;
+            cumulative = 0;
+
+            for (int i = 0; i < Histogram.BUCKETS_US.length; i++) {
+                cumulative += histogram.counts.get(i);
+                out.write(s.name + "_bucket" + withLabel(s.labels,
+                        "le=\"" + Histogram.BUCKET_LABELS[i] + "\"") + " " + cumulative + "\n");
+            }
+
+            cumulative += histogram.counts.get(Histogram.BUCKETS_US.length);
+            out.write(s.name + "_bucket" + withLabel(s.labels, "le=\"+Inf\"") + " " + cumulative + "\n");
+
+            out.write(s.name + "_sum" + (s.labels.length() > 0 ? "{" + s.labels + "}" : "")
+                    + " " + seconds(histogram.sumUs.get()) + "\n");
+            out.write(s.name + "_count" + (s.labels.length() > 0 ? "{" + s.labels + "}" : "")
+                    + " " + cumulative + "\n");
+        }
+
+        out.flush();
+    }
+
+    /**
+     * Writes the metrics to a file, through a temporary file so that a reader
+     * never sees a partial file.
+     */
+    public void writeTo(File file) throws IOException {
+        File tmpFile;
+        Writer out;
+
+        tmpFile = new File(file.getPath() + ".tmp");
+        out = new OutputStreamWriter(new FileOutputStream(tmpFile), "UTF-8");
+
+        try {
+            write(out);
+        } finally {
+            out.close();
+        }
+
+        if (!tmpFile.renameTo(file))
+            throw new IOException("Couldn't rename " + tmpFile + " to " + file);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Random access view of a package archive stored inside the .apk file.
+ *
+ * A ZipInputStream over the .apk entry can only be walked sequentially. The
+ * implementations of this class give access to the central directory of the
+ * archive and let several threads open its entries independently.
+ */
+public abstract class NestedArchive {
+
+    public abstract List<ZipEntry> getEntries();
+
+    public abstract ZipEntry getEntry(String name);
+
+    public abstract InputStream getInputStream(ZipEntry entry) throws IOException;
+
+    public abstract void close();
+
+    /**
+     * Writes the content of an entry to a file.
+     *
+     * @return the number of bytes written
+     */
+    public long extractTo(ZipEntry entry, File targetFile, byte[] buf) throws IOException {
+        InputStream entryStream;
+        FileOutputStream targetStream;
+
+        entryStream = getInputStream(entry);
+        try {
+            targetStream = new FileOutputStream(targetFile);
+            try {
+                return Utils.copyStream(entryStream, targetStream, buf);
+            } finally {
+                targetStream.close();
+            }
+        } finally {
+            entryStream.close();
+        }
+    }
+
+    /**
+     * Returns true if the descriptor provides a digest we can check the package
+     * archive against.
+     */
+    protected static boolean isMd5Sum(String md5sum) {
+        return md5sum != null && md5sum.matches("[0-9a-fA-F]{32}");
+    }
+
+    protected static String toHex(byte[] digest) {
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+
+        for (byte b : digest)
+            hex.append(String.format("%02x", b & 0xff));
+
+        return hex.toString();
+    }
+
+    protected static void checkMd5Sum(ZipEntry pkgEntry, String md5sum, byte[] digest)
+            throws IOException {
+        String actualMd5sum = toHex(digest);
+
+        if (!actualMd5sum.equalsIgnoreCase(md5sum))
+            throw new IOException("MD5 sum mismatch for " + pkgEntry.getName()
+                    + ": expected " + md5sum + ", got " + actualMd5sum);
+    }
+
+    /**
+     * Opens the archive stored as 'pkgEntry' in the .apk file.
+     *
+     * An archive stored without compression in the .apk is read in place through
+     * a memory mapping of the .apk. Otherwise it is spooled to a temporary file in
+     * 'spoolDir', which is removed when the archive is closed.
+     *
+     * The MD5 sum of the archive is checked against 'md5sum' while it is opened. If
+     * it doesn't match, an IOException is thrown before anything is extracted.
+     */
+    public static NestedArchive open(ZipFile apkFile, ZipEntry pkgEntry, File spoolDir,
+                                     String md5sum) throws IOException {
+        if (pkgEntry.getMethod() == ZipEntry.STORED) {
+            try {
+                return MappedNestedArchive.open(new File(apkFile.getName()), pkgEntry, md5sum);
+            } catch (ZipDirectory.UnsupportedException ex) {
+                // Fall through to spooling, ZipFile will know what to do.
+            }
+        }
+
+        return SpooledNestedArchive.open(apkFile, pkgEntry, spoolDir, md5sum);
+    }
+}
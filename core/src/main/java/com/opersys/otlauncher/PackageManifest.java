@@ -0,0 +1,268 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+
+/**
+ * List of the files extracted in an application directory along with their size,
+ * CRC32 and file mode, as found in the package archive they were extracted from,
+ * and the modification time they were given when they were written.
+ *
+ * The manifest is stored as the "MANIFEST" file of the application directory and
+ * is what allows an upgrade to only touch the files that have changed.
+ */
+public class PackageManifest {
+
+    public static final String FILE_NAME = "MANIFEST";
+
+    private static final String VERSION = "2";
+
+    public static class Entry {
+
+        private final String path;
+        private final long size;
+        private final long crc;
+        private final String mode;
+        private long mtime;
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getCrc() {
+            return crc;
+        }
+
+        public String getMode() {
+            return mode;
+        }
+
+        /**
+         * Returns the modification time of the extracted file, or -1 if unknown.
+         */
+        public long getMtime() {
+            return mtime;
+        }
+
+        public void setMtime(long mtime) {
+            this.mtime = mtime;
+        }
+
+        /**
+         * Returns true if the archive entry has the same content as this entry.
+         */
+        public boolean isSameContent(ZipEntry zipEntry) {
+            return size == zipEntry.getSize() && crc == zipEntry.getCrc();
+        }
+
+        public Entry(String path, long size, long crc, String mode, long mtime) {
+            this.path = path;
+            this.size = size;
+            this.crc = crc;
+            this.mode = mode;
+            this.mtime = mtime;
+        }
+    }
+
+    private final Map<String, Entry> entries;
+
+    public Entry getEntry(String path) {
+        return entries.get(path);
+    }
+
+    public Collection<Entry> getEntries() {
+        return entries.values();
+    }
+
+    public void addEntry(Entry entry) {
+        entries.put(entry.getPath(), entry);
+    }
+
+    /**
+     * Returns the entries of the archive that need to be written over an
+     * application directory described by this manifest.
+     */
+    public List<ZipEntry> getChangedEntries(File appDir, Collection<ZipEntry> zipEntries) {
+        List<ZipEntry> changed;
+        Entry entry;
+        File file;
+
+        changed = new ArrayList<ZipEntry>();
+
+        for (ZipEntry zipEntry : zipEntries) {
+            if (zipEntry.isDirectory())
+                continue;
+
+            entry = entries.get(zipEntry.getName());
+            file = new File(appDir, zipEntry.getName());
+
+            if (entry == null || !entry.isSameContent(zipEntry)
+                    || !file.isFile() || file.length() != entry.getSize())
+                changed.add(zipEntry);
+        }
+
+        return changed;
+    }
+
+    /**
+     * Returns the entries of this manifest that are not part of the new manifest.
+     */
+    public List<Entry> getRemovedEntries(PackageManifest newManifest) {
+        List<Entry> removed;
+
+        removed = new ArrayList<Entry>();
+
+        for (Entry entry : entries.values())
+            if (newManifest.getEntry(entry.getPath()) == null)
+                removed.add(entry);
+
+        return removed;
+    }
+
+    /**
+     * Records the modification times of the files that were written in the
+     * application directory. The other files keep the time recorded in the
+     * manifest of the previous extraction, if any.
+     */
+    public void updateMtimes(File appDir, Collection<String> written, PackageManifest oldManifest) {
+        Entry oldEntry;
+
+        for (Entry entry : entries.values()) {
+            oldEntry = oldManifest != null ? oldManifest.getEntry(entry.getPath()) : null;
+
+            if ((written == null || !written.contains(entry.getPath()))
+                    && oldEntry != null && oldEntry.getMtime() >= 0)
+                entry.setMtime(oldEntry.getMtime());
+            else
+                entry.setMtime(new File(appDir, entry.getPath()).lastModified());
+        }
+    }
+
+    public void write(File appDir) throws IOException {
+        BufferedWriter writer;
+
+        writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(new File(appDir, FILE_NAME)), "UTF-8"));
+        try {
+            writer.write(VERSION);
+            writer.newLine();
+
+            for (Entry entry : entries.values()) {
+                writer.write(String.format("%08x %d %d %s %s",
+                        entry.getCrc(), entry.getSize(), entry.getMtime(),
+                        entry.getMode() == null ? "-" : entry.getMode(),
+                        entry.getPath()));
+                writer.newLine();
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Reads the manifest of an application directory.
+     *
+     * @return the manifest, or null if there is none or if it cannot be used
+     */
+    public static PackageManifest read(File appDir) {
+        PackageManifest manifest;
+        BufferedReader reader;
+        String line;
+        String[] fields;
+        File manifestFile;
+
+        manifestFile = new File(appDir, FILE_NAME);
+
+        if (!manifestFile.exists())
+            return null;
+
+        try {
+            reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(manifestFile), "UTF-8"));
+            try {
+                if (!VERSION.equals(reader.readLine()))
+                    return null;
+
+                manifest = new PackageManifest();
+
+                while ((line = reader.readLine()) != null) {
+                    fields = line.split(" ", 5);
+
+                    if (fields.length != 5)
+                        return null;
+
+                    manifest.addEntry(new Entry(fields[4],
+                            Long.parseLong(fields[1]),
+                            Long.parseLong(fields[0], 16),
+                            fields[3].equals("-") ? null : fields[3],
+                            Long.parseLong(fields[2])));
+                }
+
+                return manifest;
+
+            } finally {
+                reader.close();
+            }
+        } catch (IOException ex) {
+            return null;
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Builds the manifest of the files of a package archive.
+     */
+    public static PackageManifest fromArchive(Collection<ZipEntry> zipEntries,
+                                              Map<String, String> fileModes) {
+        PackageManifest manifest;
+
+        manifest = new PackageManifest();
+
+        for (ZipEntry zipEntry : zipEntries) {
+            if (zipEntry.isDirectory())
+                continue;
+
+            manifest.addEntry(new Entry(zipEntry.getName(), zipEntry.getSize(),
+                    zipEntry.getCrc(), fileModes.get(zipEntry.getName()), -1));
+        }
+
+        return manifest;
+    }
+
+    public PackageManifest() {
+        entries = new LinkedHashMap<String, Entry>();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher;
+
+/**
+ * What the launcher core needs from the system it runs on. On a device, the app
+ * sets an implementation backed by Android before using the core. Elsewhere, the
+ * default one logs to the standard error and takes the ABI from os.arch.
+ */
+public abstract class Platform {
+
+    /**
+     * Logs a debug message.
+     */
+    public abstract void log(String tag, String msg);
+
+    /**
+     * Returns the ABI of the CPU, in the form of android.os.Build.CPU_ABI.
+     */
+    public abstract String getCpuAbi();
+
+    /**
+     * The platform of a desktop JVM. Debug messages are only printed if the
+     * otlauncher.debug system property is set.
+     */
+    public static class Jvm extends Platform {
+
+        private final boolean isDebug = Boolean.getBoolean("otlauncher.debug");
+
+        @Override
+        public void log(String tag, String msg) {
+            if (isDebug)
+                System.err.println(tag + ": " + msg);
+        }
+
+        @Override
+        public String getCpuAbi() {
+            String arch = System.getProperty("os.arch");
+
+            if (arch.startsWith("arm") || arch.startsWith("aarch"))
+                return "armeabi-v7a";
+            else if (arch.equals("x86") || arch.equals("i386") || arch.equals("amd64")
+                    || arch.equals("x86_64"))
+                return "x86";
+            else
+                return arch;
+        }
+    }
+
+    private static volatile Platform current = new Jvm();
+
+    public static Platform get() {
+        return current;
+    }
+
+    public static void set(Platform platform) {
+        current = platform;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Package archive which is spooled to a temporary file so that it can be opened
+ * with ZipFile.
+ */
+public class SpooledNestedArchive extends NestedArchive {
+
+    private File spoolFile;
+
+    private ZipFile zipFile;
+
+    private List<ZipEntry> entries;
+
+    @Override
+    public List<ZipEntry> getEntries() {
+        return entries;
+    }
+
+    @Override
+    public ZipEntry getEntry(String name) {
+        return zipFile.getEntry(name);
+    }
+
+    @Override
+    public InputStream getInputStream(ZipEntry entry) throws IOException {
+        return zipFile.getInputStream(entry);
+    }
+
+    @Override
+    public void close() {
+        if (zipFile != null) {
+            try {
+                zipFile.close();
+            } catch (IOException ex) {}
+            zipFile = null;
+        }
+
+        if (spoolFile != null) {
+            spoolFile.delete();
+            spoolFile = null;
+        }
+    }
+
+    private SpooledNestedArchive(File spoolFile) throws IOException {
+        Enumeration<? extends ZipEntry> zipEntries;
+
+        this.spoolFile = spoolFile;
+        this.zipFile = new ZipFile(spoolFile);
+        this.entries = new ArrayList<ZipEntry>(zipFile.size());
+
+        zipEntries = zipFile.entries();
+        while (zipEntries.hasMoreElements())
+            entries.add(zipEntries.nextElement());
+    }
+
+    /**
+     * Opens the archive stored as 'pkgEntry' in the .apk file. The temporary copy
+     * is made in 'spoolDir' and is removed when the archive is closed.
+     *
+     * The MD5 sum of the archive is computed while it is copied.
+     */
+    public static SpooledNestedArchive open(ZipFile apkFile, ZipEntry pkgEntry, File spoolDir,
+                                            String md5sum) throws IOException {
+        File spoolFile;
+        InputStream pkgStream;
+        FileOutputStream spoolStream;
+        MessageDigest md5 = null;
+
+        if (!spoolDir.exists() && !spoolDir.mkdirs())
+            throw new IOException("Couldn't create directory " + spoolDir);
+
+        spoolFile = File.createTempFile("otlauncher", ".zip", spoolDir);
+        pkgStream = apkFile.getInputStream(pkgEntry);
+
+        if (isMd5Sum(md5sum)) {
+            try {
+                md5 = MessageDigest.getInstance("MD5");
+                pkgStream = new DigestInputStream(pkgStream, md5);
+            } catch (NoSuchAlgorithmException ex) {
+                md5 = null;
+            }
+        }
+
+        try {
+            spoolStream = new FileOutputStream(spoolFile);
+            try {
+                Utils.copyStream(pkgStream, spoolStream, new byte[Utils.COPY_BUFFER_SIZE]);
+            } finally {
+                spoolStream.close();
+            }
+
+            if (md5 != null)
+                checkMd5Sum(pkgEntry, md5sum, md5.digest());
+
+            return new SpooledNestedArchive(spoolFile);
+
+        } catch (IOException ex) {
+            spoolFile.delete();
+            throw ex;
+
+        } finally {
+            pkgStream.close();
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher;
+
+import com.opersys.otlauncher.tools.Shell;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Date: 09/04/15
+ * Time: 1:06 PM
+ */
+public class Utils {
+
+    private static final String TAG = "OTLauncher";
+
+    /**
+     * Size of the buffers used to copy the content of the package archives.
+     */
+    public static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Returns the architecture of the device on which we are running.
+     *
+     * @return arm | ia32 | arm64 | amd64 | unknown
+     */
+    public static String getArchitecture() {
+        String abi = Platform.get().getCpuAbi();
+
+        if (abi.contains("arm"))
+            return "arm";
+        else if (abi.contains("x86"))
+            return "ia32";
+        else
+            return null;
+    }
+
+    /**
+     * Deletes a file or directory, allowing recursive directory deletion. This is an
+     * improved version of File.delete() method.
+     */
+    public static boolean delete(File file, boolean recursive) {
+        File[] children;
+
+        if (!file.exists())
+            return true;
+
+        if (recursive && file.isDirectory()) {
+            children = file.listFiles();
+
+            if (children != null) {
+                for (File child : children) {
+                    if (!delete(child, true))
+                        return false;
+                }
+            }
+        }
+
+        return file.delete();
+    }
+
+    /**
+     * Copies the input stream to the output stream using the provided buffer.
+     *
+     * @return the number of bytes copied
+     */
+    public static long copyStream(InputStream input, OutputStream output, byte[] buffer)
+            throws IOException {
+        int n;
+        long count = 0;
+
+        while ((n = input.read(buffer)) != -1) {
+            output.write(buffer, 0, n);
+            count += n;
+        }
+
+        return count;
+    }
+
+    /**
+     * Maximum number of files handed to a single external chmod invocation.
+     */
+    private static final int CHMOD_BATCH_SIZE = 100;
+
+    private static boolean osChmodLookedUp;
+
+    private static Object osInstance;
+
+    private static Method osChmod;
+
+    /**
+     * Finds a chmod(String, int) method we can call without forking. That is
+     * android.system.Os on Lollipop and the hidden libcore.io.Os on older versions.
+     */
+    private static synchronized Method getOsChmod() {
+        Class<?> osClass;
+
+        if (osChmodLookedUp)
+            return osChmod;
+
+        osChmodLookedUp = true;
+
+        try {
+            osClass = Class.forName("android.system.Os");
+            osChmod = osClass.getMethod("chmod", String.class, int.class);
+            osInstance = null;
+            return osChmod;
+        } catch (Exception ex) {}
+
+        try {
+            osClass = Class.forName("libcore.io.Libcore");
+            osInstance = osClass.getField("os").get(null);
+            osChmod = osInstance.getClass().getMethod("chmod", String.class, int.class);
+            osChmod.setAccessible(true);
+        } catch (Exception ex) {
+            osInstance = null;
+            osChmod = null;
+        }
+
+        return osChmod;
+    }
+
+    /**
+     * Changes the mode of a file without starting a chmod process. A chmod that
+     * fails, for example because the file doesn't exist, is logged and ignored, as
+     * the chmod command fails.
+     *
+     * @return false if the mode could not be applied in process, in which case the
+     *         caller needs to fall back to the chmod command.
+     */
+    public static boolean chmodInProcess(String mode, String target) {
+        Method chmodMethod;
+        long startTime;
+        int octalMode;
+
+        chmodMethod = getOsChmod();
+
+        if (chmodMethod == null)
+            return false;
+
+        // Only numeric modes can be handed to chmod(2).
+        try {
+            octalMode = Integer.parseInt(mode, 8);
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+
+        try {
+            startTime = System.nanoTime();
+            chmodMethod.invoke(osInstance, target, octalMode);
+            LaunchTrace.get().record("chmod", target, startTime);
+            return true;
+
+        } catch (InvocationTargetException ex) {
+            Platform.get().log(TAG, "chmod " + mode + " " + target + " failed: "
+                    + ex.getCause().getMessage());
+            return true;
+        } catch (IllegalAccessException ex) {
+            return false;
+        }
+    }
+
+    private static String getChmodCommand(String mode, List<String> targets) {
+        StringBuilder cmd;
+
+        cmd = new StringBuilder("chmod ").append(Shell.quote(mode));
+
+        for (String target : targets)
+            cmd.append(' ').append(Shell.quote(target));
+
+        return cmd.toString();
+    }
+
+    /**
+     * Runs the chmod command on a list of files which all get the same mode.
+     */
+    public static void chmodExternal(String mode, List<String> targets) throws IOException {
+        chmodExternal(Collections.singletonMap(mode, targets));
+    }
+
+    /**
+     * Runs the chmod command for several modes, in a single round trip to the shell.
+     */
+    public static void chmodExternal(Map<String, List<String>> targetsByMode) throws IOException {
+        List<String> commands;
+        List<String> targets;
+
+        commands = new ArrayList<String>();
+
+        for (Map.Entry<String, List<String>> batch : targetsByMode.entrySet()) {
+            targets = batch.getValue();
+
+            for (int i = 0; i < targets.size(); i += CHMOD_BATCH_SIZE)
+                commands.add(getChmodCommand(batch.getKey(),
+                        targets.subList(i, Math.min(i + CHMOD_BATCH_SIZE, targets.size()))));
+        }
+
+        if (commands.isEmpty())
+            return;
+
+        for (Shell.Result result : Shell.get().exec(commands)) {
+            if (result.getExitStatus() == 127)
+                throw new IOException("Could not find an executable 'chmod' binary");
+
+            if (result.getExitStatus() != 0)
+                Platform.get().log(TAG, result.getCommand() + " failed: " + result.getOutput());
+        }
+    }
+
+    public static void chmod(String mode, String target) throws IOException {
+        if (!chmodInProcess(mode, target))
+            chmodExternal(mode, Collections.singletonList(target));
+    }
+
+    /**
+     * Applies a set of file modes, indexed by file. The modes that can't be applied
+     * in process are grouped so that there is a single chmod command per mode.
+     */
+    public static void chmod(Map<String, String> fileModes) throws IOException {
+        Map<String, List<String>> pending;
+        List<String> targets;
+
+        pending = new LinkedHashMap<String, List<String>>();
+
+        for (Map.Entry<String, String> fileMode : fileModes.entrySet()) {
+            if (chmodInProcess(fileMode.getValue(), fileMode.getKey()))
+                continue;
+
+            targets = pending.get(fileMode.getValue());
+            if (targets == null) {
+                targets = new ArrayList<String>();
+                pending.put(fileMode.getValue(), targets);
+            }
+            targets.add(fileMode.getKey());
+        }
+
+        chmodExternal(pending);
+    }
+}
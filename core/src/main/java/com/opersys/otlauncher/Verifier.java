@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Checks the files of an extracted application against its manifest. Since the
+ * manifest is built from the central directory of the package archive, this is
+ * the same as checking them against the sizes and CRC32s of the archive.
+ */
+public class Verifier {
+
+    public enum Mode {
+        /** No verification at all. */
+        NONE,
+        /** Compares the sizes and modification times of the files. */
+        QUICK,
+        /** Computes the CRC32 of every file, in parallel. */
+        DEEP;
+
+        public static Mode fromString(String mode) {
+            return Mode.valueOf(mode.toUpperCase(Locale.US));
+        }
+    }
+
+    private final Mode mode;
+
+    private final int nbThreads;
+
+    private long elapsedNanos;
+
+    private int fileCount;
+
+    private static boolean isQuickOk(File file, PackageManifest.Entry entry) {
+        if (!file.isFile() || file.length() != entry.getSize())
+            return false;
+
+        return entry.getMtime() < 0 || file.lastModified() == entry.getMtime();
+    }
+
+    private static boolean isDeepOk(File file, PackageManifest.Entry entry, byte[] buf)
+            throws IOException {
+        FileInputStream fileStream;
+        CRC32 crc;
+        int n;
+
+        if (!file.isFile() || file.length() != entry.getSize())
+            return false;
+
+        crc = new CRC32();
+        fileStream = new FileInputStream(file);
+        try {
+            while ((n = fileStream.read(buf)) != -1)
+                crc.update(buf, 0, n);
+        } finally {
+            fileStream.close();
+        }
+
+        return crc.getValue() == entry.getCrc();
+    }
+
+    private List<String> verifyDeep(final File appDir, final List<PackageManifest.Entry> entries)
+            throws IOException {
+        ExecutorService workers;
+        List<Future<List<String>>> results;
+        List<String> failed;
+        final int chunk;
+
+        failed = new ArrayList<String>();
+        results = new ArrayList<Future<List<String>>>();
+        workers = Executors.newFixedThreadPool(nbThreads);
+
+        // Hand each worker a slice of the list rather than submitting every file.
+        chunk = Math.max(1, (entries.size() + nbThreads - 1) / nbThreads);
+
+        try {
+            for (int i = 0; i < entries.size(); i += chunk) {
+                final List<PackageManifest.Entry> slice =
+                        entries.subList(i, Math.min(i + chunk, entries.size()));
+
+                results.add(workers.submit(new Callable<List<String>>() {
+                    @Override
+                    public List<String> call() throws IOException {
+                        List<String> sliceFailed = new ArrayList<String>();
+                        byte[] buf = new byte[Utils.COPY_BUFFER_SIZE];
+
+                        for (PackageManifest.Entry entry : slice)
+                            if (!isDeepOk(new File(appDir, entry.getPath()), entry, buf))
+                                sliceFailed.add(entry.getPath());
+
+                        return sliceFailed;
+                    }
+                }));
+            }
+
+            for (Future<List<String>> result : results)
+                failed.addAll(result.get());
+
+        } catch (InterruptedException ex) {
+            throw new IOException("Verification interrupted");
+
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof IOException)
+                throw (IOException) ex.getCause();
+            else
+                throw new IOException("Verification failed: " + ex.getCause());
+
+        } finally {
+            workers.shutdownNow();
+        }
+
+        return failed;
+    }
+
+    /**
+     * Name of the file holding the MD5 sum of the package archive, written once an
+     * application has been completely extracted.
+     */
+    public static final String MD5SUM_FILE = "MD5SUM";
+
+    /**
+     * Returns the MD5 sum of the package archive the application directory was
+     * extracted from, or null if the directory holds no complete extraction.
+     */
+    public static String readMd5Sum(File appDir) throws IOException {
+        FileInputStream md5stream;
+        File md5sumPath;
+        byte[] md5buf;
+        int n;
+
+        md5sumPath = new File(appDir, MD5SUM_FILE);
+
+        if (!md5sumPath.exists())
+            return null;
+
+        md5buf = new byte[1024];
+        md5stream = new FileInputStream(md5sumPath);
+
+        try {
+            n = md5stream.read(md5buf);
+        } finally {
+            md5stream.close();
+        }
+
+        return new String(md5buf, 0, Math.max(n, 0), "US-ASCII").trim();
+    }
+
+    /**
+     * Verifies the files of an application directory.
+     *
+     * @return the paths, relative to the application directory, of the files that
+     *         don't match the manifest.
+     */
+    public List<String> verify(File appDir, PackageManifest manifest) throws IOException {
+        List<PackageManifest.Entry> entries;
+        List<String> failed;
+        long startTime;
+
+        startTime = System.nanoTime();
+        entries = new ArrayList<PackageManifest.Entry>(manifest.getEntries());
+        failed = new ArrayList<String>();
+
+        try {
+            switch (mode) {
+                case QUICK:
+                    for (PackageManifest.Entry entry : entries)
+                        if (!isQuickOk(new File(appDir, entry.getPath()), entry))
+                            failed.add(entry.getPath());
+                    break;
+
+                case DEEP:
+                    failed = verifyDeep(appDir, entries);
+                    break;
+
+                default:
+                    return failed;
+            }
+
+            fileCount += entries.size();
+            return failed;
+
+        } finally {
+            elapsedNanos += System.nanoTime() - startTime;
+        }
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    public Verifier(Mode mode, int nbThreads) {
+        this.mode = mode;
+        this.nbThreads = Math.max(nbThreads, 1);
+    }
+
+    public Verifier(Mode mode) {
+        this(mode, Runtime.getRuntime().availableProcessors());
+    }
+}
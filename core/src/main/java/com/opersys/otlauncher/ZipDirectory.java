@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+
+/**
+ * Minimal reader for the central directory of a .zip file held in a ByteBuffer.
+ *
+ * This is what lets us find the entries of an archive without going through
+ * ZipFile, which can only open files. ZIP64 archives are not supported.
+ */
+public class ZipDirectory {
+
+    /**
+     * Thrown for archives this reader can't handle but ZipFile can.
+     */
+    public static class UnsupportedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public UnsupportedException(String msg) {
+            super(msg);
+        }
+    }
+
+    /**
+     * Entry of the central directory, along with the offset of its local header.
+     */
+    public static class Entry extends ZipEntry {
+
+        private final long headerOffset;
+
+        public long getHeaderOffset() {
+            return headerOffset;
+        }
+
+        public Entry(String name, long headerOffset) {
+            super(name);
+            this.headerOffset = headerOffset;
+        }
+    }
+
+    private static final int EOCD_SIG = 0x06054b50;
+    private static final int EOCD_SIZE = 22;
+    private static final int CEN_SIG = 0x02014b50;
+    private static final int CEN_SIZE = 46;
+    private static final int LOC_SIG = 0x04034b50;
+    private static final int LOC_SIZE = 30;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer zipBuf;
+
+    private final Map<String, Entry> entries;
+
+    private static long u32(ByteBuffer buf, int pos) {
+        return buf.getInt(pos) & 0xffffffffL;
+    }
+
+    private static int u16(ByteBuffer buf, int pos) {
+        return buf.getShort(pos) & 0xffff;
+    }
+
+    private static int findEndOfDirectory(ByteBuffer buf) throws IOException {
+        int minPos;
+
+        // The end record is followed by a comment of at most 64 KB.
+        minPos = Math.max(0, buf.limit() - EOCD_SIZE - 0xffff);
+
+        for (int pos = buf.limit() - EOCD_SIZE; pos >= minPos; pos--)
+            if (buf.getInt(pos) == EOCD_SIG)
+                return pos;
+
+        throw new IOException("End of central directory not found");
+    }
+
+    private void readEntries() throws IOException {
+        int eocdPos, pos, nameLen, extraLen, commentLen, nbEntries;
+        long cenOffset, headerOffset;
+        byte[] nameBytes;
+        Entry entry;
+
+        eocdPos = findEndOfDirectory(zipBuf);
+        nbEntries = u16(zipBuf, eocdPos + 10);
+        cenOffset = u32(zipBuf, eocdPos + 16);
+
+        if (nbEntries == 0xffff || cenOffset == 0xffffffffL)
+            throw new UnsupportedException("ZIP64 archives are not supported");
+
+        if (cenOffset >= zipBuf.limit())
+            throw new IOException("Invalid central directory offset");
+
+        pos = (int) cenOffset;
+
+        for (int i = 0; i < nbEntries; i++) {
+            if (pos + CEN_SIZE > zipBuf.limit() || zipBuf.getInt(pos) != CEN_SIG)
+                throw new IOException("Invalid central directory entry " + i);
+
+            nameLen = u16(zipBuf, pos + 28);
+            extraLen = u16(zipBuf, pos + 30);
+            commentLen = u16(zipBuf, pos + 32);
+            headerOffset = u32(zipBuf, pos + 42);
+
+            if (headerOffset == 0xffffffffL || u32(zipBuf, pos + 20) == 0xffffffffL)
+                throw new UnsupportedException("ZIP64 entries are not supported");
+
+            nameBytes = new byte[nameLen];
+            for (int j = 0; j < nameLen; j++)
+                nameBytes[j] = zipBuf.get(pos + CEN_SIZE + j);
+
+            entry = new Entry(new String(nameBytes, UTF8), headerOffset);
+
+            try {
+                entry.setMethod(u16(zipBuf, pos + 10));
+            } catch (IllegalArgumentException ex) {
+                throw new UnsupportedException("Unsupported compression method for " + entry.getName());
+            }
+
+            entry.setCrc(u32(zipBuf, pos + 16));
+            entry.setCompressedSize(u32(zipBuf, pos + 20));
+            entry.setSize(u32(zipBuf, pos + 24));
+
+            entries.put(entry.getName(), entry);
+            pos += CEN_SIZE + nameLen + extraLen + commentLen;
+        }
+    }
+
+    public List<ZipEntry> getEntries() {
+        return new ArrayList<ZipEntry>(entries.values());
+    }
+
+    public Entry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * Returns the offset, in the buffer, of the data of an entry.
+     */
+    public long getDataOffset(Entry entry) throws IOException {
+        int pos;
+
+        if (entry.getHeaderOffset() + LOC_SIZE > zipBuf.limit())
+            throw new IOException("Invalid local header offset for " + entry.getName());
+
+        pos = (int) entry.getHeaderOffset();
+
+        if (zipBuf.getInt(pos) != LOC_SIG)
+            throw new IOException("Invalid local header for " + entry.getName());
+
+        return pos + LOC_SIZE + u16(zipBuf, pos + 26) + u16(zipBuf, pos + 28);
+    }
+
+    /**
+     * Returns a buffer holding the raw, possibly compressed, data of an entry.
+     */
+    public ByteBuffer getData(Entry entry) throws IOException {
+        ByteBuffer dataBuf;
+        long dataOffset;
+
+        dataOffset = getDataOffset(entry);
+
+        if (dataOffset + entry.getCompressedSize() > zipBuf.limit())
+            throw new IOException("Truncated data for " + entry.getName());
+
+        dataBuf = zipBuf.duplicate();
+        dataBuf.position((int) dataOffset);
+        dataBuf.limit((int) (dataOffset + entry.getCompressedSize()));
+
+        return dataBuf.slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    public ZipDirectory(ByteBuffer zipBuf) throws IOException {
+        this.zipBuf = zipBuf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        this.entries = new LinkedHashMap<String, Entry>();
+
+        readEntries();
+    }
+}
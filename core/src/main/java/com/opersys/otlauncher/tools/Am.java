@@ -17,36 +17,32 @@
 package com.opersys.otlauncher.tools;
 
 import java.io.IOException;
+import java.util.Map;
 
 public class Am {
 
     public static void startService(String serviceId) throws IOException {
-        ProcessBuilder amBuilder;
-        Process amProc;
-
-        amBuilder = new ProcessBuilder()
-                .command("am", "startservice", serviceId);
-        amProc = amBuilder.start();
-
-        try {
-            amProc.waitFor();
-        } catch (InterruptedException ex){
-            
-        }
+        Shell.get().exec("am startservice " + Shell.quote(serviceId));
     }
 
-    public static void stopService(String serviceId) throws IOException {
-        ProcessBuilder amBuilder;
-        Process amProc;
+    /**
+     * Starts a service with string extras in its intent.
+     */
+    public static void startService(String serviceId, Map<String, String> extras)
+            throws IOException {
+        StringBuilder cmd;
+
+        cmd = new StringBuilder("am startservice");
 
-        amBuilder = new ProcessBuilder()
-                .command("am", "stopservice", serviceId);
-        amProc = amBuilder.start();
+        for (Map.Entry<String, String> extra : extras.entrySet())
+            cmd.append(" --es ").append(Shell.quote(extra.getKey()))
+                    .append(' ').append(Shell.quote(extra.getValue()));
 
-        try {
-            amProc.waitFor();
-        } catch (InterruptedException ex) {
+        cmd.append(' ').append(Shell.quote(serviceId));
+        Shell.get().exec(cmd.toString());
+    }
 
-        }
+    public static void stopService(String serviceId) throws IOException {
+        Shell.get().exec("am stopservice " + Shell.quote(serviceId));
     }
 }
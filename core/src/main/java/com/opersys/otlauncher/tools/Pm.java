@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.tools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * On the Android console, we don't have access to the PackageManager service but
+ * we can still call the 'Pm' command to at least get some informations.
+ *
+ * This class is limited to the subset of command needed by the rest of the program.
+ *
+ * Every pm command starts a Java runtime on the device, so the answers are kept
+ * for the lifetime of the process and, when a cache file is set, on disk for as
+ * long as the system package database doesn't change.
+ */
+public class Pm {
+
+    private static Shell.Result execPm(String pmCommand) throws IOException {
+        return Shell.get().exec("pm " + pmCommand);
+    }
+
+    /**
+     * Package database of the system. Its modification time tells us whether the
+     * list of installed packages may have changed.
+     */
+    private static final File PACKAGES_DB = new File("/data/system/packages.xml");
+
+    private static final String PACKAGE_PREFIX = "package:";
+
+    /**
+     * Installed packages, once we have listed them.
+     */
+    private static Set<String> packageIndex;
+
+    /**
+     * Result of single package queries, when we don't have the full list.
+     */
+    private static final Map<String, Boolean> installedCache = new HashMap<String, Boolean>();
+
+    private static File cacheFile;
+
+    /**
+     * Sets the file where the list of installed packages is kept between runs.
+     */
+    public static synchronized void setCacheFile(File cacheFile) {
+        Pm.cacheFile = cacheFile;
+    }
+
+    private static Set<String> readCache(long dbTime) {
+        BufferedReader reader;
+        Set<String> index;
+        String line;
+
+        if (cacheFile == null || !cacheFile.exists())
+            return null;
+
+        try {
+            reader = new BufferedReader(new FileReader(cacheFile));
+            try {
+                if (!String.valueOf(dbTime).equals(reader.readLine()))
+                    return null;
+
+                index = new HashSet<String>();
+                while ((line = reader.readLine()) != null)
+                    index.add(line);
+
+                // Left by a version which saved the list of a failed pm.
+                return index.isEmpty() ? null : index;
+            } finally {
+                reader.close();
+            }
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    private static void writeCache(long dbTime, Set<String> index) {
+        BufferedWriter writer;
+        File tmpFile;
+
+        // An empty list can only come from a pm which failed in some way we
+        // didn't notice. Don't keep it until the package database changes.
+        if (cacheFile == null || index.isEmpty())
+            return;
+
+        tmpFile = new File(cacheFile + ".tmp");
+
+        try {
+            writer = new BufferedWriter(new FileWriter(tmpFile));
+            try {
+                writer.write(String.valueOf(dbTime));
+                writer.newLine();
+
+                for (String pkg : index) {
+                    writer.write(pkg);
+                    writer.newLine();
+                }
+            } finally {
+                writer.close();
+            }
+
+            if (!tmpFile.renameTo(cacheFile))
+                tmpFile.delete();
+
+        } catch (IOException ex) {
+            tmpFile.delete();
+        }
+    }
+
+    private static IOException pmFailed(Shell.Result result) {
+        return new IOException("'" + result.getCommand() + "' failed ("
+                + result.getExitStatus() + "): " + result.getOutput().trim());
+    }
+
+    /**
+     * Asks pm about a single package, which is cheaper than listing them all.
+     * Depending on the version, pm answers nothing with a status of 0 or 1 for
+     * a package which is not installed. Anything else is an error, such as the
+     * package manager not running yet.
+     */
+    private static boolean queryPackage(String pkgName) throws IOException {
+        Shell.Result result;
+        String output;
+
+        result = execPm("path " + Shell.quote(pkgName));
+        output = result.getOutput().trim();
+
+        if (output.startsWith(PACKAGE_PREFIX))
+            return true;
+        if (output.length() == 0 && result.getExitStatus() <= 1)
+            return false;
+
+        throw pmFailed(result);
+    }
+
+    /**
+     * Reads the output of 'pm list packages'.
+     *
+     * @throws IOException if pm failed, or listed no package at all
+     */
+    static Set<String> parsePackageList(Shell.Result result) throws IOException {
+        String[] pmList;
+        Set<String> index;
+
+        if (result.getExitStatus() != 0)
+            throw pmFailed(result);
+
+        pmList = result.getOutput().split("\n");
+        index = new LinkedHashSet<String>(pmList.length);
+
+        for (String pmLine : pmList) {
+            pmLine = pmLine.trim();
+
+            if (pmLine.startsWith(PACKAGE_PREFIX))
+                index.add(pmLine.substring(PACKAGE_PREFIX.length()));
+        }
+
+        if (index.isEmpty())
+            throw pmFailed(result);
+
+        return index;
+    }
+
+    public static synchronized boolean isPackageInstalled(String pkgName) throws IOException {
+        Boolean installed;
+        long dbTime;
+
+        if (packageIndex != null)
+            return packageIndex.contains(pkgName);
+
+        installed = installedCache.get(pkgName);
+        if (installed != null)
+            return installed;
+
+        // lastModified() returns 0 if we can't see the package database.
+        dbTime = PACKAGES_DB.lastModified();
+
+        if (dbTime != 0) {
+            packageIndex = readCache(dbTime);
+
+            if (packageIndex == null) {
+                getPackages();
+                writeCache(dbTime, packageIndex);
+            }
+
+            return packageIndex.contains(pkgName);
+        }
+
+        installed = queryPackage(pkgName);
+        installedCache.put(pkgName, installed);
+
+        return installed;
+    }
+
+    public static synchronized String[] getPackages() throws IOException {
+        Set<String> index;
+
+        index = parsePackageList(execPm("list packages"));
+
+        packageIndex = index;
+        installedCache.clear();
+
+        return index.toArray(new String[index.size()]);
+    }
+}
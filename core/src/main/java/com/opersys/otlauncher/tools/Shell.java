@@ -0,0 +1,497 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.tools;
+
+import com.opersys.otlauncher.LaunchTrace;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Long lived shell process to which commands are sent through a pipe, so that
+ * we don't pay for a fork each time we need to run am, pm or chmod.
+ *
+ * Each command is followed by an echo of a marker line holding its exit status,
+ * which is how the output of the commands is told apart. Several commands can
+ * be sent in a single round trip with exec(List).
+ *
+ * When a command times out, the processes the shell started are killed along
+ * with the shell, so that a stuck am or pm isn't left behind. They are found
+ * through /proc; where there is no /proc, only the shell is killed.
+ */
+public class Shell {
+
+    /**
+     * Default time to wait for a command, or a batch of commands, to complete.
+     */
+    public static final long DEFAULT_TIMEOUT_MS = 30000;
+
+    public static class Result {
+
+        private final String command;
+        private final String output;
+        private final int exitStatus;
+        private final long elapsedNanos;
+
+        public String getCommand() {
+            return command;
+        }
+
+        public String getOutput() {
+            return output;
+        }
+
+        public int getExitStatus() {
+            return exitStatus;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public Result(String command, String output, int exitStatus, long elapsedNanos) {
+            this.command = command;
+            this.output = output;
+            this.exitStatus = exitStatus;
+            this.elapsedNanos = elapsedNanos;
+        }
+    }
+
+    /**
+     * Latency counters for the commands with the same name.
+     */
+    public static class CommandStats {
+
+        private int count;
+        private long totalNanos;
+        private long maxNanos;
+
+        public synchronized int getCount() {
+            return count;
+        }
+
+        public synchronized long getTotalNanos() {
+            return totalNanos;
+        }
+
+        public synchronized long getMaxNanos() {
+            return maxNanos;
+        }
+
+        synchronized void add(long nanos) {
+            count++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("%d calls, avg %d us, max %d us",
+                    count, count == 0 ? 0 : totalNanos / count / 1000, maxNanos / 1000);
+        }
+    }
+
+    private static Shell shell;
+
+    private final String marker;
+
+    private final Map<String, CommandStats> stats;
+
+    private ExecutorService readerExecutor;
+
+    private Process shellProc;
+
+    private int shellPid;
+
+    private OutputStream shellIn;
+
+    private BufferedReader shellOut;
+
+    /**
+     * Returns the shell shared by the whole process.
+     */
+    public static synchronized Shell get() {
+        if (shell == null)
+            shell = new Shell();
+
+        return shell;
+    }
+
+    /**
+     * Quotes a string so that the shell passes it as a single argument.
+     */
+    public static String quote(String arg) {
+        return "'" + arg.replace("'", "'\\''") + "'";
+    }
+
+    private void start() throws IOException {
+        String line;
+
+        shellProc = new ProcessBuilder()
+                .command("sh")
+                .redirectErrorStream(true)
+                .start();
+
+        shellIn = shellProc.getOutputStream();
+        shellOut = new BufferedReader(new InputStreamReader(shellProc.getInputStream(), "UTF-8"));
+
+        // A reader left blocked by a killed shell must not hold up the new one.
+        readerExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "otlauncher-shell");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+
+        // The pid of the shell is how the commands it runs are found, see kill().
+        shellIn.write("echo $$\n".getBytes("UTF-8"));
+        shellIn.flush();
+
+        line = shellOut.readLine();
+
+        try {
+            shellPid = line != null ? Integer.parseInt(line.trim()) : -1;
+        } catch (NumberFormatException ex) {
+            shellPid = -1;
+        }
+    }
+
+    /**
+     * Returns the parent pid of a process, from /proc/[pid]/stat, or -1.
+     */
+    private static int getParentPid(File procDir) {
+        FileInputStream statStream;
+        String stat;
+        byte[] buf;
+        int n;
+
+        buf = new byte[512];
+
+        try {
+            statStream = new FileInputStream(new File(procDir, "stat"));
+            try {
+                n = statStream.read(buf);
+            } finally {
+                statStream.close();
+            }
+
+            // "pid (comm) state ppid ...", where comm may hold spaces and parentheses.
+            stat = new String(buf, 0, Math.max(n, 0), "US-ASCII");
+            stat = stat.substring(stat.lastIndexOf(')') + 2);
+
+            return Integer.parseInt(stat.split(" ")[1]);
+
+        } catch (IOException ex) {
+            return -1;
+        } catch (RuntimeException ex) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the descendants of a process, parents first.
+     */
+    static List<Integer> getDescendants(int pid) {
+        Map<Integer, List<Integer>> children;
+        List<Integer> descendants, siblings;
+        File[] procDirs;
+        int ppid;
+
+        children = new HashMap<Integer, List<Integer>>();
+        descendants = new ArrayList<Integer>();
+        procDirs = new File("/proc").listFiles();
+
+        if (procDirs == null)
+            return descendants;
+
+        for (File procDir : procDirs) {
+            if (!procDir.getName().matches("[0-9]+"))
+                continue;
+
+            ppid = getParentPid(procDir);
+            siblings = children.get(ppid);
+
+            if (siblings == null) {
+                siblings = new ArrayList<Integer>();
+                children.put(ppid, siblings);
+            }
+
+            siblings.add(Integer.valueOf(procDir.getName()));
+        }
+
+        if (children.containsKey(pid))
+            descendants.addAll(children.get(pid));
+
+        for (int i = 0; i < descendants.size(); i++)
+            if (children.containsKey(descendants.get(i)))
+                descendants.addAll(children.get(descendants.get(i)));
+
+        return descendants;
+    }
+
+    /**
+     * Kills the shell. With 'commands', the processes it started are killed
+     * first, while they can still be told apart from the others.
+     */
+    private void kill(boolean commands) {
+        List<String> killCommand;
+
+        if (shellProc == null)
+            return;
+
+        if (commands && shellPid > 0) {
+            killCommand = new ArrayList<String>();
+            killCommand.add("kill");
+            killCommand.add("-9");
+
+            for (int pid : getDescendants(shellPid))
+                killCommand.add(String.valueOf(pid));
+
+            if (killCommand.size() > 2) {
+                try {
+                    new ProcessBuilder(killCommand).redirectErrorStream(true).start().waitFor();
+                } catch (IOException ex) {
+                    // The shell is killed anyway.
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        shellProc.destroy();
+        readerExecutor.shutdownNow();
+        shellProc = null;
+        shellPid = -1;
+        readerExecutor = null;
+        shellIn = null;
+        shellOut = null;
+    }
+
+    private static String getCommandName(String command) {
+        int n = command.indexOf(' ');
+        return n < 0 ? command : command.substring(0, n);
+    }
+
+    private void addStats(String command, long nanos) {
+        CommandStats cmdStats;
+        String name;
+
+        name = getCommandName(command);
+
+        synchronized (stats) {
+            cmdStats = stats.get(name);
+            if (cmdStats == null) {
+                cmdStats = new CommandStats();
+                stats.put(name, cmdStats);
+            }
+        }
+
+        cmdStats.add(nanos);
+    }
+
+    /**
+     * Returns the exit status a marker line holds, or null if the line is command
+     * output.
+     */
+    private Integer getMarkerStatus(String line) {
+        if (!line.startsWith(marker + " "))
+            return null;
+
+        try {
+            return Integer.valueOf(line.substring(marker.length() + 1));
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the output of the commands of a batch, up to their marker lines.
+     */
+    private List<Result> readResults(BufferedReader shellOut, List<String> commands, long startTime)
+            throws IOException {
+        List<Result> results;
+        StringBuilder output;
+        Integer exitStatus;
+        String line;
+        long lastTime, now;
+
+        results = new ArrayList<Result>(commands.size());
+        lastTime = startTime;
+
+        for (String command : commands) {
+            output = new StringBuilder();
+            exitStatus = null;
+
+            while ((line = shellOut.readLine()) != null
+                    && (exitStatus = getMarkerStatus(line)) == null) {
+                output.append(line);
+                output.append('\n');
+            }
+
+            if (line == null)
+                throw new IOException("Shell exited while running: " + command);
+
+            // Drop the newline echoed before the marker.
+            if (output.length() > 0)
+                output.setLength(output.length() - 1);
+
+            now = System.nanoTime();
+            results.add(new Result(command, output.toString(), exitStatus, now - lastTime));
+            lastTime = now;
+        }
+
+        return results;
+    }
+
+    /**
+     * Runs a batch of commands in a single round trip to the shell.
+     */
+    public synchronized List<Result> exec(final List<String> commands, long timeoutMs)
+            throws IOException {
+        StringBuilder script;
+        Future<List<Result>> pending;
+        List<Result> results;
+        final BufferedReader out;
+        final long startTime;
+        long commandStart;
+
+        if (shellProc == null) {
+            commandStart = System.nanoTime();
+
+            try {
+                start();
+            } catch (IOException ex) {
+                kill(false);
+                throw ex;
+            }
+
+            LaunchTrace.get().record("shell", "sh", commandStart);
+        }
+
+        out = shellOut;
+
+        script = new StringBuilder();
+
+        for (String command : commands) {
+            script.append(command).append(" </dev/null 2>&1; ");
+            script.append("__rc=$?; echo; echo ").append(marker).append(" $__rc\n");
+        }
+
+        startTime = System.nanoTime();
+
+        try {
+            shellIn.write(script.toString().getBytes("UTF-8"));
+            shellIn.flush();
+
+            pending = readerExecutor.submit(new Callable<List<Result>>() {
+                @Override
+                public List<Result> call() throws IOException {
+                    return readResults(out, commands, startTime);
+                }
+            });
+
+            results = pending.get(timeoutMs, TimeUnit.MILLISECONDS);
+
+        } catch (TimeoutException ex) {
+            kill(true);
+            throw new IOException("Timed out running: " + commands);
+
+        } catch (InterruptedException ex) {
+            kill(true);
+            throw new IOException("Interrupted running: " + commands);
+
+        } catch (ExecutionException ex) {
+            kill(false);
+
+            if (ex.getCause() instanceof IOException)
+                throw (IOException) ex.getCause();
+            else
+                throw new IOException("Failed running " + commands + ": " + ex.getCause());
+
+        } catch (IOException ex) {
+            kill(false);
+            throw ex;
+        }
+
+        commandStart = startTime;
+
+        for (Result result : results) {
+            addStats(result.getCommand(), result.getElapsedNanos());
+
+            LaunchTrace.get().record("shell", result.getCommand(), commandStart,
+                    commandStart + result.getElapsedNanos());
+            commandStart += result.getElapsedNanos();
+        }
+
+        return results;
+    }
+
+    public List<Result> exec(List<String> commands) throws IOException {
+        return exec(commands, DEFAULT_TIMEOUT_MS);
+    }
+
+    public Result exec(String command, long timeoutMs) throws IOException {
+        return exec(Collections.singletonList(command), timeoutMs).get(0);
+    }
+
+    public Result exec(String command) throws IOException {
+        return exec(command, DEFAULT_TIMEOUT_MS);
+    }
+
+    /**
+     * Returns the latency counters, indexed by command name.
+     */
+    public Map<String, CommandStats> getStatistics() {
+        synchronized (stats) {
+            return new LinkedHashMap<String, CommandStats>(stats);
+        }
+    }
+
+    String getMarker() {
+        return marker;
+    }
+
+    public synchronized void close() {
+        kill(false);
+    }
+
+    private Shell() {
+        marker = "__OTLAUNCHER_" + Long.toHexString(new Random().nextLong()) + "__";
+        stats = new LinkedHashMap<String, CommandStats>();
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.system;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Host stand-in for the chmod(2) wrapper of Android, so that the tests go through
+ * the in-process path of Utils.chmod.
+ */
+public final class Os {
+
+    private static final PosixFilePermission[] PERMISSIONS = {
+            PosixFilePermission.OTHERS_EXECUTE, PosixFilePermission.OTHERS_WRITE,
+            PosixFilePermission.OTHERS_READ, PosixFilePermission.GROUP_EXECUTE,
+            PosixFilePermission.GROUP_WRITE, PosixFilePermission.GROUP_READ,
+            PosixFilePermission.OWNER_EXECUTE, PosixFilePermission.OWNER_WRITE,
+            PosixFilePermission.OWNER_READ
+    };
+
+    public static void chmod(String path, int mode) throws IOException {
+        Set<PosixFilePermission> permissions;
+        File file;
+
+        file = new File(path);
+
+        if (!file.exists())
+            throw new IOException("chmod failed: ENOENT (No such file or directory)");
+
+        permissions = new HashSet<PosixFilePermission>();
+        for (int bit = 0; bit < PERMISSIONS.length; bit++)
+            if ((mode & (1 << bit)) != 0)
+                permissions.add(PERMISSIONS[bit]);
+
+        Files.setPosixFilePermissions(file.toPath(), permissions);
+    }
+
+    private Os() {}
+}
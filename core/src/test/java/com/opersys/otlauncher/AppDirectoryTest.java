@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher;
+
+import org.json.JSONException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for the extraction of an application: in place when a previous
+ * extraction can be updated, in a staging directory otherwise.
+ */
+public class AppDirectoryTest {
+
+    private File workDir;
+
+    private File appDir;
+
+    private Map<String, String> files;
+
+    private Map<String, String> modes;
+
+    private DescriptorReader descriptorReader;
+
+    @Before
+    public void createWorkDir() throws IOException {
+        workDir = PackageManifestTest.createTempDir("appdir");
+        appDir = new File(workDir, TestApk.ID);
+
+        files = new LinkedHashMap<String, String>();
+        files.put("bin/", "");
+        files.put("bin/node", "node");
+        files.put("app.js", "console.log('app');");
+        files.put("lib/old.js", "old");
+
+        modes = Collections.singletonMap("bin/node", "0755");
+    }
+
+    @After
+    public void deleteWorkDir() {
+        if (descriptorReader != null)
+            descriptorReader.close();
+
+        Utils.delete(workDir, true);
+    }
+
+    private AppDirectory open(String apkName) throws IOException, JSONException {
+        File apkFile;
+
+        if (descriptorReader != null)
+            descriptorReader.close();
+
+        apkFile = TestApk.create(workDir, apkName, files, modes, true);
+        descriptorReader = new DescriptorReader(apkFile);
+
+        return new AppDirectory(descriptorReader.getDescriptor(), TestApk.ID, TestApk.ARCH, appDir);
+    }
+
+    private static String read(File file) throws IOException {
+        FileInputStream in;
+        byte[] buf;
+        int n;
+
+        buf = new byte[1024];
+        in = new FileInputStream(file);
+        try {
+            n = in.read(buf);
+        } finally {
+            in.close();
+        }
+
+        return new String(buf, 0, Math.max(n, 0), "UTF-8");
+    }
+
+    private static void write(File file, String content) throws IOException {
+        FileOutputStream out;
+
+        file.getParentFile().mkdirs();
+        out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Returns the names of the directories next to the application directory,
+     * sorted.
+     */
+    private String[] getSiblings() {
+        String[] names;
+
+        names = workDir.list();
+        Arrays.sort(names);
+
+        return names;
+    }
+
+    private void assertExtracted(AppDirectory appDirectory) throws IOException {
+        assertTrue(appDirectory.isExtractedOk());
+        assertNotNull(PackageManifest.read(appDir));
+        assertEquals("node", read(new File(appDir, "bin/node")));
+        assertEquals("console.log('app');", read(new File(appDir, "app.js")));
+        assertTrue(new File(appDir, "bin/node").canExecute());
+        assertFalse(new File(workDir, TestApk.ID + AppDirectory.STAGING_SUFFIX).exists());
+    }
+
+    /**
+     * Test a first extraction, which goes through the staging directory.
+     */
+    @Test
+    public void testExtract() throws IOException, JSONException {
+        AppDirectory appDirectory;
+
+        appDirectory = open("v1.apk");
+        assertFalse(appDirectory.isExtractedOk());
+
+        appDirectory.extract();
+        assertExtracted(appDirectory);
+        assertEquals("old", read(new File(appDir, "lib/old.js")));
+
+        // Nothing was replaced.
+        assertEquals(0, appDirectory.reclaim());
+    }
+
+    /**
+     * Test that a directory without manifest is replaced as a whole, and that the
+     * replaced tree is only deleted by reclaim().
+     */
+    @Test
+    public void testReplaceAndReclaim() throws IOException, JSONException {
+        AppDirectory appDirectory;
+
+        write(new File(appDir, "stray.txt"), "stray");
+
+        appDirectory = open("v1.apk");
+        appDirectory.extract();
+        assertExtracted(appDirectory);
+        assertFalse(new File(appDir, "stray.txt").exists());
+
+        assertArrayEquals(new String[] { TestApk.ID, TestApk.ID + AppDirectory.RETIRED_SUFFIX + "0",
+                "v1.apk" }, getSiblings());
+        assertEquals("stray", read(new File(workDir,
+                TestApk.ID + AppDirectory.RETIRED_SUFFIX + "0/stray.txt")));
+
+        assertEquals(1, appDirectory.reclaim());
+        assertArrayEquals(new String[] { TestApk.ID, "v1.apk" }, getSiblings());
+    }
+
+    /**
+     * Test that a staging directory left by an interrupted extraction is not
+     * reused as is, and is reclaimed.
+     */
+    @Test
+    public void testLeftoverStaging() throws IOException, JSONException {
+        AppDirectory appDirectory;
+
+        write(new File(workDir, TestApk.ID + AppDirectory.STAGING_SUFFIX + "/half.txt"), "half");
+
+        appDirectory = open("v1.apk");
+        appDirectory.extract();
+        assertExtracted(appDirectory);
+        assertFalse(new File(appDir, "half.txt").exists());
+
+        assertEquals(1, appDirectory.reclaim());
+        assertArrayEquals(new String[] { TestApk.ID, "v1.apk" }, getSiblings());
+    }
+
+    /**
+     * Test an update of a previous extraction, done in place.
+     */
+    @Test
+    public void testExtractDelta() throws IOException, JSONException {
+        AppDirectory appDirectory;
+
+        open("v1.apk").extract();
+
+        files.remove("lib/old.js");
+        files.put("app.js", "console.log('v2');");
+        files.put("lib/new.js", "new");
+
+        appDirectory = open("v2.apk");
+        assertFalse(appDirectory.isExtractedOk());
+        appDirectory.extract();
+
+        assertTrue(appDirectory.isExtractedOk());
+        assertEquals("console.log('v2');", read(new File(appDir, "app.js")));
+        assertEquals("new", read(new File(appDir, "lib/new.js")));
+        assertFalse(new File(appDir, "lib/old.js").exists());
+        assertTrue(new File(appDir, "bin/node").canExecute());
+        assertNotNull(PackageManifest.read(appDir).getEntry("lib/new.js"));
+        assertNull(PackageManifest.read(appDir).getEntry("lib/old.js"));
+
+        // Updated in place: nothing to reclaim.
+        assertArrayEquals(new String[] { TestApk.ID, "v1.apk", "v2.apk" }, getSiblings());
+        assertEquals(0, appDirectory.reclaim());
+    }
+
+    /**
+     * Test that an update that can't be done in place falls back to a full
+     * extraction in the staging directory.
+     */
+    @Test
+    public void testExtractDeltaFailure() throws IOException, JSONException {
+        AppDirectory appDirectory;
+
+        open("v1.apk").extract();
+
+        // The changed file can't be written over a directory.
+        assertTrue(Utils.delete(new File(appDir, "app.js"), false));
+        write(new File(appDir, "app.js/in-the-way"), "x");
+
+        files.put("app.js", "console.log('v2');");
+
+        appDirectory = open("v2.apk");
+        appDirectory.extract();
+
+        assertTrue(appDirectory.isExtractedOk());
+        assertEquals("console.log('v2');", read(new File(appDir, "app.js")));
+        assertEquals("old", read(new File(appDir, "lib/old.js")));
+        assertTrue(new File(appDir, "bin/node").canExecute());
+        assertFalse(new File(workDir, TestApk.ID + AppDirectory.STAGING_SUFFIX).exists());
+
+        // The tree the update failed on was replaced.
+        assertEquals(1, appDirectory.reclaim());
+        assertArrayEquals(new String[] { TestApk.ID, "v1.apk", "v2.apk" }, getSiblings());
+    }
+}
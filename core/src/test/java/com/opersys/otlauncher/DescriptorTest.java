@@ -0,0 +1,395 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for the descriptor.
+ */
+public class DescriptorTest {
+
+    /**
+     * Several packages, with the default one after them.
+     */
+    private static final String MULTI_DESCRIPTOR = "{\"version\":\"1.0\",\"packages\":[\n" +
+            "{\"id\":\"a\",\"desc\":\"A\",\"cmd\":\"./a\",\"files\":[" +
+            "{\"file\":\"assets/a_arm.zip\",\"md5sum\":\"A1\",\"arch\":\"arm\",\"modes\":{\"x\":\"0755\"}}," +
+            "{\"file\":\"assets/a_ia32.zip\",\"md5sum\":\"A2\",\"arch\":\"ia32\",\"modes\":{}}]},\n" +
+            "{\"id\":\"b\",\"desc\":\"B\",\"cmd\":\"./b\",\"files\":[" +
+            "{\"file\":\"assets/b_arm.zip\",\"md5sum\":\"B1\",\"arch\":\"arm\"," +
+            "\"modes\":{\"y\":\"0700\",\"z\":\"0755\"}}]}],\n" +
+            "\"default\":\"b\"}";
+
+    /**
+     * The files of package "b" are malformed, its header is not.
+     */
+    private static final String MALFORMED_DESCRIPTOR = "{\"version\":\"1.0\",\"packages\":[\n" +
+            "{\"id\":\"a\",\"desc\":\"A\",\"cmd\":\"./a\",\"files\":[]},\n" +
+            "{\"id\":\"b\",\"desc\":\"B\",\"cmd\":\"./b\",\"files\":[{\"file\":\"assets/b.zip\"}]}]}";
+
+    private static File createApk(File dir, String json) throws IOException {
+        ZipOutputStream out;
+        File apkFile;
+
+        apkFile = new File(dir, "test.apk");
+        out = new ZipOutputStream(new FileOutputStream(apkFile));
+
+        try {
+            TestApk.putEntry(out, "assets/otlauncher.json", json.getBytes("UTF-8"), false);
+        } finally {
+            out.close();
+        }
+
+        return apkFile;
+    }
+
+    private void testMultiDescriptor(Descriptor descriptor) throws IOException, JSONException {
+        Descriptor.PackageFile pkgFile;
+
+        assertEquals(2, descriptor.getPackages().length);
+        assertEquals("b", descriptor.getDefaultAppId());
+
+        assertEquals(2, descriptor.getPackage("a").getPackageFiles().length);
+        pkgFile = descriptor.getPackage("a").getFileForArch("arm");
+        assertEquals("A1", pkgFile.getMd5Sum());
+        assertEquals("x", pkgFile.getPackageFileModes()[0].getFile());
+        assertEquals(0, descriptor.getPackage("a").getFileForArch("ia32").getPackageFileModes().length);
+
+        pkgFile = descriptor.getPackage("b").getFileForArch("arm");
+        assertEquals("assets/b_arm.zip", pkgFile.getFile());
+        assertEquals(2, pkgFile.getPackageFileModes().length);
+        assertEquals("0700", pkgFile.getPackageFileModes()[0].getMode());
+        assertNull(descriptor.getPackage("b").getFileForArch("ia32"));
+    }
+
+    private void testGoodDescriptor(Descriptor descriptor) throws IOException, JSONException {
+        Descriptor.Package pkg;
+        Descriptor.PackageFile pkgFile;
+        Descriptor.PackageFileMode pkgFileMode;
+
+        // Test the descriptor root.
+        assertNotNull(descriptor);
+        assertNotNull(descriptor.getPackages());
+        assertTrue(descriptor.getPackages().length == 1);
+        assertNotNull(descriptor.getPackage("binder-explorer"));
+
+        // Test the package content.
+        pkg = descriptor.getPackage("binder-explorer");
+        assertEquals("./node app.js", pkg.getCommand());
+        assertEquals("Binder Explorer v0.1", pkg.getDescription());
+        assertEquals("binder-explorer", pkg.getId());
+        assertNotNull(pkg.getFileForArch("arm"));
+        assertNotNull(pkg.getFileForArch("ia32"));
+
+        // Test the files content.
+        pkgFile = pkg.getFileForArch("arm");
+        assertEquals("arm", pkgFile.getArchitecture());
+        assertEquals("UNIMPORTANT CONTENT", pkgFile.getMd5Sum());
+        assertEquals("assets/binder-explorer_arm.zip", pkgFile.getFile());
+        pkgFileMode = pkgFile.getPackageFileModes()[0];
+        assertNotNull(pkgFileMode);
+        assertEquals("node", pkgFileMode.getFile());
+        assertEquals("0755", pkgFileMode.getMode());
+
+        pkgFile = pkg.getFileForArch("ia32");
+        assertEquals("ia32", pkgFile.getArchitecture());
+        assertEquals("UNIMPORTANT CONTENT", pkgFile.getMd5Sum());
+        assertEquals("assets/binder-explorer_ia32.zip", pkgFile.getFile());
+        pkgFileMode = pkgFile.getPackageFileModes()[0];
+        assertEquals("node", pkgFileMode.getFile());
+        assertEquals("0755", pkgFileMode.getMode());
+
+    }
+
+    /**
+     * This is the descriptor for what was once the Binder Explorer, as is, outside
+     * an .apk. The set* methods are generally not tested here since they are very
+     * simple in the {@see Descriptor} class.
+     */
+    @Test
+    public void testSimpleDescriptor() throws IOException, JSONException {
+        DescriptorReader dreader;
+        Descriptor descriptor;
+
+        dreader = new DescriptorReader("{\n" +
+                "\"version\":\"1.0\",\n" +
+                "\"packages\":[\n" +
+                "{\n" +
+                "\"id\":\"binder-explorer\",\n" +
+                "\"desc\":\"Binder Explorer v0.1\",\n" +
+                "\"cmd\":\"./node app.js\",\n" +
+                "\"files\":[\n" +
+                "{\n" +
+                "\"file\":\"assets/binder-explorer_ia32.zip\",\n" +
+                "\"md5sum\":\"UNIMPORTANT CONTENT\",\n" +
+                "\"arch\":\"ia32\",\n" +
+                "\"modes\":{\"node\":\"0755\"}\n" +
+                "},\n" +
+                "{\n" +
+                "\"file\":\"assets/binder-explorer_arm.zip\",\n" +
+                "\"md5sum\":\"UNIMPORTANT CONTENT\",\n" +
+                "\"arch\":\"arm\",\n" +
+                "\"modes\":{\"node\":\"0755\"}\n" +
+                "}\n" +
+                "]\n" +
+                "}\n" +
+                "]\n" +
+                "}\n");
+
+        // Test the descriptor root.
+        descriptor = dreader.getDescriptor();
+        testGoodDescriptor(descriptor);
+    }
+
+    /**
+     * Test a descriptor with several packages, members in an unusual order and
+     * members the reader doesn't know about. The files of a package are only read
+     * when the package is asked for.
+     */
+    @Test
+    public void testStreamingDescriptor() throws IOException, JSONException {
+        DescriptorReader dreader;
+        Descriptor descriptor;
+        Descriptor.Package pkg;
+
+        dreader = new DescriptorReader("{\"extra\":[1,{\"a\":\"]}\"}],\n" +
+                "\"packages\":[\n" +
+                "{\"files\":[{\"arch\":\"arm\",\"modes\":{\"bin/node\":\"0755\",\"x\":\"0700\"}," +
+                "\"file\":\"assets/a_arm.zip\",\"md5sum\":\"A\"}]," +
+                "\"id\":\"a\",\"desc\":\"Caf\\u00e9 \\\"A\\\"\",\"cmd\":\"./a\"},\n" +
+                "{\"id\":\"b\",\"desc\":\"B\",\"cmd\":\"./b\",\"files\":[]}],\n" +
+                "\"default\":\"b\",\"version\":\"1.0\"}");
+
+        descriptor = dreader.getDescriptor();
+        assertEquals(2, descriptor.getPackages().length);
+        assertEquals("b", descriptor.getDefaultAppId());
+
+        pkg = descriptor.getPackage("a");
+        assertEquals("Caf\u00e9 \"A\"", pkg.getDescription());
+        assertEquals("./a", pkg.getCommand());
+        assertEquals("assets/a_arm.zip", pkg.getFileForArch("arm").getFile());
+        assertEquals("A", pkg.getFileForArch("arm").getMd5Sum());
+        assertEquals(2, pkg.getFileForArch("arm").getPackageFileModes().length);
+        assertEquals("0700", pkg.getFileForArch("arm").getPackageFileModes()[1].getMode());
+        assertNull(pkg.getFileForArch("ia32"));
+
+        assertNull(descriptor.getPackage("b").getFileForArch("arm"));
+    }
+
+    /**
+     * Test that syntax errors are reported as such.
+     */
+    @Test(expected = JSONException.class)
+    public void testBadDescriptor() throws IOException, JSONException {
+        new DescriptorReader("{\"version\":\"1.0\",\"packages\":[{\"id\" \"a\"}]}").getDescriptor();
+    }
+
+    /**
+     * Test loading of the descriptor from within a .apk
+     */
+    @Test
+    public void testDescriptorApk() throws IOException, JSONException {
+        DescriptorReader dreader;
+        Descriptor descriptor;
+        File apkFile;
+
+        apkFile = new File("src/test/apks/GoodDescriptor.apk");
+        dreader = new DescriptorReader(apkFile);
+
+        descriptor = dreader.getDescriptor();
+        testGoodDescriptor(descriptor);
+    }
+
+    /**
+     * Test that the descriptor read back from the cache is the same as the one
+     * parsed from the .apk.
+     */
+    @Test
+    public void testDescriptorCache() throws IOException, JSONException {
+        DescriptorReader dreader;
+        File apkFile, cacheFile;
+
+        apkFile = new File("src/test/apks/GoodDescriptor.apk");
+        cacheFile = File.createTempFile("otlauncher", ".cache");
+        cacheFile.delete();
+
+        try {
+            dreader = new DescriptorReader(apkFile);
+            dreader.setCacheFile(cacheFile);
+            testGoodDescriptor(dreader.getDescriptor());
+            dreader.close();
+            assertTrue(cacheFile.exists());
+
+            dreader = new DescriptorReader(apkFile);
+            dreader.setCacheFile(cacheFile);
+            testGoodDescriptor(dreader.getDescriptor());
+            dreader.close();
+        } finally {
+            cacheFile.delete();
+        }
+    }
+
+    /**
+     * Test that a cache holding several packages, written while the descriptor is
+     * read, gives back the files of each of them.
+     */
+    @Test
+    public void testMultiPackageCache() throws IOException, JSONException {
+        Descriptor descriptor;
+        DescriptorReader dreader;
+        File dir, apkFile, cacheFile;
+
+        dir = PackageManifestTest.createTempDir("descriptor");
+
+        try {
+            apkFile = createApk(dir, MULTI_DESCRIPTOR);
+            cacheFile = new File(dir, "otlauncher-descriptor.cache");
+
+            dreader = new DescriptorReader(apkFile);
+            dreader.setCacheFile(cacheFile);
+            testMultiDescriptor(dreader.getDescriptor());
+            dreader.close();
+            assertTrue(cacheFile.exists());
+            assertFalse(new File(cacheFile + ".tmp").exists());
+
+            dreader = new DescriptorReader(apkFile);
+            dreader.setCacheFile(cacheFile);
+            descriptor = dreader.getDescriptor();
+
+            // Only the headers are read from the cache.
+            for (Descriptor.Package pkg : descriptor.getPackages())
+                assertEquals(0, pkg.getLoadedPackageFiles().length);
+
+            testMultiDescriptor(descriptor);
+            dreader.close();
+        } finally {
+            Utils.delete(dir, true);
+        }
+    }
+
+    /**
+     * Test that the files of a package which can't be read from the cache anymore
+     * are reported when the package is asked for.
+     */
+    @Test
+    public void testStaleCache() throws IOException, JSONException {
+        Descriptor descriptor;
+        DescriptorReader dreader;
+        File dir, apkFile, cacheFile;
+
+        dir = PackageManifestTest.createTempDir("descriptor");
+
+        try {
+            apkFile = createApk(dir, MULTI_DESCRIPTOR);
+            cacheFile = new File(dir, "otlauncher-descriptor.cache");
+
+            dreader = new DescriptorReader(apkFile);
+            dreader.setCacheFile(cacheFile);
+            dreader.getDescriptor();
+            dreader.close();
+
+            dreader = new DescriptorReader(apkFile);
+            dreader.setCacheFile(cacheFile);
+            descriptor = dreader.getDescriptor();
+            dreader.close();
+
+            assertTrue(cacheFile.delete());
+
+            try {
+                descriptor.getPackage("a");
+                fail("The cache of package a is gone.");
+            } catch (Descriptor.LoadException ex) {
+                assertTrue(ex.getCause() instanceof IOException);
+            }
+        } finally {
+            Utils.delete(dir, true);
+        }
+    }
+
+    /**
+     * Test that malformed package files are reported, as syntax errors, when the
+     * descriptor is read, even if they are only loaded when needed.
+     */
+    @Test(expected = JSONException.class)
+    public void testMalformedPackage() throws IOException, JSONException {
+        new DescriptorReader(MALFORMED_DESCRIPTOR).getDescriptor();
+    }
+
+    /**
+     * Test that malformed package files are reported when the descriptor is read
+     * to be cached, and that no cache is left behind.
+     */
+    @Test
+    public void testMalformedPackageCache() throws IOException {
+        DescriptorReader dreader;
+        File dir, cacheFile;
+
+        dir = PackageManifestTest.createTempDir("descriptor");
+        dreader = null;
+
+        try {
+            cacheFile = new File(dir, "otlauncher-descriptor.cache");
+            dreader = new DescriptorReader(createApk(dir, MALFORMED_DESCRIPTOR));
+            dreader.setCacheFile(cacheFile);
+
+            try {
+                dreader.getDescriptor();
+                fail("The files of package b are malformed.");
+            } catch (JSONException ex) {
+                // Expected.
+            }
+
+            assertFalse(cacheFile.exists());
+            assertFalse(new File(cacheFile + ".tmp").exists());
+        } finally {
+            if (dreader != null)
+                dreader.close();
+            Utils.delete(dir, true);
+        }
+    }
+
+    /**
+     * Test an .apk without descriptor.
+     */
+    @Test
+    public void testNoDescriptorApk() {
+        DescriptorReader dreader;
+        File apkFile;
+
+        apkFile = new File("src/test/apks/NoDescriptor.apk");
+
+        try {
+            dreader = new DescriptorReader(apkFile);
+            dreader.getDescriptor();
+            fail("There is no descriptor in that file.");
+
+        } catch (IOException ex) {
+            // 'tis alright!
+        } catch (JSONException ex) {
+            fail("There is no descriptor");
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for the choice between reading a package archive in place and
+ * spooling it.
+ */
+public class NestedArchiveTest {
+
+    private File workDir;
+
+    private File spoolDir;
+
+    private Map<String, String> files;
+
+    @Before
+    public void createWorkDir() throws IOException {
+        workDir = PackageManifestTest.createTempDir("nested");
+        spoolDir = new File(workDir, "spool");
+
+        files = new LinkedHashMap<String, String>();
+        files.put("bin/", "");
+        files.put("bin/node", "node");
+        files.put("app.js", "console.log('app');");
+    }
+
+    @After
+    public void deleteWorkDir() {
+        Utils.delete(workDir, true);
+    }
+
+    private static String read(NestedArchive archive, String name) throws IOException {
+        InputStream in;
+        byte[] buf;
+        int n;
+
+        buf = new byte[1024];
+        in = archive.getInputStream(archive.getEntry(name));
+        try {
+            n = in.read(buf);
+        } finally {
+            in.close();
+        }
+
+        return new String(buf, 0, Math.max(n, 0), "UTF-8");
+    }
+
+    private NestedArchive open(boolean stored, String md5sum) throws IOException {
+        ZipFile apkFile;
+        File apk;
+
+        apk = TestApk.create(workDir, "test.apk", files, Collections.<String, String>emptyMap(),
+                stored);
+        apkFile = new ZipFile(apk);
+
+        try {
+            return NestedArchive.open(apkFile, apkFile.getEntry(TestApk.ARCHIVE), spoolDir,
+                    md5sum != null ? md5sum : TestApk.md5(TestApk.createArchive(files)));
+        } finally {
+            apkFile.close();
+        }
+    }
+
+    private int getSpooledCount() {
+        String[] spooled = spoolDir.list();
+        return spooled == null ? 0 : spooled.length;
+    }
+
+    @Test
+    public void testStoredIsMapped() throws IOException {
+        NestedArchive archive;
+
+        archive = open(true, null);
+
+        try {
+            assertTrue(archive instanceof MappedNestedArchive);
+            assertEquals(0, getSpooledCount());
+            assertEquals(3, archive.getEntries().size());
+            assertEquals("node", read(archive, "bin/node"));
+            assertEquals("console.log('app');", read(archive, "app.js"));
+        } finally {
+            archive.close();
+        }
+    }
+
+    @Test
+    public void testDeflatedIsSpooled() throws IOException {
+        NestedArchive archive;
+
+        archive = open(false, null);
+
+        try {
+            assertTrue(archive instanceof SpooledNestedArchive);
+            assertEquals(1, getSpooledCount());
+            assertEquals(3, archive.getEntries().size());
+            assertEquals("node", read(archive, "bin/node"));
+        } finally {
+            archive.close();
+        }
+
+        assertEquals(0, getSpooledCount());
+    }
+
+    @Test
+    public void testExtractTo() throws IOException {
+        NestedArchive archive;
+        File target;
+
+        target = new File(workDir, "node");
+
+        for (boolean stored : new boolean[] { true, false }) {
+            archive = open(stored, null);
+
+            try {
+                assertEquals(4, archive.extractTo(archive.getEntry("bin/node"), target,
+                        new byte[Utils.COPY_BUFFER_SIZE]));
+                assertEquals(4, target.length());
+            } finally {
+                archive.close();
+            }
+        }
+    }
+
+    @Test
+    public void testMd5Mismatch() throws IOException {
+        for (boolean stored : new boolean[] { true, false }) {
+            try {
+                open(stored, "0123456789abcdef0123456789abcdef").close();
+                fail("The MD5 sum should not match");
+            } catch (IOException ex) {
+                assertTrue(ex.getMessage().contains("MD5"));
+            }
+
+            assertEquals(0, getSpooledCount());
+        }
+    }
+
+    /**
+     * Returns an archive holding a single stored entry, whose size in the
+     * central directory is 'extra' bytes more than its real size.
+     */
+    private static byte[] createOversizedArchive(String name, byte[] content, int extra)
+            throws IOException {
+        ByteArrayOutputStream archive;
+        ZipOutputStream out;
+        ByteBuffer buf;
+        int pos;
+
+        archive = new ByteArrayOutputStream();
+        out = new ZipOutputStream(archive);
+
+        try {
+            TestApk.putEntry(out, name, content, true);
+        } finally {
+            out.close();
+        }
+
+        buf = ByteBuffer.wrap(archive.toByteArray()).order(ByteOrder.LITTLE_ENDIAN);
+
+        for (pos = 0; buf.getInt(pos) != 0x02014b50; pos++);
+        buf.putInt(pos + 20, content.length + extra);
+        buf.putInt(pos + 24, content.length + extra);
+
+        return buf.array();
+    }
+
+    private void testOversizedEntry(int extra) throws IOException {
+        ZipOutputStream apkOut;
+        NestedArchive archive;
+        File apk;
+
+        apk = new File(workDir, "oversized.apk");
+        apkOut = new ZipOutputStream(new FileOutputStream(apk));
+
+        try {
+            TestApk.putEntry(apkOut, TestApk.ARCHIVE,
+                    createOversizedArchive("bin/node", "node".getBytes("UTF-8"), extra), true);
+            // Data an oversized entry would be copied from.
+            TestApk.putEntry(apkOut, "assets/other", new byte[4096], true);
+        } finally {
+            apkOut.close();
+        }
+
+        // Without an MD5 sum, nothing else notices.
+        archive = MappedNestedArchive.open(apk, new ZipEntry(TestApk.ARCHIVE), null);
+
+        try {
+            archive.extractTo(archive.getEntry("bin/node"), new File(workDir, "node"),
+                    new byte[Utils.COPY_BUFFER_SIZE]);
+            fail("Extracted an entry larger than the archive");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().startsWith("Truncated"));
+        } finally {
+            archive.close();
+        }
+    }
+
+    @Test
+    public void testOversizedStoredEntry() throws IOException {
+        // Past the end of the archive, and past the end of the .apk.
+        testOversizedEntry(1000);
+        testOversizedEntry(1000000);
+    }
+}
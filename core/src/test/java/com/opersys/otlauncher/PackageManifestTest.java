@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for the manifest of an extracted application.
+ */
+public class PackageManifestTest {
+
+    private File appDir;
+
+    /**
+     * Returns the archive entry of a file with the given content.
+     */
+    static ZipEntry getZipEntry(String path, String content) throws IOException {
+        ZipEntry entry;
+        CRC32 crc;
+        byte[] data;
+
+        data = content.getBytes("UTF-8");
+        crc = new CRC32();
+        crc.update(data);
+
+        entry = new ZipEntry(path);
+        entry.setSize(data.length);
+        entry.setCrc(crc.getValue());
+
+        return entry;
+    }
+
+    /**
+     * Writes a file in the application directory.
+     *
+     * @return the archive entry the file would have been extracted from
+     */
+    static ZipEntry writeFile(File appDir, String path, String content) throws IOException {
+        FileOutputStream out;
+        File file;
+
+        file = new File(appDir, path);
+        file.getParentFile().mkdirs();
+
+        out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+
+        return getZipEntry(path, content);
+    }
+
+    static File createTempDir(String name) throws IOException {
+        File dir;
+
+        dir = File.createTempFile("otlauncher-" + name, "");
+        if (!dir.delete() || !dir.mkdir())
+            throw new IOException("Couldn't create " + dir);
+
+        return dir;
+    }
+
+    private static List<String> getNames(List<ZipEntry> zipEntries) {
+        List<String> names;
+
+        names = new ArrayList<String>();
+        for (ZipEntry zipEntry : zipEntries)
+            names.add(zipEntry.getName());
+
+        return names;
+    }
+
+    @Before
+    public void createAppDir() throws IOException {
+        appDir = createTempDir("manifest");
+    }
+
+    @After
+    public void deleteAppDir() {
+        Utils.delete(appDir, true);
+    }
+
+    @Test
+    public void testWriteRead() throws IOException {
+        PackageManifest manifest, readBack;
+        Map<String, String> modes;
+        PackageManifest.Entry entry;
+
+        modes = new HashMap<String, String>();
+        modes.put("bin/node", "0755");
+
+        manifest = PackageManifest.fromArchive(Arrays.asList(
+                writeFile(appDir, "bin/node", "node"),
+                writeFile(appDir, "a file with spaces", "content")), modes);
+        manifest.updateMtimes(appDir, null, null);
+        manifest.write(appDir);
+
+        readBack = PackageManifest.read(appDir);
+        assertNotNull(readBack);
+        assertEquals(2, readBack.getEntries().size());
+
+        entry = readBack.getEntry("bin/node");
+        assertEquals(4, entry.getSize());
+        assertEquals(manifest.getEntry("bin/node").getCrc(), entry.getCrc());
+        assertEquals("0755", entry.getMode());
+        assertEquals(new File(appDir, "bin/node").lastModified(), entry.getMtime());
+
+        entry = readBack.getEntry("a file with spaces");
+        assertNotNull(entry);
+        assertNull(entry.getMode());
+    }
+
+    /**
+     * Test that an unknown or damaged manifest is ignored rather than trusted.
+     */
+    @Test
+    public void testReadInvalid() throws IOException {
+        assertNull(PackageManifest.read(appDir));
+
+        writeFile(appDir, PackageManifest.FILE_NAME, "1\n0000abcd 4 - node\n");
+        assertNull(PackageManifest.read(appDir));
+
+        writeFile(appDir, PackageManifest.FILE_NAME, "2\n0000abcd four 0 - node\n");
+        assertNull(PackageManifest.read(appDir));
+    }
+
+    @Test
+    public void testChangedEntries() throws IOException {
+        PackageManifest manifest;
+        List<ZipEntry> newEntries;
+
+        manifest = PackageManifest.fromArchive(Arrays.asList(
+                writeFile(appDir, "same", "same"),
+                writeFile(appDir, "resized", "resized"),
+                writeFile(appDir, "rewritten", "abcd"),
+                writeFile(appDir, "deleted", "deleted"),
+                writeFile(appDir, "truncated", "truncated")),
+                Collections.<String, String>emptyMap());
+
+        new File(appDir, "deleted").delete();
+        writeFile(appDir, "truncated", "trunc");
+
+        newEntries = Arrays.asList(
+                getZipEntry("same", "same"),
+                getZipEntry("resized", "longer content"),
+                getZipEntry("rewritten", "efgh"),
+                new ZipEntry("lib/"),
+                getZipEntry("deleted", "deleted"),
+                getZipEntry("truncated", "truncated"),
+                getZipEntry("added", "added"));
+
+        assertEquals(Arrays.asList("resized", "rewritten", "deleted", "truncated", "added"),
+                getNames(manifest.getChangedEntries(appDir, newEntries)));
+    }
+
+    @Test
+    public void testRemovedEntries() throws IOException {
+        PackageManifest oldManifest, newManifest;
+        List<PackageManifest.Entry> removed;
+
+        oldManifest = PackageManifest.fromArchive(Arrays.asList(
+                writeFile(appDir, "kept", "kept"),
+                writeFile(appDir, "lib/removed", "removed")),
+                Collections.<String, String>emptyMap());
+        newManifest = PackageManifest.fromArchive(Arrays.asList(
+                writeFile(appDir, "kept", "kept"),
+                writeFile(appDir, "added", "added")),
+                Collections.<String, String>emptyMap());
+
+        removed = oldManifest.getRemovedEntries(newManifest);
+        assertEquals(1, removed.size());
+        assertEquals("lib/removed", removed.get(0).getPath());
+    }
+
+    /**
+     * Test that the files which were not written keep the time recorded by the
+     * previous extraction, and the others get the time of the file.
+     */
+    @Test
+    public void testUpdateMtimes() throws IOException {
+        PackageManifest oldManifest, newManifest;
+        List<ZipEntry> zipEntries;
+
+        zipEntries = Arrays.asList(
+                writeFile(appDir, "kept", "kept"),
+                writeFile(appDir, "written", "written"),
+                writeFile(appDir, "added", "added"));
+
+        new File(appDir, "kept").setLastModified(1000000000000L);
+        new File(appDir, "written").setLastModified(1000000000000L);
+        new File(appDir, "added").setLastModified(1000000000000L);
+
+        oldManifest = PackageManifest.fromArchive(zipEntries.subList(0, 2),
+                Collections.<String, String>emptyMap());
+        oldManifest.getEntry("kept").setMtime(1234000L);
+        oldManifest.getEntry("written").setMtime(1234000L);
+
+        newManifest = PackageManifest.fromArchive(zipEntries,
+                Collections.<String, String>emptyMap());
+        newManifest.updateMtimes(appDir, Arrays.asList("written", "added"), oldManifest);
+
+        assertEquals(1234000L, newManifest.getEntry("kept").getMtime());
+        assertEquals(1000000000000L, newManifest.getEntry("written").getMtime());
+        assertEquals(1000000000000L, newManifest.getEntry("added").getMtime());
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Builds the archives and .apk files used by the tests.
+ */
+class TestApk {
+
+    static final String ID = "app";
+
+    static final String ARCH = "ia32";
+
+    static final String ARCHIVE = "assets/app.zip";
+
+    static void putEntry(ZipOutputStream out, String name, byte[] content, boolean stored)
+            throws IOException {
+        ZipEntry entry;
+        CRC32 crc;
+
+        entry = new ZipEntry(name);
+
+        if (stored) {
+            crc = new CRC32();
+            crc.update(content);
+
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(content.length);
+            entry.setCompressedSize(content.length);
+            entry.setCrc(crc.getValue());
+        }
+
+        out.putNextEntry(entry);
+        out.write(content);
+        out.closeEntry();
+    }
+
+    /**
+     * Returns an archive of files, indexed by name, with deflated entries. The
+     * names ending with a slash are directories.
+     */
+    static byte[] createArchive(Map<String, String> files) throws IOException {
+        ByteArrayOutputStream archive;
+        ZipOutputStream out;
+
+        archive = new ByteArrayOutputStream();
+        out = new ZipOutputStream(archive);
+
+        try {
+            for (Map.Entry<String, String> file : files.entrySet())
+                putEntry(out, file.getKey(), file.getValue().getBytes("UTF-8"), false);
+        } finally {
+            out.close();
+        }
+
+        return archive.toByteArray();
+    }
+
+    static String md5(byte[] content) {
+        StringBuilder hex;
+        byte[] digest;
+
+        try {
+            digest = MessageDigest.getInstance("MD5").digest(content);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+
+        hex = new StringBuilder();
+        for (byte b : digest)
+            hex.append(String.format("%02x", b & 0xff));
+
+        return hex.toString();
+    }
+
+    /**
+     * Writes an .apk holding a single package, ID, for ARCH, which is made of the
+     * given files and modes.
+     *
+     * @param stored true to store the package archive in the .apk, false to
+     *               deflate it
+     */
+    static File create(File dir, String name, Map<String, String> files,
+                       Map<String, String> modes, boolean stored) throws IOException {
+        ZipOutputStream apkOut;
+        StringBuilder json;
+        byte[] archive;
+        File apkFile;
+
+        archive = createArchive(files);
+
+        json = new StringBuilder();
+        json.append("{\"version\":\"1.0\",\"packages\":[{\"id\":\"").append(ID)
+                .append("\",\"desc\":\"Test\",\"cmd\":\"./run\",\"files\":[{\"file\":\"")
+                .append(ARCHIVE).append("\",\"md5sum\":\"").append(md5(archive))
+                .append("\",\"arch\":\"").append(ARCH).append("\",\"modes\":{");
+
+        for (Map.Entry<String, String> mode : modes.entrySet()) {
+            if (json.charAt(json.length() - 1) != '{')
+                json.append(',');
+            json.append('"').append(mode.getKey()).append("\":\"").append(mode.getValue()).append('"');
+        }
+
+        json.append("}}]}]}");
+
+        apkFile = new File(dir, name);
+        apkOut = new ZipOutputStream(new FileOutputStream(apkFile));
+
+        try {
+            putEntry(apkOut, "assets/otlauncher.json", json.toString().getBytes("UTF-8"), false);
+            putEntry(apkOut, ARCHIVE, archive, stored);
+        } finally {
+            apkOut.close();
+        }
+
+        return apkFile;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for the file utilities.
+ */
+public class UtilsTest {
+
+    private File appDir;
+
+    @Before
+    public void createAppDir() throws IOException {
+        appDir = PackageManifestTest.createTempDir("utils");
+    }
+
+    @After
+    public void deleteAppDir() {
+        Utils.delete(appDir, true);
+    }
+
+    @Test
+    public void testChmod() throws IOException {
+        File node;
+
+        node = new File(appDir, "node");
+        PackageManifestTest.writeFile(appDir, "node", "node");
+
+        Utils.chmod("0700", node.toString());
+        assertTrue(node.canExecute());
+
+        Utils.chmod("0600", node.toString());
+        assertFalse(node.canExecute());
+    }
+
+    /**
+     * Test that a mode given for a file which isn't there doesn't prevent the
+     * other modes from being applied, in process or through the chmod command.
+     */
+    @Test
+    public void testChmodMissingFile() throws IOException {
+        Map<String, String> fileModes;
+        File node;
+
+        node = new File(appDir, "node");
+        PackageManifestTest.writeFile(appDir, "node", "node");
+
+        assertTrue(Utils.chmodInProcess("0755", new File(appDir, "missing").toString()));
+
+        fileModes = new LinkedHashMap<String, String>();
+        fileModes.put(new File(appDir, "missing").toString(), "0755");
+        fileModes.put(node.toString(), "0755");
+        Utils.chmod(fileModes);
+        assertTrue(node.canExecute());
+
+        Utils.chmodExternal("0755", Collections.singletonList(
+                new File(appDir, "missing").toString()));
+    }
+
+    @Test
+    public void testDelete() throws IOException {
+        PackageManifestTest.writeFile(appDir, "a/b/c", "c");
+        PackageManifestTest.writeFile(appDir, "a/d", "d");
+
+        assertFalse(Utils.delete(new File(appDir, "a"), false));
+        assertTrue(Utils.delete(new File(appDir, "a"), true));
+        assertFalse(new File(appDir, "a").exists());
+        assertTrue(Utils.delete(new File(appDir, "a"), true));
+    }
+}
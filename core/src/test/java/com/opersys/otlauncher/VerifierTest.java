@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for the verification of the extracted files.
+ */
+public class VerifierTest {
+
+    private File appDir;
+
+    private PackageManifest manifest;
+
+    @Before
+    public void extract() throws IOException {
+        appDir = PackageManifestTest.createTempDir("verifier");
+
+        manifest = PackageManifest.fromArchive(Arrays.asList(
+                PackageManifestTest.writeFile(appDir, "bin/node", "node"),
+                PackageManifestTest.writeFile(appDir, "app.js", "app"),
+                PackageManifestTest.writeFile(appDir, "lib/a.so", "a")),
+                Collections.<String, String>emptyMap());
+        manifest.updateMtimes(appDir, null, null);
+    }
+
+    @After
+    public void deleteAppDir() {
+        Utils.delete(appDir, true);
+    }
+
+    @Test
+    public void testIntact() throws IOException {
+        Verifier verifier;
+
+        for (Verifier.Mode mode : Verifier.Mode.values()) {
+            verifier = new Verifier(mode, 2);
+            assertEquals(Collections.emptyList(), verifier.verify(appDir, manifest));
+        }
+    }
+
+    /**
+     * The quick mode catches missing files and files with another size or time.
+     */
+    @Test
+    public void testQuick() throws IOException {
+        Verifier verifier;
+        File appJs;
+
+        new File(appDir, "lib/a.so").delete();
+        PackageManifestTest.writeFile(appDir, "bin/node", "nodejs");
+
+        // Same size, but written later.
+        appJs = new File(appDir, "app.js");
+        PackageManifestTest.writeFile(appDir, "app.js", "APP");
+        appJs.setLastModified(manifest.getEntry("app.js").getMtime() + 2000);
+
+        verifier = new Verifier(Verifier.Mode.QUICK);
+        assertEquals(Arrays.asList("bin/node", "app.js", "lib/a.so"),
+                verifier.verify(appDir, manifest));
+        assertEquals(3, verifier.getFileCount());
+    }
+
+    /**
+     * The quick mode trusts files with the recorded size and time, the deep mode
+     * finds their content changed.
+     */
+    @Test
+    public void testDeep() throws IOException {
+        File appJs;
+        long mtime;
+
+        appJs = new File(appDir, "app.js");
+        mtime = appJs.lastModified();
+        PackageManifestTest.writeFile(appDir, "app.js", "APP");
+        appJs.setLastModified(mtime);
+
+        assertEquals(Collections.emptyList(),
+                new Verifier(Verifier.Mode.QUICK).verify(appDir, manifest));
+        assertEquals(Collections.singletonList("app.js"),
+                new Verifier(Verifier.Mode.DEEP, 2).verify(appDir, manifest));
+    }
+
+    @Test
+    public void testNone() throws IOException {
+        Utils.delete(new File(appDir, "lib"), true);
+
+        assertEquals(Collections.emptyList(),
+                new Verifier(Verifier.Mode.NONE).verify(appDir, manifest));
+    }
+
+    /**
+     * Test that the -V option is parsed the same in every locale. In Turkish, "i"
+     * upper cases to a dotted capital I.
+     */
+    @Test
+    public void testModeLocale() {
+        Locale defaultLocale = Locale.getDefault();
+
+        try {
+            Locale.setDefault(new Locale("tr", "TR"));
+            assertEquals(Verifier.Mode.QUICK, Verifier.Mode.fromString("quick"));
+        } finally {
+            Locale.setDefault(defaultLocale);
+        }
+    }
+}
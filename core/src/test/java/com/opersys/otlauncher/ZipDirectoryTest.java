@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for the reader of the central directory.
+ */
+public class ZipDirectoryTest {
+
+    private static final String TEXT = "Some text, some text, some text, some text.";
+
+    private static byte[] createZip() throws IOException {
+        ByteArrayOutputStream zip;
+        ZipOutputStream out;
+
+        zip = new ByteArrayOutputStream();
+        out = new ZipOutputStream(zip);
+
+        TestApk.putEntry(out, "stored.txt", "hello".getBytes("UTF-8"), true);
+        TestApk.putEntry(out, "dir/", new byte[0], false);
+        TestApk.putEntry(out, "dir/d\u00e9flated.txt", TEXT.getBytes("UTF-8"), false);
+        out.setComment("A comment the end record is followed by");
+        out.close();
+
+        return zip.toByteArray();
+    }
+
+    private static byte[] getBytes(ByteBuffer buf) {
+        byte[] bytes;
+
+        bytes = new byte[buf.remaining()];
+        buf.duplicate().get(bytes);
+
+        return bytes;
+    }
+
+    @Test
+    public void testEntries() throws Exception {
+        ZipDirectory directory;
+        ZipDirectory.Entry entry;
+        Inflater inflater;
+        CRC32 crc;
+        byte[] data;
+        int n;
+
+        directory = new ZipDirectory(ByteBuffer.wrap(createZip()));
+
+        assertEquals(3, directory.getEntries().size());
+        assertEquals("stored.txt", directory.getEntries().get(0).getName());
+        assertTrue(directory.getEntries().get(1).isDirectory());
+        assertNull(directory.getEntry("missing"));
+
+        entry = directory.getEntry("stored.txt");
+        assertEquals(ZipEntry.STORED, entry.getMethod());
+        assertEquals(5, entry.getSize());
+        assertEquals(0, entry.getHeaderOffset());
+        assertEquals("hello", new String(getBytes(directory.getData(entry)), "UTF-8"));
+
+        entry = directory.getEntry("dir/d\u00e9flated.txt");
+        assertNotNull(entry);
+        assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+        assertEquals(TEXT.length(), entry.getSize());
+        assertEquals(entry.getCompressedSize(), directory.getData(entry).remaining());
+
+        inflater = new Inflater(true);
+        inflater.setInput(getBytes(directory.getData(entry)));
+        data = new byte[TEXT.length()];
+        n = inflater.inflate(data);
+        inflater.end();
+
+        assertEquals(TEXT.length(), n);
+        assertEquals(TEXT, new String(data, "UTF-8"));
+
+        crc = new CRC32();
+        crc.update(data);
+        assertEquals(crc.getValue(), entry.getCrc());
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotZip() throws IOException {
+        new ZipDirectory(ByteBuffer.wrap(new byte[1024]));
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidDirectoryOffset() throws IOException {
+        ByteBuffer zipBuf;
+        byte[] zip;
+        int eocdPos;
+
+        zip = createZip();
+        zipBuf = ByteBuffer.wrap(zip).order(ByteOrder.LITTLE_ENDIAN);
+
+        for (eocdPos = zip.length - 22; zipBuf.getInt(eocdPos) != 0x06054b50; eocdPos--);
+        zipBuf.putInt(eocdPos + 16, zip.length);
+
+        new ZipDirectory(zipBuf);
+    }
+
+    /**
+     * ZIP64 archives are for ZipFile to read.
+     */
+    @Test(expected = ZipDirectory.UnsupportedException.class)
+    public void testZip64() throws IOException {
+        ByteBuffer zipBuf;
+        byte[] zip;
+        int eocdPos;
+
+        zip = createZip();
+        zipBuf = ByteBuffer.wrap(zip).order(ByteOrder.LITTLE_ENDIAN);
+
+        for (eocdPos = zip.length - 22; zipBuf.getInt(eocdPos) != 0x06054b50; eocdPos--);
+        zipBuf.putInt(eocdPos + 16, 0xffffffff);
+
+        new ZipDirectory(zipBuf);
+    }
+}
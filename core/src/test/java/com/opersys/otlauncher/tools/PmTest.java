@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.tools;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for the parsing of the list of packages, which must never take
+ * a failed pm for an empty list.
+ */
+public class PmTest {
+
+    private static Shell.Result pmList(String output, int exitStatus) {
+        return new Shell.Result("pm list packages", output, exitStatus, 0);
+    }
+
+    private static void assertFails(Shell.Result result) {
+        try {
+            Pm.parsePackageList(result);
+            fail("Accepted: " + result.getOutput());
+        } catch (IOException ex) {
+            // Expected.
+        }
+    }
+
+    @Test
+    public void testList() throws IOException {
+        Set<String> index;
+
+        index = Pm.parsePackageList(pmList(
+                "package:com.android.shell\r\npackage:com.opersys.otlauncher\n\n", 0));
+
+        assertEquals(Arrays.asList("com.android.shell", "com.opersys.otlauncher"),
+                new ArrayList<String>(index));
+    }
+
+    @Test
+    public void testFailures() {
+        assertFails(pmList("Error: Could not access the Package Manager.  Is the system running?\n", 1));
+        assertFails(pmList("package:com.android.shell\n", 255));
+
+        // Some versions of pm print the error with a status of 0.
+        assertFails(pmList("Error: Could not access the Package Manager.  Is the system running?\n", 0));
+        assertFails(pmList("", 0));
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.tools;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test case for the way the output and exit status of each command are told
+ * apart in the output of the shell.
+ */
+public class ShellTest {
+
+    private static String read(File file) throws IOException {
+        FileInputStream in;
+        byte[] buf;
+        int n;
+
+        buf = new byte[64];
+        in = new FileInputStream(file);
+        try {
+            n = in.read(buf);
+        } finally {
+            in.close();
+        }
+
+        return new String(buf, 0, Math.max(n, 0), "US-ASCII").trim();
+    }
+
+    /**
+     * Tells whether a process exists and is not a zombie.
+     */
+    private static boolean isRunning(String pid) {
+        String stat;
+
+        try {
+            stat = read(new File("/proc/" + pid + "/stat"));
+        } catch (IOException ex) {
+            return false;
+        }
+
+        return !stat.substring(stat.lastIndexOf(')') + 2).startsWith("Z");
+    }
+
+    @Test
+    public void testOutput() throws IOException {
+        Shell.Result result;
+
+        result = Shell.get().exec("echo abc");
+        assertEquals("abc\n", result.getOutput());
+        assertEquals(0, result.getExitStatus());
+
+        assertEquals("", Shell.get().exec("true").getOutput());
+        assertEquals("a\n\nb\n", Shell.get().exec("printf 'a\\n\\nb\\n'").getOutput());
+    }
+
+    @Test
+    public void testNoTrailingNewline() throws IOException {
+        assertEquals("abc", Shell.get().exec("printf abc").getOutput());
+        assertEquals("a\nb", Shell.get().exec("printf 'a\\nb'").getOutput());
+    }
+
+    @Test
+    public void testMarkerInOutput() throws IOException {
+        String marker;
+
+        marker = Shell.get().getMarker();
+
+        assertEquals("x " + marker + " 1\n",
+                Shell.get().exec("echo " + Shell.quote("x " + marker + " 1")).getOutput());
+        assertEquals(marker + " x\n",
+                Shell.get().exec("echo " + Shell.quote(marker + " x")).getOutput());
+        assertEquals(marker, Shell.get().exec("printf %s " + Shell.quote(marker)).getOutput());
+    }
+
+    @Test
+    public void testExitStatus() throws IOException {
+        assertEquals(1, Shell.get().exec("false").getExitStatus());
+        assertEquals(3, Shell.get().exec("sh -c 'echo out; exit 3'").getExitStatus());
+        assertEquals(127, Shell.get().exec("otlauncher-no-such-command").getExitStatus());
+    }
+
+    @Test
+    public void testBatch() throws IOException {
+        List<Shell.Result> results;
+
+        results = Shell.get().exec(Arrays.asList("echo a", "false", "printf b"));
+
+        assertEquals(3, results.size());
+        assertEquals("a\n", results.get(0).getOutput());
+        assertEquals(0, results.get(0).getExitStatus());
+        assertEquals("", results.get(1).getOutput());
+        assertEquals(1, results.get(1).getExitStatus());
+        assertEquals("b", results.get(2).getOutput());
+        assertEquals("printf b", results.get(2).getCommand());
+    }
+
+    /**
+     * Test that a command that times out is killed along with the shell, and
+     * that the next command gets a new shell.
+     */
+    @Test
+    public void testTimeout() throws IOException, InterruptedException {
+        File pidFile;
+        String pid;
+
+        pidFile = File.createTempFile("otlauncher", ".pid");
+
+        try {
+            try {
+                Shell.get().exec("sh -c 'echo $$ > " + pidFile + "; exec sleep 30'", 500);
+                fail("The command should have timed out.");
+            } catch (IOException ex) {
+                // Expected.
+            }
+
+            pid = read(pidFile);
+            assertFalse(pid.isEmpty());
+
+            for (int i = 0; i < 50 && isRunning(pid); i++)
+                Thread.sleep(20);
+
+            assertFalse("sleep is still running", isRunning(pid));
+        } finally {
+            pidFile.delete();
+        }
+
+        assertEquals("ok\n", Shell.get().exec("echo ok").getOutput());
+    }
+}
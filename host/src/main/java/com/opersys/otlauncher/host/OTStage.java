@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2015 Opersys inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.opersys.otlauncher.host;
+
+import com.opersys.otlauncher.AppDirectory;
+import com.opersys.otlauncher.Descriptor;
+import com.opersys.otlauncher.DescriptorReader;
+import com.opersys.otlauncher.Verifier;
+import org.json.JSONException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Host side counterpart of the launcher. It extracts the packages of an .apk the
+ * way the launcher does on the device, so that the trees can be checked or pushed
+ * ahead of time, and verifies trees that were already staged.
+ *
+ *   otstage stage  -f app.apk -o dir [-r id] [-a arm|ia32]
+ *   otstage verify -f app.apk -o dir [-r id] [-a arm|ia32] [-V quick|deep]
+ *
+ * A staged tree can be pushed to the extraction path of the launcher, which is
+ * /data/local/tmp, with adb push -a. The launcher then only checks it. Without -a,
+ * the modification times recorded in the manifest won't match and the quick
+ * verification will extract the files again.
+ */
+public class OTStage {
+
+    private static void usage() {
+        System.err.println("Usage: otstage stage|verify -f <apk> -o <dir> [-r <id>] "
+                + "[-a arm|ia32] [-V quick|deep]");
+        System.exit(2);
+    }
+
+    /**
+     * Extracts a package unless the tree is already up to date.
+     */
+    private static void stage(AppDirectory appDirectory, String id, Verifier.Mode verifyMode)
+            throws IOException {
+        long startTime;
+
+        startTime = System.nanoTime();
+
+        if (appDirectory.isExtractedOk() && appDirectory.verify(verifyMode)) {
+            System.out.println(String.format("%s: up to date (%d ms)", id,
+                    (System.nanoTime() - startTime) / 1000000));
+            return;
+        }
+
+        appDirectory.extract();
+        appDirectory.reclaim();
+
+        System.out.println(String.format("%s: extracted to %s in %d ms", id,
+                appDirectory.getDir(), (System.nanoTime() - startTime) / 1000000));
+    }
+
+    /**
+     * Checks a staged package without changing it.
+     *
+     * @return true if the tree matches the package
+     */
+    private static boolean verify(AppDirectory appDirectory, String id, Verifier.Mode verifyMode)
+            throws IOException {
+        List<String> failed;
+
+        if (!appDirectory.isExtractedOk()) {
+            System.out.println(id + ": not extracted, or extracted from another package");
+            return false;
+        }
+
+        failed = appDirectory.check(verifyMode);
+
+        if (failed == null) {
+            System.out.println(id + ": no manifest");
+            return false;
+        }
+
+        for (String path : failed)
+            System.out.println(id + ": " + path + " doesn't match");
+
+        System.out.println(id + (failed.isEmpty() ? ": ok" : ": " + failed.size() + " files differ"));
+
+        return failed.isEmpty();
+    }
+
+    public static void main(String[] args) {
+        String command, runId = null, arch = "arm";
+        Verifier.Mode verifyMode = Verifier.Mode.QUICK;
+        File apkFile = null, outDir = null;
+        DescriptorReader descriptorReader = null;
+        Descriptor descriptor;
+        List<String> ids;
+        boolean isOk = true;
+
+        if (args.length == 0)
+            usage();
+
+        command = args[0];
+
+        for (int i = 1; i < args.length; i++) {
+            if (i + 1 >= args.length)
+                usage();
+
+            if (args[i].equals("-f"))
+                apkFile = new File(args[++i]);
+            else if (args[i].equals("-o"))
+                outDir = new File(args[++i]);
+            else if (args[i].equals("-r"))
+                runId = args[++i];
+            else if (args[i].equals("-a"))
+                arch = args[++i];
+            else if (args[i].equals("-V")) {
+                try {
+                    verifyMode = Verifier.Mode.fromString(args[++i]);
+                } catch (IllegalArgumentException ex) {
+                    System.err.println("Unknown verification mode: " + args[i]);
+                    System.exit(2);
+                }
+            }
+            else
+                usage();
+        }
+
+        if (apkFile == null || outDir == null || !(command.equals("stage") || command.equals("verify")))
+            usage();
+
+        try {
+            descriptorReader = new DescriptorReader(apkFile);
+            descriptor = descriptorReader.getDescriptor();
+
+            ids = new ArrayList<String>();
+
+            if (runId != null)
+                ids.add(runId);
+            else {
+                for (Descriptor.Package pkg : descriptor.getPackages())
+                    if (pkg.getFileForArch(arch) != null)
+                        ids.add(pkg.getId());
+            }
+
+            if (command.equals("stage") && !outDir.isDirectory() && !outDir.mkdirs())
+                throw new IOException("Couldn't create " + outDir);
+
+            for (String id : ids) {
+                AppDirectory appDirectory;
+
+                appDirectory = new AppDirectory(descriptor, id, arch, new File(outDir, id));
+
+                if (command.equals("stage"))
+                    stage(appDirectory, id, verifyMode);
+                else
+                    isOk &= verify(appDirectory, id, verifyMode);
+            }
+
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            isOk = false;
+
+        } catch (IOException ex) {
+            System.err.println("IO error: " + ex.getMessage());
+            isOk = false;
+
+        } catch (JSONException ex) {
+            System.err.println("Syntax error in descriptor: " + ex.getMessage());
+            isOk = false;
+
+        } finally {
+            if (descriptorReader != null)
+                descriptorReader.close();
+        }
+
+        System.exit(isOk ? 0 : 1);
+    }
+}